@@ -0,0 +1,122 @@
+package com.chat.audio;
+
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 발화 하나(WebSocket 프레임들 -> 병합 -> WAV 변환 -> STT 요청 본문)의 힙 할당 비교.
+ * 입력은 audio/sample-48k-mono.webm (3.2초)을 MediaRecorder timeslice처럼 약 250ms 단위 프레임으로 나눈 것이다.
+ * 프레임은 Netty가 받은 것처럼 풀 버퍼로 시작한다. ([seq 4B][조각])
+ * <p>
+ * - pooled: 현재 경로. 프레임 버퍼를 그대로 AudioAggregator에 넘기고 composite로 병합, WebmOpusDecoder가 풀 버퍼에 WAV를 쓴다.
+ * - heapCopies: 이전 경로의 복사를 재현. 프레임 -> byte[] -> copyOfRange(seq 제거) -> ByteArrayOutputStream 병합
+ *   -> toByteArray, 출력은 힙 배열(입력의 8배, 모자라면 2배씩)에 쓴 뒤 copyOf. (디코더 자체는 같은 것을 쓴다)
+ * <p>
+ * 발화당 할당은 -prof gc의 gc.alloc.rate.norm(B/op)으로 본다.
+ * <pre>
+ * ./gradlew :chat-server:jmh -PjmhArgs='UtteranceBufferBenchmark -prof gc'
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtteranceBufferBenchmark {
+
+    private static final int FRAME_BYTES = 1_000;
+
+    private final List<byte[]> frames = new ArrayList<>();
+    private AudioMemoryBudget budget;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] webm;
+        try (InputStream in = UtteranceBufferBenchmark.class.getResourceAsStream("/audio/sample-48k-mono.webm")) {
+            webm = in.readAllBytes();
+        }
+        for (int off = 0, seq = 0; off < webm.length; off += FRAME_BYTES, seq++) {
+            int len = Math.min(FRAME_BYTES, webm.length - off);
+            frames.add(ByteBuffer.allocate(4 + len).putInt(seq).put(webm, off, len).array());
+        }
+        budget = new AudioMemoryBudget(new AppProperties(), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public int pooled() throws IOException {
+        AudioAggregator aggregator = new AudioAggregator("bench", budget);
+        for (int seq = 0; seq < frames.size(); seq++) {
+            DataBuffer frame = receive(frames.get(seq));
+            frame.readPosition(4); // AudioWebSocketHandler: seq 헤더를 건너뛰고 그대로 넘긴다
+            aggregator.add(seq, frame);
+        }
+        DataBuffer merged = aggregator.merge(AudioBuffers.FACTORY);
+        try {
+            DataBuffer wav = WebmOpusDecoder.toWav(merged);
+            int n = wav.readableByteCount();
+            DataBufferUtils.release(wav);
+            return n;
+        } finally {
+            DataBufferUtils.release(merged);
+        }
+    }
+
+    @Benchmark
+    public int heapCopies() throws IOException {
+        List<byte[]> parts = new ArrayList<>();
+        long size = 0;
+        for (byte[] f : frames) {
+            DataBuffer frame = receive(f);
+            byte[] bytes = new byte[frame.readableByteCount()];
+            frame.read(bytes);
+            DataBufferUtils.release(frame);
+            byte[] payload = Arrays.copyOfRange(bytes, 4, bytes.length);
+            parts.add(payload);
+            size += payload.length;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream((int) size);
+        for (byte[] p : parts) bos.write(p, 0, p.length);
+        byte[] webm = bos.toByteArray();
+
+        DataBuffer wav = WebmOpusDecoder.toWav(AudioBuffers.FACTORY.wrap(webm));
+        try {
+            // 이전 디코더의 출력 배열: 입력 크기의 8배로 시작해 모자라면 두 배씩 키우고, 끝에 길이에 맞춰 복사
+            byte[] out = new byte[Math.max(64 * 1024, webm.length * 8)];
+            int len = wav.readableByteCount();
+            while (out.length < len) out = Arrays.copyOf(out, out.length * 2);
+            wav.toByteBuffer(wav.readPosition(), ByteBuffer.wrap(out), 0, len);
+            return Arrays.copyOf(out, len).length;
+        } finally {
+            DataBufferUtils.release(wav);
+        }
+    }
+
+    /** Netty가 받은 WebSocket 프레임 (풀 버퍼) */
+    private static DataBuffer receive(byte[] frame) {
+        DataBuffer buf = AudioBuffers.allocate(frame.length);
+        buf.write(frame);
+        return buf;
+    }
+}
@@ -0,0 +1,92 @@
+package com.chat.audio;
+
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 녹음 샘플(audio/sample-48k-mono.webm, 3.2초) 하나를 WAV(PCM 16k mono)로 바꾸는 두 경로의 비교.
+ * <p>
+ * - inProcess: WebmOpusDecoder.toWav (디먹스 + Concentus 디코드 + 폴리페이즈 리샘플, fork 없음)
+ * - ffmpeg: AudioTranscoder의 ffmpeg 경로 (임시 파일 쓰기 -> ffmpeg 실행(soxr 리샘플) -> 결과 읽기)
+ * <p>
+ * ffmpeg는 FFMPEG_PATH(없으면 /usr/bin/ffmpeg)를 쓴다. -prof gc의 gc.alloc.rate.norm은 이 JVM의 힙 할당만 센다.
+ * (ffmpeg 프로세스 자체의 메모리/CPU는 포함하지 않는다)
+ * <pre>
+ * FFMPEG_PATH=/usr/bin/ffmpeg ./gradlew :chat-server:jmh -PjmhArgs='WebmDecodeBenchmark -prof gc'
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebmDecodeBenchmark {
+
+    private byte[] webm;
+
+    @Setup
+    public void setup() throws IOException {
+        webm = sample();
+    }
+
+    /** ffmpeg 경로만 쓰는 변환기 (ffmpeg가 없으면 이 벤치마크만 실패한다) */
+    @State(Scope.Benchmark)
+    public static class Ffmpeg {
+        AudioTranscoder transcoder;
+
+        @Setup
+        public void setup() {
+            String path = System.getenv().getOrDefault("FFMPEG_PATH", "/usr/bin/ffmpeg");
+            if (!new File(path).canExecute()) throw new IllegalStateException("ffmpeg not found: " + path + " (set FFMPEG_PATH)");
+            AppProperties props = new AppProperties();
+            props.getAudio().setInProcessDecode(false);
+            props.getAudio().setFfmpegPath(path);
+            transcoder = new AudioTranscoder(props, new SimpleMeterRegistry());
+        }
+    }
+
+    @Benchmark
+    public int inProcess() throws IOException {
+        DataBuffer wav = WebmOpusDecoder.toWav(AudioBuffers.FACTORY.wrap(webm));
+        try {
+            return wav.readableByteCount();
+        } finally {
+            DataBufferUtils.release(wav);
+        }
+    }
+
+    @Benchmark
+    public int ffmpeg(Ffmpeg ff) throws IOException, InterruptedException {
+        DataBuffer wav = ff.transcoder.webmOpusToPcmWav16kMono(AudioBuffers.FACTORY.wrap(webm));
+        try {
+            return wav.readableByteCount();
+        } finally {
+            DataBufferUtils.release(wav);
+        }
+    }
+
+    private static byte[] sample() throws IOException {
+        try (InputStream in = WebmDecodeBenchmark.class.getResourceAsStream("/audio/sample-48k-mono.webm")) {
+            if (in == null) throw new IllegalStateException("audio/sample-48k-mono.webm not on classpath");
+            return in.readAllBytes();
+        }
+    }
+}
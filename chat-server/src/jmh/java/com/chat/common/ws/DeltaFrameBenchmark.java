@@ -0,0 +1,88 @@
+package com.chat.common.ws;
+
+import com.chat.chat.model.OutboundEvent;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * delta 프레임 하나의 송신 형식별 비용 비교. (WireProtocol)
+ * <p>
+ * - json: chat.json.v1. nlp-stream delta JSON 텍스트 프레임 (EventWriter)
+ * - binary: chat.bin.v1. [tag][keyLen][key][text] 바이너리 프레임 (WireProtocol.encodeDelta)
+ * <p>
+ * 처리량은 deltas/s, 보조 지표 bytes는 초당 페이로드 바이트(bytes/s),
+ * delta당 할당은 -prof gc의 gc.alloc.rate.norm(B/op)으로 본다. (permessage-deflate 압축 전 크기)
+ * <pre>
+ * ./gradlew :chat-server:jmh -PjmhArgs='DeltaFrameBenchmark -prof gc'
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeltaFrameBenchmark {
+
+    /** 페이로드 바이트 수 (OPERATIONS라 처리량 모드에서는 초당 값, 즉 bytes/s로 보고된다) */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Payload {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    /** delta 텍스트 길이 */
+    @Param({"16", "256"})
+    int length;
+
+    private final NettyDataBufferFactory factory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final String traceId = "3f2b9c1e-7d4a-4e1b-9a52-0c8d6f1e2a77";
+    private String text;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(length);
+        String sample = "주민등록등본은 정부24에서 발급할 수 있습니다. \"온라인\" 신청\n";
+        while (sb.length() < length) sb.append(sample);
+        text = sb.substring(0, length);
+    }
+
+    @Benchmark
+    public int json(Payload payload) {
+        return release(EventWriter.write(factory, new OutboundEvent.Delta(traceId, text)), payload);
+    }
+
+    @Benchmark
+    public int binary(Payload payload) {
+        return release(WireProtocol.encodeDelta(factory, traceId, text), payload);
+    }
+
+    private static int release(DataBuffer buf, Payload payload) {
+        int n = buf.readableByteCount();
+        payload.bytes += n;
+        DataBufferUtils.release(buf);
+        return n;
+    }
+}
@@ -0,0 +1,81 @@
+package com.chat.common.ws;
+
+import com.chat.chat.model.OutboundEvent;
+import com.chat.common.json.JsonUtils;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 송신 이벤트(delta) 하나를 WebSocket 페이로드 버퍼로 만드는 비용 비교.
+ * <p>
+ * - mapJson: 이전 방식. Map.of -> ObjectMapper.writeValueAsString -> getBytes -> wrap (session.textMessage와 같음)
+ * - eventWriter: OutboundEvent를 스레드별 JsonGenerator로 풀 버퍼에 바로 쓴다. (EventWriter)
+ * <p>
+ * 처리량은 events/s, 이벤트당 할당은 -prof gc의 gc.alloc.rate.norm(B/op)으로 본다.
+ * 버퍼는 전송 후 Netty가 하듯 바로 release한다.
+ * <pre>
+ * ./gradlew :chat-server:jmh -PjmhArgs='EventWriterBenchmark -prof gc'
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventWriterBenchmark {
+
+    /** delta 텍스트 길이 (LLM 스트리밍 조각은 대개 수십 자, 합쳐진 조각은 수백 자) */
+    @Param({"16", "256"})
+    int length;
+
+    private final NettyDataBufferFactory factory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final String traceId = "3f2b9c1e-7d4a-4e1b-9a52-0c8d6f1e2a77";
+    private String text;
+    private OutboundEvent.Delta event;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(length);
+        String sample = "주민등록등본은 정부24에서 발급할 수 있습니다. \"온라인\" 신청\n";
+        while (sb.length() < length) sb.append(sample);
+        text = sb.substring(0, length);
+        event = new OutboundEvent.Delta(traceId, text);
+    }
+
+    @Benchmark
+    public int mapJson() {
+        String json = JsonUtils.toJson(Map.of(
+                "type", "nlp-stream", "event", "delta", "data", Map.of("text", text), "traceId", traceId));
+        DataBuffer buf = factory.wrap(json.getBytes(StandardCharsets.UTF_8));
+        return release(buf);
+    }
+
+    @Benchmark
+    public int eventWriter() {
+        return release(EventWriter.write(factory, event));
+    }
+
+    private static int release(DataBuffer buf) {
+        int n = buf.readableByteCount();
+        DataBufferUtils.release(buf);
+        return n;
+    }
+}
@@ -0,0 +1,139 @@
+package com.chat.audio;
+
+import com.chat.audio.model.AudioMeta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * seq 기준 정렬/병합기. (세션당 하나)
+ * MediaRecorder 조각은 컨테이너 레벨 완전 보장되진 않으므로, 최종 파일은 서버에서 remux/변환 권장.
+ * 조각은 retain된 프레임 버퍼 그대로 보관하고, 병합은 복사 없이 composite 버퍼로 잇는다.
+ * <p>
+ * 보관 크기는 AudioMemoryBudget으로 센다. (app.audio.memory)
+ * - 세션/파드 메모리 한도를 넘는 청크는 세션 전용 임시 파일(AudioSpillFile)에 쓰고 프레임 버퍼는 바로 release
+ * - 세션 최대 크기나 파드 임시 파일 한도를 넘으면 add가 거절을 돌려주고, 호출자는 세션을 닫는다.
+ */
+@Slf4j
+final class AudioAggregator {
+
+    enum AddResult {
+        OK,
+        /** 세션 최대 크기 초과 */
+        SESSION_LIMIT,
+        /** 파드 메모리/임시 파일 모두 부족 */
+        OVERLOADED
+    }
+
+    private final String sessionId;
+    private final AudioMemoryBudget budget;
+
+    // add/merge/discard는 소켓 스레드와 종료 처리(doFinally)에서 올 수 있으므로 this로 동기화
+    private final TreeMap<Integer, DataBuffer> ordered = new TreeMap<>();
+    private boolean closed;
+    private long memoryBytes;
+    private long spillBytes;
+    private AudioSpillFile spill;
+    volatile AudioMeta meta;
+
+    AudioAggregator(String sessionId, AudioMemoryBudget budget) {
+        this.sessionId = sessionId;
+        this.budget = budget;
+    }
+
+    void setMeta(AudioMeta meta) {
+        this.meta = meta;
+    }
+
+    /**
+     * 조각의 소유권을 넘겨받는다. 보관하지 않는 조각(중복 seq, 병합 이후 도착, 거절)은 바로 release 한다.
+     */
+    synchronized AddResult add(int seq, DataBuffer payload) {
+        if (closed || ordered.containsKey(seq)) { // 중복 seq 방어: 최초 것만 유지
+            DataBufferUtils.release(payload);
+            return AddResult.OK;
+        }
+        var cfg = budget.config();
+        int len = payload.readableByteCount();
+        if (memoryBytes + spillBytes + len > cfg.getSessionMaxBytes()) {
+            DataBufferUtils.release(payload);
+            return AddResult.SESSION_LIMIT;
+        }
+        if (memoryBytes + len <= cfg.getSessionMemoryBytes() && budget.tryReserveMemory(len)) {
+            memoryBytes += len;
+            ordered.put(seq, payload);
+            return AddResult.OK;
+        }
+        try {
+            return spill(seq, payload, len);
+        } finally {
+            DataBufferUtils.release(payload);
+        }
+    }
+
+    private AddResult spill(int seq, DataBuffer payload, int len) {
+        if (!budget.tryReserveSpill(len)) return AddResult.OVERLOADED;
+        try {
+            if (spill == null) {
+                int capacity = (int) Math.min(Integer.MAX_VALUE, budget.config().getSessionMaxBytes());
+                spill = AudioSpillFile.create(budget.spillDir(), capacity);
+                log.info("[AUDIO:{}] spilling chunks to disk (memory {}B)", sessionId, memoryBytes);
+            }
+            if (!spill.fits(len)) {
+                budget.releaseSpill(len);
+                return AddResult.SESSION_LIMIT;
+            }
+            ordered.put(seq, AudioBuffers.FACTORY.wrap(spill.append(payload)));
+            spillBytes += len;
+            return AddResult.OK;
+        } catch (IOException | RuntimeException e) {
+            log.warn("[AUDIO:{}] spill failed: {}", sessionId, e.toString());
+            budget.releaseSpill(len);
+            return AddResult.OVERLOADED;
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * seq 순서로 이은 버퍼를 돌려준다. (호출자가 release, 조각이 없거나 이미 닫혔으면 null)
+     * 임시 파일에 쓴 조각은 매핑 구간을 그대로 잇는다.
+     */
+    synchronized DataBuffer merge(DataBufferFactory factory) {
+        if (closed) return null;
+        List<DataBuffer> parts = close();
+        if (parts.isEmpty()) return null;
+        return factory.join(parts);
+    }
+
+    /**
+     * 병합하지 않고 닫는다. 보관 중인 조각은 모두 release.
+     */
+    synchronized void discard() {
+        close().forEach(DataBufferUtils::release);
+    }
+
+    private List<DataBuffer> close() {
+        closed = true;
+        List<DataBuffer> parts = new ArrayList<>(ordered.values());
+        ordered.clear();
+        // 병합 이후의 버퍼는 처리 파이프라인 소유이므로 보관 크기에서 뺀다.
+        budget.releaseMemory(memoryBytes);
+        budget.releaseSpill(spillBytes);
+        memoryBytes = 0;
+        spillBytes = 0;
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,78 @@
+package com.chat.audio;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 오디오 경로에서 쓰는 풀링된(direct) 버퍼.
+ * WebSocket 프레임 -> 병합 -> 변환 -> STT 요청까지 힙 byte[] 복사 없이 Netty 풀 버퍼로 넘긴다.
+ * <p>
+ * 소유 규칙: 버퍼를 받은 쪽이 release 한다. 비동기로 더 오래 쓰는 쪽(스트리밍 변환기, STT 요청)은 직접 retain 한다.
+ */
+public final class AudioBuffers {
+    private AudioBuffers() {
+    }
+
+    public static final NettyDataBufferFactory FACTORY = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    public static DataBuffer allocate(int initialCapacity) {
+        return FACTORY.allocateBuffer(initialCapacity);
+    }
+
+    /**
+     * PCM s16le을 WAV 헤더와 함께 풀 버퍼에 쓴다.
+     */
+    public static DataBuffer wav(byte[] pcm, int sampleRate, int channels) {
+        DataBuffer buf = allocate(AudioUtils.WAV_HEADER_BYTES + pcm.length);
+        buf.write(AudioUtils.wavHeader(pcm.length, sampleRate, channels));
+        buf.write(pcm);
+        return buf;
+    }
+
+    /**
+     * 16k mono WAV들의 PCM을 순서대로 이어 하나의 WAV로 만든다. [새 헤더 | 각 PCM의 retainedSlice] composite라 복사하지 않는다.
+     * 입력 버퍼는 읽기만 하고 release 하지 않는다.
+     *
+     * @return 이은 WAV (호출자가 release)
+     */
+    @SuppressWarnings("deprecation")
+    public static DataBuffer concatWav(List<DataBuffer> wavs) {
+        List<DataBuffer> parts = new ArrayList<>(wavs.size() + 1);
+        int pcmBytes = 0;
+        for (DataBuffer w : wavs) pcmBytes += w.readableByteCount() - AudioUtils.WAV_HEADER_BYTES;
+        parts.add(FACTORY.wrap(AudioUtils.wavHeader(pcmBytes, AudioUtils.STT_SAMPLE_RATE, 1)));
+        for (DataBuffer w : wavs) {
+            int len = w.readableByteCount() - AudioUtils.WAV_HEADER_BYTES;
+            if (len > 0) parts.add(w.retainedSlice(w.readPosition() + AudioUtils.WAV_HEADER_BYTES, len));
+        }
+        return FACTORY.join(parts);
+    }
+
+    /**
+     * 16k mono WAV(헤더 44바이트)의 앞 samples 샘플을 버린다. 복사하지 않고 남은 PCM 바로 앞에 새 헤더를 쓴다.
+     *
+     * @return 남은 PCM 샘플 수
+     */
+    public static int dropLeadingSamples(DataBuffer wav, long samples) {
+        int base = wav.readPosition() + AudioUtils.WAV_HEADER_BYTES;
+        int total = Math.max(0, (wav.writePosition() - base) / 2);
+        int drop = (int) Math.max(0, Math.min(total, samples));
+        if (drop == 0) return total;
+        int headerAt = base + drop * 2 - AudioUtils.WAV_HEADER_BYTES;
+        int end = wav.writePosition();
+        wav.writePosition(headerAt);
+        wav.write(AudioUtils.wavHeader((total - drop) * 2, AudioUtils.STT_SAMPLE_RATE, 1));
+        wav.writePosition(end);
+        wav.readPosition(headerAt);
+        return total - drop;
+    }
+
+    /** 풀 전체에서 사용 중인 direct 메모리 (chat.audio.buffer.direct.bytes) */
+    public static long usedDirectMemory() {
+        return PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory();
+    }
+}
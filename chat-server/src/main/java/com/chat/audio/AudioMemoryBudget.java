@@ -0,0 +1,76 @@
+package com.chat.audio;
+
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 파드 전체에서 녹음 중인 오디오(병합 전 청크)가 차지하는 크기를 센다.
+ * 세션별 AudioAggregator가 청크를 보관/해제할 때 예약/반납한다.
+ * <p>
+ * 지표 (/actuator/metrics)
+ * - chat.audio.live.bytes (tag: tier=memory|disk) - 지금 보관 중인 크기
+ * - chat.audio.spilled.bytes - 메모리 한도를 넘어 임시 파일로 보낸 누적 크기
+ * - chat.audio.rejected (tag: reason=session|global) - 한도 초과로 닫은 세션 수
+ */
+@Component
+public class AudioMemoryBudget {
+
+    private final AppProperties.Audio.Memory cfg;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong memoryBytes = new AtomicLong();
+    private final AtomicLong spillBytes = new AtomicLong();
+
+    public AudioMemoryBudget(AppProperties props, MeterRegistry meterRegistry) {
+        this.cfg = props.getAudio().getMemory();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("chat.audio.live.bytes", memoryBytes, AtomicLong::get).tag("tier", "memory").register(meterRegistry);
+        Gauge.builder("chat.audio.live.bytes", spillBytes, AtomicLong::get).tag("tier", "disk").register(meterRegistry);
+    }
+
+    AppProperties.Audio.Memory config() {
+        return cfg;
+    }
+
+    Path spillDir() {
+        String dir = cfg.getSpillDir();
+        return Path.of(dir == null || dir.isBlank() ? System.getProperty("java.io.tmpdir") : dir);
+    }
+
+    /** 파드 메모리 한도 안이면 예약하고 true */
+    boolean tryReserveMemory(long bytes) {
+        return tryReserve(memoryBytes, bytes, cfg.getGlobalMemoryBytes());
+    }
+
+    void releaseMemory(long bytes) {
+        if (bytes > 0) memoryBytes.addAndGet(-bytes);
+    }
+
+    /** 파드 임시 파일 한도 안이면 예약하고 true */
+    boolean tryReserveSpill(long bytes) {
+        if (!tryReserve(spillBytes, bytes, cfg.getGlobalSpillBytes())) return false;
+        meterRegistry.counter("chat.audio.spilled.bytes").increment(bytes);
+        return true;
+    }
+
+    void releaseSpill(long bytes) {
+        if (bytes > 0) spillBytes.addAndGet(-bytes);
+    }
+
+    void rejected(String reason) {
+        meterRegistry.counter("chat.audio.rejected", "reason", reason).increment();
+    }
+
+    private static boolean tryReserve(AtomicLong counter, long bytes, long limit) {
+        long cur;
+        do {
+            cur = counter.get();
+            if (cur + bytes > limit) return false;
+        } while (!counter.compareAndSet(cur, cur + bytes));
+        return true;
+    }
+}
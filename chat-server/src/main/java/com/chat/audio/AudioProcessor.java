@@ -2,10 +2,9 @@ package com.chat.audio;
 
 
 
-import com.chat.audio.model.AudioChunk;
 import com.chat.audio.model.AudioMeta;
+import com.chat.chat.model.OutboundEvent;
 import com.chat.common.Lang;
-import com.chat.common.json.JsonUtils;
 import com.chat.common.ws.SessionRegistry;
 import com.chat.common.ws.WsEmitter;
 //import com.chat.llm.LlmClient;
@@ -19,22 +18,34 @@ import com.chat.common.ws.WsEmitter;
 import com.chat.config.AppProperties;
 import com.chat.conversation.service.ConversationService;
 import com.chat.pipeline.LlmFirstRagOrchestrator;
+import com.chat.pipeline.RagAdmission;
 import com.chat.stt.NaverSttClient;
 import com.chat.trans.NaverPapagoTransClient;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.Nullable;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 
 @Slf4j
@@ -51,6 +62,35 @@ public class AudioProcessor {
     private final ConversationService conversationService;
 
     private final LlmFirstRagOrchestrator rag;
+    private final RagAdmission admission;
+    private final MeterRegistry meterRegistry;
+
+    // 세션별 스트리밍 트랜스코더 (첫 청크에서 시작, processFinal/complete에서 정리)
+    private final Map<String, StreamingTranscoder> streams = new ConcurrentHashMap<>();
+    // 세션별 발화 처리 순서 (자동 감지된 발화와 FINISH가 도착 순서대로 처리/응답되도록 이어 붙인다)
+    private final Map<String, Utterances> utterances = new ConcurrentHashMap<>();
+
+    // 세션별로 지금 진행 중인 발화의 추측 STT (발화 끝/FINISH에서 꺼내 쓰고, complete에서 정리)
+    private final Map<String, Speculation> speculations = new ConcurrentHashMap<>();
+
+    private static final class Utterances {
+        Mono<Void> tail = Mono.empty();
+        volatile int count; // 자동 감지된 발화 수
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        // 오디오 경로(프레임/병합/WAV)가 쓰는 풀 direct 메모리. 세션이 끝난 뒤에도 늘어만 가면 release 누락이다.
+        Gauge.builder("chat.audio.buffer.direct.bytes", AudioBuffers::usedDirectMemory).register(meterRegistry);
+
+        var vad = props.getAudio().getVad();
+        var longForm = props.getStt().getLongForm();
+        if (vad.isEnabled() && longForm.isEnabled() && vad.getMaxUtteranceMs() <= longForm.getMaxSegmentMs()) {
+            log.warn("[PROC] app.audio.vad.max-utterance-ms ({}) <= app.stt.long-form.max-segment-ms ({}): "
+                            + "long utterances are cut by VAD mid-speech and never split at pauses",
+                    vad.getMaxUtteranceMs(), longForm.getMaxSegmentMs());
+        }
+    }
 
     public void onMeta(String sessionId, AudioMeta meta) {
         log.info("[PROC:{}] meta: {}", sessionId, meta);
@@ -58,17 +98,123 @@ public class AudioProcessor {
         if (e == null) return;
     }
 
-    public void onChunk(String sessionId, AudioChunk chunk) {
+    /**
+     * 청크 수신. 스트리밍 모드면 첫 청크에서 세션의 변환기를 열고, 이후 청크는 seq 순서대로 바로 흘려 넣는다.
+     * payload는 호출자(AudioWebSocketHandler) 소유이며, 변환기가 더 오래 쓰면 직접 retain 한다.
+     */
+    public void onChunk(String sessionId, int seq, DataBuffer payload, long tsMs) {
         WsEmitter e = registry.get(sessionId);
-        log.info("[PROC:{}] chunk ts={}ms bytes={}", sessionId, chunk.getTsMs(), chunk.getBytes().length);
+        log.info("[PROC:{}] chunk seq={} ts={}ms bytes={}", sessionId, seq, tsMs, payload.readableByteCount());
         if (e == null) return;
+        if (!props.getAudio().getStreaming().isEnabled()) return;
+
+        streams.computeIfAbsent(sessionId, id -> {
+            AudioMeta meta = e.getAttribute("audioMeta", AudioMeta.class);
+            if (meta == null) return StreamingTranscoder.disabled(id, "no meta before first chunk");
+            if (!needsTranscode(meta.getMimeType())) return StreamingTranscoder.disabled(id, "no transcode needed");
+            return transcoder.openStream(id, meta.getMimeType(), wav -> onUtterance(id, wav), wav -> onPrefix(id, wav));
+        }).accept(seq, payload);
+    }
+
+    /**
+     * 발화 중간의 쉼에서 앞부분을 받았다. (변환 스레드에서 호출) 앞뒤 무음을 자르고 바로 STT를 시작해 둔다.
+     */
+    private void onPrefix(String sessionId, DataBuffer wav) {
+        WsEmitter emitter = registry.get(sessionId);
+        AudioMeta meta = emitter == null ? null : emitter.getAttribute("audioMeta", AudioMeta.class);
+        if (meta == null || meta.getLang() == null || meta.getLang().isBlank()
+                || VoiceActivityDetector.trim(wav, props.getAudio().getVad()) == 0) {
+            DataBufferUtils.release(wav);
+            return;
+        }
+        log.info("[PROC:{}] speculative STT on {}B prefix", sessionId, wav.readableByteCount());
+        String csr = Lang.fromClientCode(meta.getLang()).orElse(Lang.KOR).csr;
+        speculations.computeIfAbsent(sessionId, id -> new Speculation())
+                .add(wav, piece -> sttClient.transcribe(piece, csr)
+                        .mapNotNull(this::extractTextField)
+                        .switchIfEmpty(Mono.error(new IllegalStateException("bad STT response"))));
+    }
+
+    /**
+     * VAD가 발화 끝을 감지했다. (변환 스레드에서 호출) FINISH를 기다리지 않고 이 발화를 바로 처리한다.
+     * 소켓은 닫지 않으며, 클라이언트는 계속 말할 수 있다.
+     */
+    private void onUtterance(String sessionId, DataBuffer wav) {
+        WsEmitter emitter = registry.get(sessionId);
+        if (emitter == null) {
+            DataBufferUtils.release(wav);
+            return;
+        }
+        log.info("[PROC:{}] end of speech detected, {}B", sessionId, wav.readableByteCount());
+        meterRegistry.counter("chat.audio.vad.utterances", "trigger", "auto").increment();
+        Utterances u = utterances.computeIfAbsent(sessionId, id -> new Utterances());
+        synchronized (u) {
+            u.count++;
+        }
+        // 이 발화의 앞부분 추측 STT는 지금 꺼내 둔다. (처리 순서를 기다리는 동안 다음 발화의 앞부분이 쌓일 수 있음)
+        Speculation spec = speculations.remove(sessionId);
+        // 입장 제어에서 거절되면 파이프라인이 구독되지 않으므로, 파이프라인 몫은 구독 시점에 retain 하고 원본은 끝에 release
+        Mono<Void> work = recognize(sessionId, Mono.fromSupplier(() -> DataBufferUtils.retain(wav)), true, true,
+                () -> spec, emitter)
+                .doFinally(sig -> {
+                    DataBufferUtils.release(wav);
+                    if (spec != null) spec.discard();
+                });
+        enqueue(sessionId, work).subscribe();
     }
 
     public void complete(String sessionId) {
         log.info("[PROC:{}] complete", sessionId);
+        StreamingTranscoder stream = streams.remove(sessionId);
+        if (stream != null) stream.abort();
+        utterances.remove(sessionId);
+        discardSpeculation(sessionId);
+    }
+
+    private void discardSpeculation(String sessionId) {
+        Speculation spec = speculations.remove(sessionId);
+        if (spec != null) spec.discard();
+    }
+
+    /**
+     * 병합된 오디오를 변환 -> STT -> 번역/RAG 까지 처리한다.
+     * merged의 소유권을 넘겨받으며, 처리가 끝나거나(거절/취소 포함) 하면 release 한다.
+     * 자동 감지된 발화가 아직 처리 중이면 그 뒤에 이어서 처리하고, 모두 끝나야 완료된다.
+     * 스트리밍 변환기가 발화를 나눠 왔다면 여기서는 마지막 발화 이후의 나머지만 처리한다.
+     */
+    public Mono<Void> processFinal(String sessionId, DataBuffer merged, String mimeType, WsEmitter emitter) {
+        meterRegistry.summary("chat.audio.utterance.bytes").record(merged.readableByteCount());
+        meterRegistry.counter("chat.audio.vad.utterances", "trigger", "finish").increment();
+        // 우리가 만든 WAV(16k mono)만 무음을 자를 수 있다. (클라이언트가 보낸 WAV는 포맷을 모름)
+        boolean trim = needsTranscode(mimeType);
+        // 추측 STT는 변환 결과가 나온 시점에 꺼낸다. (스트리밍 변환이면 그때까지 들어온 앞부분이 모두 쌓여 있다)
+        Mono<Void> work = recognize(sessionId, transcode(sessionId, merged, mimeType), trim, false,
+                () -> speculations.remove(sessionId), emitter)
+                .doFinally(sig -> DataBufferUtils.release(merged));
+        return enqueue(sessionId, work);
+    }
+
+    /**
+     * 세션의 앞선 발화 처리가 끝난 뒤에 work를 실행하도록 이어 붙인다. (결과 Mono는 공유되므로 여러 번 구독해도 한 번만 실행)
+     */
+    private Mono<Void> enqueue(String sessionId, Mono<Void> work) {
+        Utterances u = utterances.computeIfAbsent(sessionId, id -> new Utterances());
+        synchronized (u) {
+            u.tail = u.tail.then(work.onErrorResume(e -> Mono.empty())).cache();
+            return u.tail;
+        }
     }
 
-    public Mono<Void> processFinal(String sessionId, byte[] mergedBytes, String mimeType, WsEmitter emitter) {
+    /**
+     * 발화 하나(WAV)를 무음 자르기 -> STT -> 번역/RAG 까지 처리한다.
+     *
+     * @param wavMono WAV 버퍼 (받아서 release)
+     * @param trim    앞뒤 무음을 잘라낼지 (16k mono WAV일 때만)
+     * @param auto    VAD가 자동으로 끊은 발화인지 (음성이 없으면 조용히 넘어간다)
+     * @param speculation 이 발화 앞부분의 추측 STT (없으면 null). 있으면 wav는 마지막 앞부분 이후의 꼬리다
+     */
+    private Mono<Void> recognize(String sessionId, Mono<DataBuffer> wavMono, boolean trim, boolean auto,
+                                 Supplier<Speculation> speculation, WsEmitter emitter) {
         // 선택적으로 세션에 저장해둔 메타/roomId 를 꺼냄
         AudioMeta meta = emitter.getAttribute("audioMeta", AudioMeta.class);
         String roomId = emitter.getAttribute("roomId", String.class); // 세팅해뒀다면 사용
@@ -79,30 +225,44 @@ public class AudioProcessor {
 
         final String traceId = sessionId;
 
-        return Mono.fromCallable(() -> {
-                    // 1) 필요시 트랜스코딩 (webm/opus/ogg → wav 16k mono)
-                    if (needsTranscode(mimeType)) {
-                        return transcoder.webmOpusToPcmWav16kMono(mergedBytes);
-                    }
-                    return mergedBytes;
-                })
-                .subscribeOn(Schedulers.boundedElastic())
+        // 1) WAV (트랜스코딩 결과 또는 VAD가 끊어 준 발화)
+        Mono<Void> pipeline = wavMono
 
-                // 2) STT
-                .flatMap(wav -> {
+                // 2) 앞뒤 무음 제거 후 STT (WAV 버퍼는 STT 응답을 받으면 release)
+                .flatMap(wav -> Mono.defer(() -> {
                     if (meta == null || meta.getLang() == null || meta.getLang().isBlank()) {
-                        return Mono.error(new IllegalStateException("lang is required (START)"));
+                        return Mono.<String>error(new IllegalStateException("lang is required (START)"));
                     }
                     Lang lang = Lang.fromClientCode(meta.getLang()).orElse(Lang.KOR);
-                    return sttClient.transcribe(wav, lang.csr);
-                })
-                .map(this::extractTextField) // {"text": "..."}에서 text 추출
+                    Speculation taken = trim ? speculation.get() : null;
+                    Speculation spec = taken != null && !taken.isEmpty() ? taken : null;
+                    // 앞부분을 이미 인식해 두었다면 꼬리에 음성이 없어도 괜찮다.
+                    boolean speech = !trim || trimSilence(sessionId, wav, auto || spec != null, emitter);
+                    long endedAt = System.nanoTime();
+                    Mono<String> text;
+                    if (spec != null) {
+                        text = stitch(sessionId, spec, speech ? wav : null, lang, emitter);
+                    } else if (!speech) {
+                        if (taken != null) taken.discard();
+                        return Mono.<String>empty();
+                    } else {
+                        text = transcribeText(sessionId, wav, trim, lang, emitter);
+                    }
+                    // 발화가 끝난 뒤(꼬리 변환 이후) 텍스트가 나올 때까지
+                    return text.doOnSuccess(t -> meterRegistry.timer("chat.stt.finish.latency",
+                                    "mode", spec != null ? "speculative" : "direct")
+                            .record(System.nanoTime() - endedAt, TimeUnit.NANOSECONDS))
+                            .doFinally(sig -> {
+                                if (taken != null) taken.discard();
+                            });
+                }).doFinally(sig -> DataBufferUtils.release(wav)))
                 .flatMap(text -> {
                     if (text == null || text.isBlank()) {
-                        return Mono.error(new IllegalStateException("No text"));
+                        // 자동으로 끊은 발화가 잡음이었던 경우는 조용히 넘어간다.
+                        return auto ? Mono.<Void>empty() : Mono.<Void>error(new IllegalStateException("No text"));
                     }
 
-                    emitter.emitText(chat("CHAT", text));
+                    emitter.emit(OutboundEvent.chat("CHAT", text));
                     // 3) 번역 언어 설정 (원본→ko)
                     final String sourceLang = Lang.mapCsrToPapago(meta.getLang());
                     final String targetLang = "ko";
@@ -115,26 +275,20 @@ public class AudioProcessor {
                             koMono
                                     .doOnNext(koText -> {
                                         log.info("[PROC:{}] TRANS KO: {}", sessionId, koText);
-                                       // emitter.emitText(chat("TRANS", koText));
+                                       // emitter.emit(OutboundEvent.chat("TRANS", koText));
                                     })
                                     .then();
 
-                    // 4-2) RAG→LLM(ko) → Papago 역번역(ko→원어) → 최종 송신 + Firestore 저장
+                    // 4-2) RAG→LLM(ko) + 문장 단위 Papago 역번역(ko→원어) → 최종 송신 + Firestore 저장
                     Mono<Void> ragAndTranslateFlow =
                             koMono
-                                    // RAG/LLM 실행: ko 입력, ko 답변 방출(Mono<String>)
-                                    .flatMap(koUserText -> rag.run(koUserText, emitter))
-                                    .doOnNext(koAnswer -> log.info("[PROC:{}] LLM(KO): {}", sessionId, koAnswer))
-                                    // 역번역: ko → sourceLang
-                                    .flatMap(koAnswer -> transClient.translate(targetLang, sourceLang, koAnswer))
+                                    // RAG/LLM 실행: ko 입력, 답변은 문장 단위로 sourceLang 역번역되며 스트리밍
+                                    // 최종적으로 번역이 끝난 전체 답변 방출(Mono<String>)
+                                    .flatMap(koUserText -> rag.run(koUserText, sourceLang, emitter))
+                                    .doOnNext(finalAnswer -> log.info("[PROC:{}] LLM({}): {}", sessionId, sourceLang, finalAnswer))
                                     .doOnNext(finalAnswer -> {
                                         // 최종 답변을 클라이언트에 전송 (ChatWebSocketHandler와 동일 포맷)
-                                        emitter.emitText(JsonUtils.toJson(Map.of(
-                                                "type", "nlp-stream",
-                                                "event", "original_text",
-                                                "data", Map.of("text", finalAnswer),
-                                                "traceId", traceId
-                                        )));
+                                        emitter.emit(new OutboundEvent.Final(traceId, finalAnswer));
                                     })
                                     // Fire-and-Forget 저장 (질문/답변 동시 저장)
                                     .doOnNext(finalAnswer -> {
@@ -153,28 +307,192 @@ public class AudioProcessor {
                 // 6) 에러 핸들링 & 알림
                 .doOnError(e -> {
                     log.error("[PROC:{}] Audio pipeline failed", sessionId, e);
-                    emitter.emitText(system("오디오 처리 중 오류가 발생했습니다: " + e.getMessage()));
+                    emitter.emit(OutboundEvent.system("오디오 처리 중 오류가 발생했습니다: " + e.getMessage()));
                 })
                 .onErrorResume(e -> Mono.empty())
                 .then();
+
+        // 입장 제어: 사용자 토큰 한도 초과/서버 혼잡이면 트랜스코딩/STT 전에 바로 거절
+        return admission.admit(emitter.getUserId(), emitter, () -> pipeline);
     }
 
-    private boolean needsTranscode(String mimeType) {
-        if (mimeType == null) return true;
-        String m = mimeType.toLowerCase();
-        return (m.contains("webm") || m.contains("opus") || m.contains("ogg")) && !m.contains("wav");
+    /**
+     * 발화 하나를 인식한다. 우리가 만든 16k mono WAV(splittable)이고 단문 인식 길이 제한을 넘으면 구간으로 나눠 인식한다.
+     */
+    private Mono<String> transcribeText(String sessionId, DataBuffer wav, boolean splittable, Lang lang, WsEmitter emitter) {
+        if (splittable && isLongForm(wav)) return transcribeLong(sessionId, wav, lang, emitter);
+        return sttClient.transcribe(wav, lang.csr)
+                .map(this::extractTextField); // {"text": "..."}에서 text 추출
     }
 
-    private static String chat(String type, String txt) {
-        return "{\"type\":\"" + type + "\",\"text\":\"" + escape(txt) + "\"}";
+    /**
+     * 추측 STT로 미리 인식해 둔 앞부분 뒤에 꼬리(tail) 인식 결과를 잇는다. 앞부분/꼬리 인식은 동시에 진행된다.
+     * 앞부분 인식이 실패했으면(추측 무효) 앞부분 + 꼬리를 이어 한 번에 다시 인식한다.
+     * 지표
+     * - chat.stt.speculative (tag: outcome=hit|invalidated)
+     * - chat.stt.speculative.saved - 발화가 끝나기 전에 미리 써 둔 STT 시간 (그만큼 응답 지연이 줄어든다)
+     *
+     * @param tail 마지막 앞부분 이후의 꼬리 WAV (음성이 없으면 null, 읽기만 하고 release 하지 않음)
+     */
+    private Mono<String> stitch(String sessionId, Speculation spec, @Nullable DataBuffer tail, Lang lang, WsEmitter emitter) {
+        long endedAt = System.nanoTime();
+        Mono<String> prefix = spec.prefixText();
+        if (tail != null) {
+            // 꼬리를 기다리는 동안 앞부분 텍스트를 먼저 보여 준다.
+            prefix = prefix.doOnNext(t -> {
+                if (!t.isBlank()) emitter.emit(OutboundEvent.chat("STT_PARTIAL", t));
+            });
+        }
+        Mono<String> rest = tail == null ? Mono.just("") : transcribeText(sessionId, tail, true, lang, emitter)
+                .defaultIfEmpty("");
+        return Mono.zip(prefix, rest)
+                .map(t -> (t.getT1() + " " + t.getT2()).strip())
+                .doOnSuccess(t -> {
+                    meterRegistry.counter("chat.stt.speculative", "outcome", "hit").increment();
+                    meterRegistry.timer("chat.stt.speculative.saved")
+                            .record(spec.overlapNanos(endedAt), TimeUnit.NANOSECONDS);
+                })
+                .onErrorResume(e -> {
+                    log.warn("[PROC:{}] speculative STT invalidated, full pass: {}", sessionId, e.toString());
+                    meterRegistry.counter("chat.stt.speculative", "outcome", "invalidated").increment();
+                    List<DataBuffer> all = new ArrayList<>(spec.wavs());
+                    if (tail != null) all.add(tail);
+                    return Mono.usingWhen(Mono.fromSupplier(() -> AudioBuffers.concatWav(all)),
+                            full -> transcribeText(sessionId, full, true, lang, emitter),
+                            full -> Mono.fromRunnable(() -> DataBufferUtils.release(full)));
+                });
     }
 
-    private static String system(String msg) {
-        return "{\"type\":\"SYSTEM\",\"text\":\"" + escape(msg) + "\"}";
+    private boolean isLongForm(DataBuffer wav) {
+        AppProperties.Stt.LongForm cfg = props.getStt().getLongForm();
+        long samples = (wav.readableByteCount() - AudioUtils.WAV_HEADER_BYTES) / 2;
+        return cfg.isEnabled() && samples * 1000L / AudioUtils.STT_SAMPLE_RATE > cfg.getMaxSegmentMs();
     }
 
-    private static String escape(String s) {
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    /**
+     * 긴 음성: 쉼 지점에서 단문 인식 길이 이하의 구간으로 나눠 동시에 인식하고, 순서대로 이어 붙인다.
+     * 앞 구간부터 인식이 끝나는 대로 지금까지 이은 텍스트를 STT_PARTIAL로 보낸다.
+     * 지표: chat.stt.segments - 발화 하나를 나눈 구간 수
+     *
+     * @return 이어 붙인 전체 텍스트
+     */
+    private Mono<String> transcribeLong(String sessionId, DataBuffer wav, Lang lang, WsEmitter emitter) {
+        AppProperties.Stt.LongForm cfg = props.getStt().getLongForm();
+        List<DataBuffer> segments = VoiceActivityDetector.split(wav,
+                (int) ((long) cfg.getMaxSegmentMs() * AudioUtils.STT_SAMPLE_RATE / 1000),
+                (int) ((long) cfg.getSplitSearchMs() * AudioUtils.STT_SAMPLE_RATE / 1000));
+        log.info("[PROC:{}] long-form STT: {} segments", sessionId, segments.size());
+        meterRegistry.summary("chat.stt.segments").record(segments.size());
+
+        StringBuilder joined = new StringBuilder();
+        return sttClient.transcribeSegments(segments, lang.csr)
+                .mapNotNull(this::extractTextField) // 응답을 읽을 수 없는 구간은 건너뜀
+                .filter(text -> !text.isBlank())
+                .doOnNext(text -> {
+                    if (!joined.isEmpty()) joined.append(' ');
+                    joined.append(text.strip());
+                    emitter.emit(OutboundEvent.chat("STT_PARTIAL", joined.toString()));
+                })
+                .then(Mono.fromCallable(joined::toString));
+    }
+
+    /**
+     * WAV의 앞뒤 무음을 잘라낸다. (버퍼 안에서 처리, 복사 없음)
+     * 지표: chat.audio.vad.trimmed.ms - STT로 보내지 않은 무음 길이
+     *
+     * @return STT로 보낼 음성이 남았으면 true
+     */
+    private boolean trimSilence(String sessionId, DataBuffer wav, boolean auto, WsEmitter emitter) {
+        AppProperties.Audio.Vad vad = props.getAudio().getVad();
+        if (!vad.isEnabled()) return true;
+        int before = (wav.readableByteCount() - AudioUtils.WAV_HEADER_BYTES) / 2;
+        int kept = VoiceActivityDetector.trim(wav, vad);
+        long trimmedMs = Math.max(0, before - kept) * 1000L / AudioUtils.STT_SAMPLE_RATE;
+        meterRegistry.summary("chat.audio.vad.trimmed.ms").record(trimmedMs);
+        log.info("[PROC:{}] vad trim: {}ms -> {}ms", sessionId,
+                before * 1000L / AudioUtils.STT_SAMPLE_RATE, kept * 1000L / AudioUtils.STT_SAMPLE_RATE);
+        if (kept > 0) return true;
+
+        // 음성이 없다: 자동으로 끊은 발화이거나, 앞서 처리한 발화가 있으면 조용히 넘어간다.
+        Utterances u = utterances.get(sessionId);
+        if (!auto && (u == null || u.count == 0)) emitter.emit(OutboundEvent.system("음성이 감지되지 않았습니다."));
+        return false;
+    }
+
+    /**
+     * 스트리밍 변환기가 정상이면 남은 꼬리만 변환해 WAV를 받고, 아니면(또는 실패하면) 병합된 바이트를 일괄 변환한다.
+     * 지표: chat.audio.transcode (tag: mode=streaming|batch) - FINISH 이후 변환에 걸린 시간
+     */
+    private Mono<DataBuffer> transcode(String sessionId, DataBuffer merged, String mimeType) {
+        // 입장 제어에서 거절되면 구독되지 않으므로, 변환기는 구독 시점에 꺼낸다. (거절 시에는 complete()가 정리)
+        return Mono.defer(() -> doTranscode(sessionId, merged, mimeType))
+                // 취소 등으로 전달되지 못한 WAV 버퍼 정리
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * @return WAV 버퍼 (받은 쪽이 release. 변환이 필요 없으면 merged를 retain 해서 그대로 돌려준다)
+     */
+    private Mono<DataBuffer> doTranscode(String sessionId, DataBuffer merged, String mimeType) {
+        if (!needsTranscode(mimeType)) return Mono.fromSupplier(() -> DataBufferUtils.retain(merged));
+
+        StreamingTranscoder stream = streams.remove(sessionId);
+        if (stream == null) return batch(sessionId, merged, 0);
+        if (stream.isBroken()) {
+            stream.abort();
+            return batch(sessionId, merged, stream.utteranceEndSample());
+        }
+        Duration timeout = Duration.ofMillis(props.getAudio().getStreaming().getFinishTimeoutMs());
+        return timed("streaming", stream.finish(timeout))
+                .onErrorResume(e -> {
+                    log.warn("[PROC:{}] streaming transcode failed, falling back to batch: {}", sessionId, e.toString());
+                    // finish가 실패하면 변환기는 이미 abort 되었으므로 발화 끝 위치는 더 늘어나지 않는다.
+                    return batch(sessionId, merged, stream.utteranceEndSample());
+                });
+    }
+
+    /**
+     * 병합된 바이트(세션 전체)를 일괄 변환한다.
+     * 스트리밍 중에 VAD가 떼어 넘긴 발화는 이미 STT/RAG까지 처리되었으므로, 결과에서 그 끝(skipSamples)까지는 버리고
+     * 나머지(마지막 발화 이후)만 돌려준다. (같은 입력이면 일괄 변환과 스트리밍 디코더의 16k 출력 위치가 같다)
+     *
+     * @param skipSamples 이미 발화로 처리된 출력 샘플 수 (StreamingTranscoder.utteranceEndSample)
+     */
+    private Mono<DataBuffer> batch(String sessionId, DataBuffer merged, long skipSamples) {
+        // 일괄 변환은 다른 스레드에서 merged를 읽으므로 그동안 따로 retain 해 둔다.
+        // (이미 release된 뒤라면 retain이 실패해 에러로 끝난다)
+        // 일괄 변환은 세션 전체를 다시 변환하므로 스트리밍 중에 떼어 둔 앞부분(추측 STT)은 쓸 수 없다.
+        return timed("batch", Mono.fromCallable(() -> {
+                    discardSpeculation(sessionId);
+                    DataBuffer input = DataBufferUtils.retain(merged);
+                    DataBuffer wav;
+                    try {
+                        wav = transcoder.webmOpusToPcmWav16kMono(input);
+                    } finally {
+                        DataBufferUtils.release(input);
+                    }
+                    if (skipSamples > 0) {
+                        int left = AudioBuffers.dropLeadingSamples(wav, skipSamples);
+                        log.info("[PROC:{}] batch transcode: skipped {}ms already handled as utterances, {}ms left",
+                                sessionId, skipSamples * 1000 / AudioUtils.STT_SAMPLE_RATE,
+                                left * 1000L / AudioUtils.STT_SAMPLE_RATE);
+                    }
+                    return wav;
+                })
+                .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private Mono<DataBuffer> timed(String mode, Mono<DataBuffer> transcode) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return transcode.doOnNext(wav -> sample.stop(meterRegistry.timer("chat.audio.transcode", "mode", mode)));
+        });
+    }
+
+    private boolean needsTranscode(String mimeType) {
+        if (mimeType == null) return true;
+        String m = mimeType.toLowerCase();
+        return (m.contains("webm") || m.contains("opus") || m.contains("ogg")) && !m.contains("wav");
     }
 
     @Nullable
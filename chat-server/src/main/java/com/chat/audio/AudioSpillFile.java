@@ -0,0 +1,75 @@
+package com.chat.audio;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 세션 전용 메모리 매핑 임시 파일. 메모리 한도를 넘은 청크를 뒤에 이어 쓰고, 병합 때는 매핑 구간을 복사 없이 돌려준다.
+ * <p>
+ * 파일은 만든 직후 지운다. (열린 채널/매핑이 살아 있는 동안만 디스크에 남고, 프로세스가 죽어도 찌꺼기가 남지 않음)
+ * 매핑은 capacity만큼 미리 잡지만 쓴 만큼만 디스크를 쓴다. (sparse)
+ * 매핑 자체는 GC가 정리하므로, 병합 결과를 다 쓰기 전에 close 해도 안전하다.
+ */
+final class AudioSpillFile {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private int position;
+
+    private AudioSpillFile(FileChannel channel, MappedByteBuffer map) {
+        this.channel = channel;
+        this.map = map;
+    }
+
+    static AudioSpillFile create(Path dir, int capacity) throws IOException {
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, "audio-", ".spill");
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new AudioSpillFile(ch, map);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        } finally {
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    boolean fits(int bytes) {
+        return map.capacity() - position >= bytes;
+    }
+
+    /**
+     * 버퍼의 읽을 수 있는 구간을 이어 쓴다. (읽기 위치는 바꾸지 않고, release 하지 않는다)
+     *
+     * @return 매핑 구간 (읽기 전용)
+     */
+    ByteBuffer append(DataBuffer data) {
+        int start = position;
+        ByteBuffer dst = map.duplicate().position(start);
+        try (DataBuffer.ByteBufferIterator it = data.readableByteBuffers()) {
+            while (it.hasNext()) dst.put(it.next());
+        }
+        position = dst.position();
+        return map.slice(start, position - start).asReadOnlyBuffer();
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
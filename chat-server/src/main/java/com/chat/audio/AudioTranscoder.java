@@ -1,17 +1,31 @@
 package com.chat.audio;
 
 import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class AudioTranscoder {
 
     private final AppProperties props;
+    private final MeterRegistry meterRegistry;
+
+    // 일괄 변환과 스트리밍 변환이 같은 결과를 내도록 필터를 공유한다.
+    static final String AUDIO_FILTER =
+            "aformat=sample_fmts=s16:channel_layouts=mono,aresample=resampler=soxr:precision=33:cutoff=0.97:dither_method=triangular";
 
     /** webm/opus → WAV(PCM s16le, 16kHz, mono) */
     /**
@@ -23,8 +37,28 @@ public class AudioTranscoder {
      * 즉, merge 결과(바이트)를 ffmpeg에 입력으로 주고, ffmpeg가 출력 바이트를 만들어주면 그걸 STT로 보낸다.
      *
      *
+     * app.audio.in-process-decode가 켜져 있으면 먼저 프로세스 안에서 변환(WebmOpusDecoder)하고,
+     * WebM/Opus가 아니거나 읽을 수 없는 입력일 때만 ffmpeg를 띄운다.
+     * 지표: chat.audio.decode (tag: path=in-process|ffmpeg)
+     *
+     * @param webm 병합된 입력 (읽기만 하고 release 하지 않음)
+     * @return WAV가 담긴 버퍼 (호출자가 release)
      */
-    public byte[] webmOpusToPcmWav16kMono(byte[] webmBytes) throws IOException, InterruptedException {
+    public DataBuffer webmOpusToPcmWav16kMono(DataBuffer webm) throws IOException, InterruptedException {
+        if (props.getAudio().isInProcessDecode()) {
+            try {
+                DataBuffer wav = WebmOpusDecoder.toWav(webm);
+                meterRegistry.counter("chat.audio.decode", "path", "in-process").increment();
+                return wav;
+            } catch (WebmOpusDecoder.UnsupportedAudioException e) {
+                log.info("[AUDIO] in-process decode unsupported, using ffmpeg: {}", e.getMessage());
+            }
+        }
+        meterRegistry.counter("chat.audio.decode", "path", "ffmpeg").increment();
+        return AudioBuffers.FACTORY.wrap(ffmpegToWav(webm));
+    }
+
+    private byte[] ffmpegToWav(DataBuffer webm) throws IOException, InterruptedException {
         // 설정 파일에서 ffmpeg 실행 파일 경로를 가져온다.
         String ffmpeg = props.getAudio().getFfmpegPath();
         System.out.println("ffmpeg 경로:" + ffmpeg);
@@ -38,13 +72,13 @@ public class AudioTranscoder {
         File in = File.createTempFile("in-", ".webm");
         File out = File.createTempFile("out-", ".wav");
 
-        /**
-         * new FileOutputStream(in)은 in이 가리키는 파일을 쓰기 모드로 연다
-         * 기본은 덮어쓰기 모드, 파일 안의 기존 내용이 있다면 처음부터 다시 쓴다.
-         * 추가로 붙이고 싶으면 new FileOutputStream(in, true)처럼 두 번째 인자에 true를 줘야함
-         */
-        try (FileOutputStream fos = new FileOutputStream(in)) {
-            fos.write(webmBytes);
+        try (FileChannel ch = FileChannel.open(in.toPath(), StandardOpenOption.WRITE);
+             DataBuffer.ByteBufferIterator it = webm.readableByteBuffers()) {
+            // 병합 버퍼(여러 프레임 버퍼의 composite)를 힙 배열로 합치지 않고 조각별로 파일에 쓴다.
+            while (it.hasNext()) {
+                var bb = it.next();
+                while (bb.hasRemaining()) ch.write(bb);
+            }
         }
         File ff= new File(ffmpeg);
         if(!ff.exists() || !ff.isFile()){
@@ -66,7 +100,7 @@ public class AudioTranscoder {
                 "-i", in.getAbsolutePath(),
                 "-vn", "-sn",
                 "-ac", "1", "-ar", "16000",
-                "-af", "aformat=sample_fmts=s16:channel_layouts=mono,aresample=resampler=soxr:precision=33:cutoff=0.97:dither_method=triangular",
+                "-af", AUDIO_FILTER,
                 "-c:a", "pcm_s16le",
                 "-map_metadata", "-1",
                 "-fflags", "+bitexact",
@@ -124,4 +158,57 @@ public class AudioTranscoder {
         return wav;
 
     }
+
+    /**
+     * 세션용 스트리밍 변환기를 시작한다.
+     * WebM이고 app.audio.in-process-decode가 켜져 있으면 프로세스 안에서 디코드하고(fork 없음),
+     * 그 밖에는 ffmpeg를 하나 띄워 stdin으로 청크를 넣고 stdout에서 PCM s16le 16k mono를 받는다.
+     * (입력이 파이프라 ffmpeg가 컨테이너를 앞에서부터 읽으며 변환하고, -flush_packets 1로 변환된 PCM을 바로 내보낸다)
+     * 변환기를 시작할 수 없으면 broken 상태의 변환기를 돌려주므로 호출자는 일괄 변환을 쓴다.
+     *
+     * @param onUtterance null이 아니고 app.audio.vad.auto-finish가 켜져 있으면, 발화 끝을 감지할 때마다 그때까지의 WAV를 넘긴다.
+     *                    (프로세스 내 디코드일 때만. ffmpeg 변환기는 FINISH에서 한 번에 돌려준다)
+     * @param onPrefix    null이 아니고 app.stt.speculative.enabled가 켜져 있으면, 발화 중간의 쉼에서 앞부분 WAV를 미리 넘긴다.
+     */
+    StreamingTranscoder openStream(String sessionId, String mimeType,
+                                   @Nullable Consumer<DataBuffer> onUtterance, @Nullable Consumer<DataBuffer> onPrefix) {
+        int maxPending = props.getAudio().getStreaming().getMaxPendingChunks();
+        if (props.getAudio().isInProcessDecode() && mimeType != null && mimeType.toLowerCase().contains("webm")) {
+            AppProperties.Audio.Vad vad = props.getAudio().getVad();
+            AppProperties.Stt.Speculative spec = props.getStt().getSpeculative();
+            boolean split = onUtterance != null && vad.isEnabled() && vad.isAutoFinish();
+            boolean speculate = onPrefix != null && vad.isEnabled() && spec.isEnabled();
+
+            WebmOpusDecoder decoder = new WebmOpusDecoder(0);
+            if (split || speculate) {
+                decoder.splitOnSilence(new VoiceActivityDetector(vad), vad.getIdleDropMs(), split ? onUtterance : null);
+            }
+            if (speculate) decoder.speculate(spec.getPrefixMs(), spec.getPauseMs(), onPrefix);
+            StreamingTranscoder.InProcess backend = new StreamingTranscoder.InProcess(decoder);
+            return StreamingTranscoder.start(sessionId, backend, maxPending);
+        }
+
+        String ffmpeg = props.getAudio().getFfmpegPath();
+        File ff = ffmpeg == null ? null : new File(ffmpeg);
+        if (ff == null || !ff.isFile()) {
+            return StreamingTranscoder.disabled(sessionId, "ffmpeg 실행 파일을 찾을 수 없습니다.");
+        }
+        List<String> command = List.of(
+                ffmpeg, "-hide_banner", "-loglevel", "error",
+                "-i", "pipe:0",
+                "-vn", "-sn",
+                "-ac", "1", "-ar", String.valueOf(AudioUtils.STT_SAMPLE_RATE),
+                "-af", AUDIO_FILTER,
+                "-c:a", "pcm_s16le",
+                "-map_metadata", "-1",
+                "-fflags", "+bitexact",
+                "-flush_packets", "1",
+                "-f", "s16le", "pipe:1"
+        );
+        try {
+            return StreamingTranscoder.start(sessionId, new StreamingTranscoder.Ffmpeg(command), maxPending);
+        } catch (IOException e) {
+            return StreamingTranscoder.disabled(sessionId, "ffmpeg start failed: " + e.getMessage());
+        }
+    }
 }
@@ -1,6 +1,39 @@
 package com.chat.audio;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 public class AudioUtils {
     private AudioUtils(){}
 
+    public static final int STT_SAMPLE_RATE = 16_000;
+    public static final int WAV_HEADER_BYTES = 44;
+
+    /**
+     * 44바이트 WAV(RIFF) 헤더. ffmpeg가 파이프(stdout)로 WAV를 쓰면 길이 필드를 채울 수 없으므로,
+     * 스트리밍 변환은 raw PCM을 받아 이 헤더를 붙인다.
+     */
+    public static byte[] wavHeader(int pcmLength, int sampleRate, int channels) {
+        byte[] header = new byte[WAV_HEADER_BYTES];
+        writeWavHeader(header, pcmLength, sampleRate, channels);
+        return header;
+    }
+
+    /**
+     * dst 앞 44바이트에 WAV 헤더를 쓴다. (PCM을 dst[44..]에 직접 쓴 경우 복사 없이 WAV를 만들 때 사용)
+     */
+    public static void writeWavHeader(byte[] dst, int pcmLength, int sampleRate, int channels) {
+        int byteRate = sampleRate * channels * 2;
+        ByteBuffer.wrap(dst, 0, WAV_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                .put(new byte[]{'R', 'I', 'F', 'F'}).putInt(36 + pcmLength)
+                .put(new byte[]{'W', 'A', 'V', 'E'})
+                .put(new byte[]{'f', 'm', 't', ' '}).putInt(16)
+                .putShort((short) 1)                 // PCM
+                .putShort((short) channels)
+                .putInt(sampleRate)
+                .putInt(byteRate)
+                .putShort((short) (channels * 2))    // block align
+                .putShort((short) 16)                // bits per sample
+                .put(new byte[]{'d', 'a', 't', 'a'}).putInt(pcmLength);
+    }
 }
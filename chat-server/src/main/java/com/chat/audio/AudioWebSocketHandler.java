@@ -1,26 +1,22 @@
 package com.chat.audio;
 
-import com.chat.audio.model.AudioChunk;
 import com.chat.audio.model.AudioMeta;
+import com.chat.chat.model.OutboundEvent;
 import com.chat.common.json.JsonUtils;
 import com.chat.common.ws.SessionRegistry;
 import com.chat.common.ws.WsEmitter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
 import reactor.core.publisher.Mono;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.time.Duration;
-import java.util.Arrays;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.LongAdder;
+import java.util.Optional;
 
 @Slf4j
 @Component
@@ -29,13 +25,16 @@ public class AudioWebSocketHandler implements WebSocketHandler {
 
     private final SessionRegistry registry;
     private final AudioProcessor processor;
+    private final AudioMemoryBudget memoryBudget;
 
     @Override
     public Mono<Void> handle(WebSocketSession session) {
+        // 파드 종료 중이면 새 녹음은 받지 않는다. (1012: 클라이언트가 다시 연결해 다른 파드로 붙는다)
+        if (registry.isDraining()) return session.close(CloseStatus.SERVICE_RESTARTED);
         final String sid = session.getId();
         final WsEmitter emitter = registry.createEmitter(sid, session);
         final long startedAtNanos = System.nanoTime();
-        final AudioAggregator aggregator = new AudioAggregator();
+        final AudioAggregator aggregator = new AudioAggregator(sid, memoryBudget);
 
         var inbound = session.receive()
                 .flatMap(msg -> {
@@ -45,25 +44,29 @@ public class AudioWebSocketHandler implements WebSocketHandler {
                         // 수신
                         var text = msg.getPayloadAsText();
                         System.out.println(text);
-                        // FINISH: 짧은 디바운스 후 병합 → 처리 완료 시 소켓 종료
+                        // FINISH: 병합 → 처리 완료 시 소켓 종료
+                        // (발화 끝은 서버 VAD가 먼저 감지해 처리할 수 있고, FINISH는 남은 꼬리만 처리한다)
                         if (text.startsWith("{") && text.contains("\"type\":\"FINISH\"")) {
                             return Mono.defer(() -> {
                                 try {
                                     if (aggregator.meta == null || isBlank(aggregator.meta.getLang())) {
                                         log.warn("[AUDIO:{}] FINISH without lang/meta", sid);
-                                        emitter.emitText(system("언어를 선택하세요."));
+                                        aggregator.discard();
+                                        emitter.emit(OutboundEvent.system("언어를 선택하세요."));
                                         emitter.complete();
                                         return Mono.empty();
                                     }
-                                    // 늦게 도착하는 마지막 청크 수용
-                                    return Mono.delay(Duration.ofMillis(180))
-                                            .then(Mono.fromCallable(aggregator::merge))
-                                            .flatMap(merged -> {
-                                                int len = merged == null ? -1 : merged.length;
+                                    // 대기 없이 바로 병합한다. WebSocket은 한 연결 안에서 메시지 순서를 보장하고,
+                                    // BINARY 프레임은 받는 즉시(동기로) 병합기에 넣으므로 FINISH 앞에 보낸 청크는 이미 모두 들어와 있다.
+                                    return Mono.fromCallable(() -> Optional.ofNullable(aggregator.merge(session.bufferFactory())))
+                                            .flatMap(opt -> {
+                                                DataBuffer merged = opt.orElse(null);
+                                                int len = merged == null ? -1 : merged.readableByteCount();
                                                 log.info("[AUDIO:{}] merged {}B on FINISH", sid, len);
 
-                                                if (merged == null || merged.length == 0) {
-                                                    emitter.emitText(system("녹음된 오디오가 없습니다."));
+                                                if (merged == null || len == 0) {
+                                                    if (merged != null) DataBufferUtils.release(merged);
+                                                    emitter.emit(OutboundEvent.system("녹음된 오디오가 없습니다."));
                                                     // cleanup & complete
                                                     processor.complete(sid);
                                                     registry.cleanup(sid);
@@ -72,11 +75,11 @@ public class AudioWebSocketHandler implements WebSocketHandler {
                                                 }
                                                 String mime = (aggregator.meta != null ? aggregator.meta.getMimeType() : null);
 
-                                                // 처리 완료/오류 시점에서만 소켓 종료
+                                                // 처리 완료/오류 시점에서만 소켓 종료 (merged는 processFinal이 release)
                                                 return processor.processFinal(sid, merged, mime, emitter)
                                                         .doOnError(e -> {
                                                             log.error("[AUDIO:{}] process failed on FINISH", sid, e);
-                                                            emitter.emitText(system("오디오 처리 오류: " + e.getMessage()));
+                                                            emitter.emit(OutboundEvent.system("오디오 처리 오류: " + e.getMessage()));
                                                         })
                                                         .doFinally(s -> {
                                                             processor.complete(sid);
@@ -86,7 +89,7 @@ public class AudioWebSocketHandler implements WebSocketHandler {
                                             });
                                 } catch (Exception e) {
                                     log.error("[AUDIO:{}] process failed on FINISH-enter", sid, e);
-                                    emitter.emitText(system("오디오 처리 오류: " + e.getMessage()));
+                                    emitter.emit(OutboundEvent.system("오디오 처리 오류: " + e.getMessage()));
                                     emitter.complete();
                                     return Mono.empty();
                                 }
@@ -127,28 +130,29 @@ public class AudioWebSocketHandler implements WebSocketHandler {
                      *
                      */
                     if (msg.getType() == WebSocketMessage.Type.BINARY) {
-                        return Mono.fromSupplier(() -> {
-                                    var db = msg.getPayload();
-                                    System.out.println(db);
-                                    byte[] bytes = new byte[db.readableByteCount()];
-                                    db.read(bytes);
-                                    return bytes;
-                                })
-                                .doOnNext(bytes -> {
-                                    if (bytes.length < 4) {
-                                        log.warn("[AUDIO:{}] invalid chunk(<4B)", sid);
-                                        return;
-                                    }
-                                    int seq = toIntBE(bytes, 0); // 클라 DataView.setUint32(0, seq)와 호환
-                                    byte[] payload = Arrays.copyOfRange(bytes, 4, bytes.length);
-
-                                    aggregator.add(seq, payload);
-                                    log.info("[AUDIO:{}] recv seq={} payload={}B", sid, seq, payload.length);
+                        // 프레임 버퍼(Netty 풀 버퍼)를 힙 배열로 복사하지 않는다.
+                        // seq 헤더만큼 읽기 위치를 옮기고, 병합기가 보관할 몫은 retain 한다.
+                        // (프레임 자체는 이 핸들러가 돌아간 뒤 Reactor Netty가 release)
+                        return Mono.fromRunnable(() -> {
+                            DataBuffer db = msg.getPayload();
+                            if (db.readableByteCount() < 4) {
+                                log.warn("[AUDIO:{}] invalid chunk(<4B)", sid);
+                                return;
+                            }
+                            int pos = db.readPosition();
+                            int seq = toIntBE(db, pos); // 클라 DataView.setUint32(0, seq)와 호환
+                            db.readPosition(pos + 4);
+
+                            AudioAggregator.AddResult added = aggregator.add(seq, DataBufferUtils.retain(db));
+                            if (added != AudioAggregator.AddResult.OK) {
+                                reject(session, emitter, aggregator, added);
+                                return;
+                            }
+                            log.info("[AUDIO:{}] recv seq={} payload={}B", sid, seq, db.readableByteCount());
 
-                                    long tsMs = (System.nanoTime() - startedAtNanos) / 1_000_000L;
-                                    processor.onChunk(sid, new AudioChunk(payload, tsMs));
-                                })
-                                .then();
+                            long tsMs = (System.nanoTime() - startedAtNanos) / 1_000_000L;
+                            processor.onChunk(sid, seq, db, tsMs);
+                        });
                     }
 
                     return Mono.empty();
@@ -159,9 +163,10 @@ public class AudioWebSocketHandler implements WebSocketHandler {
                                 if (!aggregator.isClosed()) {
                                     if (aggregator.meta == null || isBlank(aggregator.meta.getLang())) {
                                         log.warn("[AUDIO:{}] finally without lang/meta, skip", sid);
+                                        aggregator.discard();
                                     } else {
-                                        byte[] merged = aggregator.merge();
-                                        if (merged != null && merged.length > 0) {
+                                        DataBuffer merged = aggregator.merge(session.bufferFactory());
+                                        if (merged != null && merged.readableByteCount() > 0) {
                                             String mime = (aggregator.meta != null ? aggregator.meta.getMimeType() : null);
                                             processor.processFinal(sid, merged, mime, emitter)
                                                     .doOnSubscribe(s -> System.out.println("processFinal 구독"))
@@ -174,6 +179,7 @@ public class AudioWebSocketHandler implements WebSocketHandler {
                                                     })
                                                     .subscribe();
                                         } else {
+                                            if (merged != null) DataBufferUtils.release(merged);
                                             processor.complete(sid);
                                             registry.cleanup(sid);
                                             emitter.complete();
@@ -200,65 +206,33 @@ public class AudioWebSocketHandler implements WebSocketHandler {
 
     // -------- helpers --------
 
-    private static int toIntBE(byte[] a, int off) {
-        return ((a[off] & 0xFF) << 24)
-                | ((a[off + 1] & 0xFF) << 16)
-                | ((a[off + 2] & 0xFF) << 8)
-                | (a[off + 3] & 0xFF);
+    /**
+     * 오디오 보관 한도를 넘은 세션을 닫는다.
+     * - 세션 최대 크기 초과: 1009 (TOO_BIG_TO_PROCESS)
+     * - 파드 메모리/임시 파일 부족: 1013 (SERVICE_OVERLOAD, 클라이언트가 나중에 다시 시도)
+     */
+    private void reject(WebSocketSession session, WsEmitter emitter, AudioAggregator aggregator, AudioAggregator.AddResult reason) {
+        String sid = session.getId();
+        boolean tooBig = reason == AudioAggregator.AddResult.SESSION_LIMIT;
+        log.warn("[AUDIO:{}] audio memory limit exceeded: {}", sid, reason);
+        memoryBudget.rejected(tooBig ? "session" : "global");
+
+        aggregator.discard();
+        emitter.emit(OutboundEvent.system(tooBig ? "녹음이 너무 깁니다." : "현재 요청이 많아 처리할 수 없습니다. 잠시 후 다시 시도해 주세요."));
+        processor.complete(sid);
+        registry.cleanup(sid);
+        emitter.complete();
+        session.close(tooBig ? CloseStatus.TOO_BIG_TO_PROCESS : CloseStatus.SERVICE_OVERLOAD).subscribe();
     }
 
-    private static String system(String msg) {
-        return "{\"type\":\"SYSTEM\",\"text\":\"" + msg.replace("\"", "\\\"") + "\"}";
+    private static int toIntBE(DataBuffer b, int off) {
+        return ((b.getByte(off) & 0xFF) << 24)
+                | ((b.getByte(off + 1) & 0xFF) << 16)
+                | ((b.getByte(off + 2) & 0xFF) << 8)
+                | (b.getByte(off + 3) & 0xFF);
     }
 
     private static boolean isBlank(String s) {
         return s == null || s.isBlank();
     }
-
-    /**
-     * seq 기준 정렬/병합기.
-     * MediaRecorder 조각은 컨테이너 레벨 완전 보장되진 않으므로, 최종 파일은 서버에서 remux/변환 권장.
-     */
-    static final class AudioAggregator {
-        private final ConcurrentSkipListMap<Integer, byte[]> ordered = new ConcurrentSkipListMap<>();
-        private final AtomicBoolean closed = new AtomicBoolean(false);
-        private final LongAdder totalBytes = new LongAdder();
-        volatile AudioMeta meta;
-
-        void setMeta(AudioMeta meta) {
-            this.meta = meta;
-        }
-
-        void add(int seq, byte[] payload) {
-            if (closed.get()) return;
-            ordered.compute(seq, (k, v) -> {
-                if (v == null) {
-                    totalBytes.add(payload.length);
-                    return payload;
-                }
-                // 중복 seq 방어: 최초 것만 유지
-                return v;
-            });
-        }
-
-        boolean isClosed() {
-            return closed.get();
-        }
-
-        byte[] merge() {
-            if (!closed.compareAndSet(false, true)) return new byte[0];
-            long size = totalBytes.sum();
-            if (size <= 0) return new byte[0];
-            ByteArrayOutputStream bos = new ByteArrayOutputStream((int) Math.min(size, Integer.MAX_VALUE));
-            try {
-                for (var e : ordered.entrySet()) bos.write(e.getValue());
-                return bos.toByteArray();
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            } finally {
-                ordered.clear();
-            }
-        }
-    }
-
 }
@@ -0,0 +1,90 @@
+package com.chat.audio;
+
+/**
+ * 정수배 다운샘플러 (48kHz -> 16kHz 등). 저역통과 FIR을 거친 뒤 factor개마다 한 샘플을 취한다.
+ * 버려질 샘플의 필터 출력은 계산하지 않으므로(polyphase decimation) 출력 샘플당 taps번의 곱셈만 한다.
+ * <p>
+ * 상태(history)를 유지하므로 입력을 나눠서 넣어도 이어서 처리된다. 세션 하나에서만 사용한다. (thread-safe 아님)
+ * <p>
+ * 필터 지연((TAPS-1)/2 입력 샘플)은 보정한다. 출력 샘플 k는 입력 샘플 k*factor에 맞춰지고(ffmpeg/soxr와 같은 정렬),
+ * 입력이 끝나면 flush()로 필터에 남은 꼬리를 내보낸다.
+ */
+final class PolyphaseResampler {
+
+    private static final int TAPS = 121;
+    private static final int DELAY = (TAPS - 1) / 2;
+
+    private final int factor;
+    private final float[] coeffs;
+    // 같은 값을 두 번(i, i+TAPS) 써서, 링 버퍼에서도 창 하나를 연속 구간으로 읽는다.
+    private final float[] history = new float[TAPS * 2];
+    private int pos;
+    private int phase;
+    // 필터 중심이 첫 입력 샘플에 닿기 전의 출력 (앞쪽 0으로 채운 구간) 수
+    private int skip;
+
+    PolyphaseResampler(int factor) {
+        this.factor = factor;
+        this.coeffs = lowPass(TAPS, 0.5 / factor * 0.95);
+        // 가장 최근 입력의 위치가 DELAY와 같은 나머지(mod factor)일 때 출력하도록 위상을 맞춘다.
+        this.phase = Math.floorMod(factor - 1 - DELAY, factor);
+        this.skip = DELAY / factor;
+    }
+
+    /**
+     * 입력 샘플 하나를 넣고, 출력 샘플이 나오는 차례면 out에 쓴다.
+     *
+     * @return 출력 샘플을 썼으면 true
+     */
+    boolean push(int sample, ShortSink out) {
+        history[pos] = sample;
+        history[pos + TAPS] = sample;
+        pos = (pos + 1) % TAPS;
+        if (++phase < factor) return false;
+        phase = 0;
+        if (skip > 0) {
+            skip--;
+            return false;
+        }
+
+        // history[pos .. pos+TAPS) = 가장 오래된 샘플부터 최신 샘플까지
+        float acc = 0f;
+        for (int i = 0; i < TAPS; i++) {
+            acc += coeffs[i] * history[pos + i];
+        }
+        int v = Math.round(acc);
+        out.put((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v)));
+        return true;
+    }
+
+    /**
+     * 입력 끝. 필터에 남은 마지막 입력 샘플들의 출력을 내보낸다. (이후에는 push하지 않는다)
+     */
+    void flush(ShortSink out) {
+        for (int i = 0; i < DELAY; i++) push(0, out);
+    }
+
+    /**
+     * Blackman 창을 씌운 sinc 저역통과 필터. cutoff는 입력 샘플레이트 대비 비율(0~0.5), DC 이득 1로 정규화.
+     */
+    private static float[] lowPass(int taps, double cutoff) {
+        double[] h = new double[taps];
+        double sum = 0;
+        int m = taps - 1;
+        for (int i = 0; i < taps; i++) {
+            double x = i - m / 2.0;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double w = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / m) + 0.08 * Math.cos(4 * Math.PI * i / m);
+            h[i] = sinc * w;
+            sum += h[i];
+        }
+        float[] out = new float[taps];
+        for (int i = 0; i < taps; i++) out[i] = (float) (h[i] / sum);
+        return out;
+    }
+
+    @FunctionalInterface
+    interface ShortSink {
+        void put(short sample);
+    }
+}
@@ -0,0 +1,94 @@
+package com.chat.audio;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 발화 하나의 추측 STT 상태. 발화 중간의 쉼에서 떼어 낸 앞부분(piece)들과, 미리 시작해 둔 각 부분의 인식 결과를 모은다.
+ * <p>
+ * 발화가 끝나면 호출자는 나머지 꼬리만 인식해 앞부분 결과 뒤에 잇는다.
+ * 앞부분 인식이 하나라도 실패하면 추측은 무효이고, 보관해 둔 앞부분 + 꼬리를 이어 한 번에 다시 인식한다.
+ * 앞부분 WAV는 그때를 위해 discard 전까지 보관한다.
+ */
+final class Speculation {
+
+    private static final class Piece {
+        final DataBuffer wav;
+        final Mono<String> text;
+        final long startedAt = System.nanoTime();
+        volatile long doneAt;
+
+        Piece(DataBuffer wav, Function<DataBuffer, Mono<String>> stt) {
+            this.wav = wav;
+            this.text = stt.apply(wav).doFinally(sig -> doneAt = System.nanoTime()).cache();
+        }
+    }
+
+    private final List<Piece> pieces = new ArrayList<>();
+    private boolean discarded;
+
+    /**
+     * 앞부분 하나를 받아 바로 인식을 시작한다. wav의 소유권을 넘겨받는다.
+     *
+     * @param stt 인식 요청 (텍스트를 내보내고, 읽을 수 없는 응답이면 에러)
+     */
+    synchronized void add(DataBuffer wav, Function<DataBuffer, Mono<String>> stt) {
+        if (discarded) {
+            DataBufferUtils.release(wav);
+            return;
+        }
+        Piece p = new Piece(wav, stt);
+        pieces.add(p);
+        p.text.subscribe(v -> { }, e -> { });
+    }
+
+    synchronized boolean isEmpty() {
+        return pieces.isEmpty();
+    }
+
+    /**
+     * 앞부분 인식 결과를 순서대로 이은 텍스트. (아직 진행 중이면 기다린다)
+     */
+    synchronized Mono<String> prefixText() {
+        List<Mono<String>> texts = pieces.stream().map(p -> p.text).toList();
+        return Flux.concat(texts)
+                .filter(t -> !t.isBlank())
+                .map(String::strip)
+                .collectList()
+                .map(list -> String.join(" ", list));
+    }
+
+    /**
+     * 앞부분 WAV들 (전체 재인식용, 읽기만 하고 release 하지 않는다)
+     */
+    synchronized List<DataBuffer> wavs() {
+        return pieces.stream().map(p -> p.wav).toList();
+    }
+
+    /**
+     * 발화가 끝나기 전에 이미 써 둔 인식 시간(ns). 각 앞부분 요청이 endedAt 이전에 진행된 시간의 합.
+     */
+    synchronized long overlapNanos(long endedAt) {
+        long sum = 0;
+        for (Piece p : pieces) {
+            long done = p.doneAt == 0 ? endedAt : Math.min(p.doneAt, endedAt);
+            sum += Math.max(0, done - p.startedAt);
+        }
+        return sum;
+    }
+
+    /**
+     * 보관 중인 앞부분을 모두 release 한다. (여러 번 불러도 됨)
+     */
+    synchronized void discard() {
+        if (discarded) return;
+        discarded = true;
+        pieces.forEach(p -> DataBufferUtils.release(p.wav));
+    }
+}
@@ -0,0 +1,314 @@
+package com.chat.audio;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 세션 하나의 스트리밍 트랜스코더. (webm/opus -> PCM s16le 16k mono)
+ * <p>
+ * 첫 청크에서 변환기(Backend)를 열고, seq 순서대로 이어지는 청크를 도착하는 즉시 흘려 넣는다.
+ * - InProcess: WebmOpusDecoder로 프로세스 안에서 디먹스/디코드/리샘플 (fork 없음). VAD로 발화 단위 분리 가능
+ * - Ffmpeg: 세션마다 ffmpeg 하나를 띄워 stdin으로 넣고 stdout의 PCM을 백그라운드에서 읽어 둔다.
+ * FINISH 시에는 입력을 닫아 남은 꼬리만 변환하면 되므로, 말이 끝난 뒤의 변환 지연이 거의 없다.
+ * <p>
+ * 청크는 복사하지 않고 WebSocket 프레임 버퍼를 retain 해서 넘기며, 변환기에 쓴 뒤 release 한다.
+ * <p>
+ * 스트림으로 이어 붙일 수 없는 상황(변환기 시작 실패, 앞선 seq가 늦게 도착, 빠진 seq가 많음, 변환 오류)이 되면
+ * broken 상태가 되고, 호출자는 기존 방식(병합 후 일괄 변환)으로 처리한다.
+ */
+@Slf4j
+final class StreamingTranscoder {
+
+    /**
+     * 실제 변환기. write는 순서대로 한 스레드(boundedElastic)에서만 호출된다.
+     */
+    interface Backend {
+        /** 버퍼의 읽을 수 있는 구간을 변환기에 넣는다. (release는 호출자가 한다) */
+        void write(DataBuffer chunk) throws IOException;
+
+        /** 입력이 끝난 뒤 호출. 남은 꼬리를 변환해 WAV가 담긴 풀 버퍼를 돌려준다. (받은 쪽이 release) */
+        Mono<DataBuffer> finish();
+
+        void abort();
+
+        /** 발화 단위로 나눠 넘긴 마지막 발화의 끝 위치 (입력 처음부터 센 16k 출력 샘플 수, 나누지 않으면 0) */
+        default long utteranceEndSample() {
+            return 0;
+        }
+    }
+
+    private final String sessionId;
+    private final Backend backend;
+    private final int maxPendingChunks;
+
+    // 소켓 스레드 -> 변환 스레드 (쓰기/디코드는 블로킹/CPU 작업이므로 boundedElastic에서 순서대로)
+    private final Sinks.Many<DataBuffer> input = Sinks.many().unicast().onBackpressureBuffer();
+    private final Mono<Void> written;
+
+    // seq 재정렬 상태 (this로 동기화)
+    private final TreeMap<Integer, DataBuffer> pending = new TreeMap<>();
+    private int baseSeq = -1;
+    private int nextSeq = -1;
+    private volatile boolean broken;
+    private volatile String brokenReason;
+
+    private StreamingTranscoder(String sessionId, Backend backend, int maxPendingChunks) {
+        this.sessionId = sessionId;
+        this.backend = backend;
+        this.maxPendingChunks = maxPendingChunks;
+        this.written = input.asFlux()
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(chunk -> {
+                    try {
+                        backend.write(chunk);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        DataBufferUtils.release(chunk);
+                    }
+                })
+                .doOnError(e -> markBroken("transcode input failed: " + e.getMessage()))
+                // 에러/중단으로 쓰지 못하고 버려지는 청크도 release
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .then()
+                .cache();
+        this.written.subscribe(v -> { }, e -> { });
+    }
+
+    static StreamingTranscoder start(String sessionId, Backend backend, int maxPendingChunks) {
+        log.info("[AUDIO:{}] streaming transcoder start ({})", sessionId, backend.getClass().getSimpleName());
+        return new StreamingTranscoder(sessionId, backend, maxPendingChunks);
+    }
+
+    /**
+     * 스트리밍을 쓰지 않는 세션용 (meta 없음, 변환 불필요, 변환기 시작 실패 등). 항상 broken이므로 호출자는 일괄 변환을 쓴다.
+     */
+    static StreamingTranscoder disabled(String sessionId, String reason) {
+        StreamingTranscoder t = new StreamingTranscoder(sessionId, null, 0);
+        t.markBroken(reason);
+        return t;
+    }
+
+    /**
+     * 청크 하나를 받는다. seq가 이어지는 만큼 바로 변환기에 넘기고, 앞 seq가 빠져 있으면 잠시 보관한다.
+     * payload는 호출자 소유로 두고, 필요하면 여기서 retain 한다.
+     */
+    synchronized void accept(int seq, DataBuffer payload) {
+        if (broken) return;
+        if (baseSeq < 0) {
+            baseSeq = seq;
+            nextSeq = seq;
+        }
+        if (seq < baseSeq) {
+            // 첫 청크(컨테이너 헤더)보다 앞선 조각이 늦게 왔다 -> 이미 보낸 스트림에 끼워 넣을 수 없음
+            markBroken("late chunk seq=" + seq + " < first seq=" + baseSeq);
+            return;
+        }
+        if (seq < nextSeq || pending.containsKey(seq)) return; // 중복 seq
+        pending.put(seq, DataBufferUtils.retain(payload));
+
+        DataBuffer next;
+        while ((next = pending.remove(nextSeq)) != null) {
+            input.tryEmitNext(next);
+            nextSeq++;
+        }
+        if (pending.size() > maxPendingChunks) {
+            markBroken("missing chunk seq=" + nextSeq + " (" + pending.size() + " chunks waiting)");
+        }
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * 이미 발화로 넘긴 부분의 끝 위치 (입력 처음부터 센 16k 출력 샘플 수).
+     * 일괄 변환으로 대체할 때 이 앞부분은 다시 처리하지 않는다. abort() 뒤에 읽어야 더 늘어나지 않는다.
+     */
+    long utteranceEndSample() {
+        return backend == null ? 0 : backend.utteranceEndSample();
+    }
+
+    String brokenReason() {
+        return brokenReason;
+    }
+
+    /**
+     * 입력을 닫고 남은 꼬리가 변환되기를 기다린 뒤, WAV(PCM 16k mono)를 돌려준다.
+     * 중간에 빠진 seq가 있거나 변환이 실패하면 에러로 끝난다. (호출자가 일괄 변환으로 대체)
+     *
+     * @return WAV가 담긴 풀 버퍼 (받은 쪽이 release)
+     */
+    Mono<DataBuffer> finish(Duration timeout) {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                if (!broken && !pending.isEmpty()) {
+                    markBroken("missing chunk seq=" + nextSeq + " at finish");
+                }
+            }
+            if (broken) {
+                abort();
+                return Mono.error(new IOException("streaming transcode unusable: " + brokenReason));
+            }
+            input.tryEmitComplete();
+            return written
+                    .then(Mono.defer(() -> broken
+                            ? Mono.<DataBuffer>error(new IOException("streaming transcode unusable: " + brokenReason))
+                            : backend.finish()))
+                    .timeout(timeout)
+                    .doOnError(e -> abort())
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        });
+    }
+
+    /**
+     * 변환을 중단한다. (세션 종료/오류 시)
+     */
+    void abort() {
+        markBroken(brokenReason != null ? brokenReason : "aborted");
+        input.tryEmitComplete();
+        if (backend != null) backend.abort();
+    }
+
+    private synchronized void markBroken(String reason) {
+        if (!broken) {
+            broken = true;
+            brokenReason = reason;
+            log.warn("[AUDIO:{}] streaming transcode disabled: {}", sessionId, reason);
+        }
+        pending.values().forEach(DataBufferUtils::release);
+        pending.clear();
+    }
+
+    /**
+     * 프로세스 안에서 디코드하는 변환기 (WebM/Opus 전용)
+     */
+    static final class InProcess implements Backend {
+        private final WebmOpusDecoder decoder;
+
+        InProcess() {
+            this(new WebmOpusDecoder(0));
+        }
+
+        /**
+         * 발화 분리/미리 떼기(splitOnSilence, speculate)를 설정한 디코더를 쓴다. 콜백은 변환 스레드에서 호출된다.
+         */
+        InProcess(WebmOpusDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        // abort는 다른 스레드에서 올 수 있으므로 디코더 접근은 this로 직렬화한다.
+        @Override
+        public synchronized void write(DataBuffer chunk) throws IOException {
+            decoder.feed(chunk);
+        }
+
+        @Override
+        public Mono<DataBuffer> finish() {
+            return Mono.fromCallable(() -> {
+                synchronized (this) {
+                    return decoder.finish();
+                }
+            }).subscribeOn(Schedulers.boundedElastic());
+        }
+
+        @Override
+        public synchronized void abort() {
+            decoder.release();
+        }
+
+        @Override
+        public long utteranceEndSample() {
+            return decoder.utteranceEndSample();
+        }
+    }
+
+    /**
+     * 세션 전용 ffmpeg 프로세스 변환기 (WebM 외 컨테이너 등)
+     */
+    static final class Ffmpeg implements Backend {
+        private final Process process;
+        private final OutputStream stdin;
+        private final WritableByteChannel stdinChannel;
+        private final Mono<byte[]> pcm;
+        private final StringBuffer stderrTail = new StringBuffer();
+
+        Ffmpeg(List<String> command) throws IOException {
+            this.process = new ProcessBuilder(command).start();
+            this.stdin = process.getOutputStream();
+            this.stdinChannel = Channels.newChannel(stdin);
+
+            // stdout(PCM)은 ffmpeg가 쓰는 대로 읽어 둔다. (안 읽으면 파이프가 가득 차 ffmpeg가 멈춘다)
+            InputStream stdout = process.getInputStream();
+            this.pcm = Mono.fromCallable(stdout::readAllBytes)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .cache();
+            this.pcm.subscribe(v -> { }, e -> { });
+
+            // stderr는 오류 메시지용으로 마지막 일부만 보관
+            InputStream stderr = process.getErrorStream();
+            Schedulers.boundedElastic().schedule(() -> {
+                byte[] buf = new byte[1024];
+                try {
+                    int n;
+                    while ((n = stderr.read(buf)) > 0) {
+                        stderrTail.append(new String(buf, 0, n, StandardCharsets.UTF_8));
+                        if (stderrTail.length() > 2048) stderrTail.delete(0, stderrTail.length() - 2048);
+                    }
+                } catch (IOException ignore) {
+                }
+            });
+        }
+
+        @Override
+        public void write(DataBuffer chunk) throws IOException {
+            try (DataBuffer.ByteBufferIterator it = chunk.readableByteBuffers()) {
+                while (it.hasNext()) {
+                    var bb = it.next();
+                    while (bb.hasRemaining()) stdinChannel.write(bb);
+                }
+            }
+            stdin.flush();
+        }
+
+        @Override
+        public Mono<DataBuffer> finish() {
+            closeQuietly(stdin);
+            return pcm.flatMap(bytes -> Mono.fromFuture(process.onExit()).map(p -> {
+                if (p.exitValue() != 0) {
+                    throw new UncheckedIOException(new IOException(
+                            "ffmpeg failed: exit=" + p.exitValue() + " " + stderrTail.toString().strip()));
+                }
+                return AudioBuffers.wav(bytes, AudioUtils.STT_SAMPLE_RATE, 1);
+            }));
+        }
+
+        @Override
+        public void abort() {
+            closeQuietly(stdin);
+            if (process.isAlive()) process.destroyForcibly();
+        }
+
+        private static void closeQuietly(OutputStream out) {
+            try {
+                out.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
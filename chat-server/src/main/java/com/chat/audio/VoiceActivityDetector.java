@@ -0,0 +1,243 @@
+package com.chat.audio;
+
+import com.chat.config.AppProperties;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 에너지 + 영교차율(ZCR) 기반 음성 구간 검출기. (PCM s16le 16kHz mono, 20ms 프레임)
+ * <p>
+ * - 프레임 에너지(dBFS)가 적응형 잡음 바닥보다 threshold-db 이상 크면 음성 후보로 본다.
+ *   ZCR이 높은 프레임(바람/히스 잡음)은 에너지가 충분히 클 때만 음성으로 인정한다. (치찰음은 보통 에너지가 크다)
+ * - 음성 프레임이 min-speech-ms 이상 이어지면 발화 시작, 이후 무음이 end-silence-ms 이어지면 발화 끝.
+ * - 잡음 바닥은 무음 프레임에서만 천천히 따라가고, 더 조용한 프레임이 오면 바로 내려간다.
+ * <p>
+ * 스트리밍(push), 완성된 WAV의 앞뒤 무음 자르기(trim), 긴 WAV를 쉼 지점에서 나누기(split)에 쓴다.
+ * 상태를 가지므로 세션(디코더)마다 하나씩 만든다. (스레드 안전하지 않음)
+ */
+final class VoiceActivityDetector {
+
+    static final int FRAME_SAMPLES = AudioUtils.STT_SAMPLE_RATE / 50; // 20ms
+    private static final int FRAME_MS = 20;
+    private static final double FULL_SCALE = 32768.0 * 32768.0;
+    // 잡음 바닥 초기값/추적 속도 (dB 영역 지수 평균)
+    private static final double INITIAL_FLOOR_DB = -60;
+    private static final double FLOOR_ALPHA = 0.05;
+
+    private final double thresholdDb;
+    private final double minEnergyDb;
+    private final double maxZcr;
+    private final int minSpeechFrames;
+    private final int endSilenceFrames;
+    private final int maxUtteranceFrames;
+
+    // 현재 프레임 누적
+    private double sumSquares;
+    private int zeroCrossings;
+    private int frameFill;
+    private int prevSample;
+
+    private double floorDb = INITIAL_FLOOR_DB;
+    private boolean floorSeeded;
+    private int speechRun;
+    private int silenceRun;
+    private int utteranceFrames;
+    private boolean inSpeech;
+
+    VoiceActivityDetector(AppProperties.Audio.Vad cfg) {
+        this.thresholdDb = cfg.getThresholdDb();
+        this.minEnergyDb = cfg.getMinEnergyDb();
+        this.maxZcr = cfg.getMaxZcr();
+        this.minSpeechFrames = Math.max(1, cfg.getMinSpeechMs() / FRAME_MS);
+        this.endSilenceFrames = Math.max(1, cfg.getEndSilenceMs() / FRAME_MS);
+        this.maxUtteranceFrames = Math.max(minSpeechFrames, cfg.getMaxUtteranceMs() / FRAME_MS);
+    }
+
+    /**
+     * 샘플 하나를 넣는다.
+     *
+     * @return 이 샘플로 발화 끝이 확정되었으면 true (무음이 end-silence-ms 이어졌거나 max-utterance-ms를 넘음)
+     */
+    boolean push(short s) {
+        sumSquares += (double) s * s;
+        if ((s ^ prevSample) < 0) zeroCrossings++;
+        prevSample = s;
+        if (++frameFill < FRAME_SAMPLES) return false;
+
+        boolean speech = classify(sumSquares, zeroCrossings);
+        sumSquares = 0;
+        zeroCrossings = 0;
+        frameFill = 0;
+        return step(speech);
+    }
+
+    /**
+     * 음성이 진행 중이 아님 (확정된 발화도, 발화 후보도 없음)
+     */
+    boolean isIdle() {
+        return !inSpeech && speechRun == 0;
+    }
+
+    /**
+     * 발화 중에 무음 프레임이 frames개 이상 이어지고 있음 (아직 발화 끝은 아닌 쉼)
+     */
+    boolean inPause(int frames) {
+        return inSpeech && silenceRun >= frames;
+    }
+
+    private boolean classify(double squares, int crossings) {
+        double db = 10 * Math.log10(squares / FRAME_SAMPLES / FULL_SCALE + 1e-12);
+        double zcr = (double) crossings / FRAME_SAMPLES;
+        if (!floorSeeded) {
+            floorDb = Math.max(db, INITIAL_FLOOR_DB);
+            floorSeeded = true;
+        }
+        boolean loud = db > minEnergyDb && db > floorDb + thresholdDb;
+        boolean speech = loud && (zcr < maxZcr || db > floorDb + 2 * thresholdDb);
+        if (!speech) {
+            floorDb = db < floorDb ? db : floorDb + FLOOR_ALPHA * (db - floorDb);
+        }
+        return speech;
+    }
+
+    private boolean step(boolean speech) {
+        if (!inSpeech) {
+            speechRun = speech ? speechRun + 1 : 0;
+            if (speechRun >= minSpeechFrames) {
+                inSpeech = true;
+                silenceRun = 0;
+                utteranceFrames = speechRun;
+            }
+            return false;
+        }
+        utteranceFrames++;
+        silenceRun = speech ? 0 : silenceRun + 1;
+        if (silenceRun >= endSilenceFrames || utteranceFrames >= maxUtteranceFrames) {
+            inSpeech = false;
+            speechRun = 0;
+            silenceRun = 0;
+            utteranceFrames = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 완성된 WAV(헤더 44바이트 + PCM s16le 16k mono)의 앞뒤 무음을 잘라낸다. 복사하지 않고 버퍼 안에서 처리한다.
+     * 음성 구간 앞에 새 헤더를 쓰고 읽기/쓰기 위치를 [헤더, 음성 끝+padding) 으로 옮긴다.
+     * 잡음 바닥은 클립 전체 프레임 에너지의 하위 10% 값으로 잡는다.
+     *
+     * @return 남은 PCM 샘플 수 (음성 프레임이 하나도 없으면 0이고 버퍼는 헤더만 남는다)
+     */
+    static int trim(DataBuffer wav, AppProperties.Audio.Vad cfg) {
+        int base = wav.readPosition() + AudioUtils.WAV_HEADER_BYTES;
+        int samples = Math.max(0, (wav.writePosition() - base) / 2);
+        int frames = samples / FRAME_SAMPLES;
+        if (frames == 0) return samples;
+
+        double[] db = new double[frames];
+        double[] zcr = new double[frames];
+        analyze(wav, base, frames, db, zcr);
+        double[] sorted = db.clone();
+        Arrays.sort(sorted);
+        double floor = sorted[frames / 10];
+
+        int first = -1, last = -1;
+        for (int f = 0; f < frames; f++) {
+            boolean loud = db[f] > cfg.getMinEnergyDb() && db[f] > floor + cfg.getThresholdDb();
+            if (loud && (zcr[f] < cfg.getMaxZcr() || db[f] > floor + 2 * cfg.getThresholdDb())) {
+                if (first < 0) first = f;
+                last = f;
+            }
+        }
+
+        int from, to;
+        if (first < 0) {
+            from = 0;
+            to = 0;
+        } else {
+            int pad = cfg.getPaddingMs() / FRAME_MS;
+            from = Math.max(0, first - pad) * FRAME_SAMPLES;
+            to = Math.min(samples, (last + 1 + pad) * FRAME_SAMPLES);
+        }
+        int headerAt = base + from * 2 - AudioUtils.WAV_HEADER_BYTES;
+        int end = base + to * 2;
+        wav.writePosition(headerAt);
+        wav.write(AudioUtils.wavHeader((to - from) * 2, AudioUtils.STT_SAMPLE_RATE, 1));
+        wav.writePosition(end);
+        wav.readPosition(headerAt);
+        return to - from;
+    }
+
+    /**
+     * 긴 WAV를 maxSegmentSamples 이하의 WAV 구간들로 나눈다. (긴 음성의 구간별 STT용)
+     * 구간 끝에서 searchSamples 앞까지 중 가장 조용한 프레임(앞뒤 포함 3프레임 평균 에너지 최소)에서 자른다.
+     * 구간은 [새 헤더 | 원본 PCM retainedSlice] composite라 PCM을 복사하지 않는다.
+     *
+     * @return WAV 구간들 (각각 받은 쪽이 release. 원본 wav는 그대로 호출자 소유)
+     */
+    static List<DataBuffer> split(DataBuffer wav, int maxSegmentSamples, int searchSamples) {
+        int base = wav.readPosition() + AudioUtils.WAV_HEADER_BYTES;
+        int samples = Math.max(0, (wav.writePosition() - base) / 2);
+        int frames = samples / FRAME_SAMPLES;
+        double[] db = new double[frames];
+        analyze(wav, base, frames, db, new double[frames]);
+
+        int maxFrames = Math.max(1, maxSegmentSamples / FRAME_SAMPLES);
+        int searchFrames = Math.max(1, Math.min(maxFrames - 1, searchSamples / FRAME_SAMPLES));
+        List<DataBuffer> segments = new ArrayList<>();
+        try {
+            int from = 0;
+            while (samples - from > maxSegmentSamples) {
+                int startFrame = from / FRAME_SAMPLES;
+                int cut = startFrame + maxFrames;
+                double best = Double.MAX_VALUE;
+                for (int f = startFrame + maxFrames - 1; f >= startFrame + maxFrames - searchFrames; f--) {
+                    double e = (db[f - 1] + db[f] + db[Math.min(f + 1, frames - 1)]) / 3;
+                    if (e < best) {
+                        best = e;
+                        cut = f;
+                    }
+                }
+                int to = cut * FRAME_SAMPLES;
+                segments.add(segment(wav, base, from, to));
+                from = to;
+            }
+            segments.add(segment(wav, base, from, samples));
+            return segments;
+        } catch (RuntimeException e) {
+            segments.forEach(DataBufferUtils::release);
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static DataBuffer segment(DataBuffer wav, int base, int fromSample, int toSample) {
+        int len = (toSample - fromSample) * 2;
+        DataBuffer header = AudioBuffers.FACTORY.wrap(AudioUtils.wavHeader(len, AudioUtils.STT_SAMPLE_RATE, 1));
+        DataBuffer pcm = wav.retainedSlice(base + fromSample * 2, len);
+        return AudioBuffers.FACTORY.join(List.of(header, pcm));
+    }
+
+    /** PCM 구간을 20ms 프레임으로 나눠 프레임별 에너지(dBFS)와 영교차율을 구한다. */
+    private static void analyze(DataBuffer wav, int base, int frames, double[] db, double[] zcr) {
+        for (int f = 0; f < frames; f++) {
+            double squares = 0;
+            int crossings = 0;
+            int prev = 0;
+            for (int i = 0; i < FRAME_SAMPLES; i++) {
+                int p = base + (f * FRAME_SAMPLES + i) * 2;
+                short s = (short) ((wav.getByte(p) & 0xFF) | (wav.getByte(p + 1) << 8));
+                squares += (double) s * s;
+                if (i > 0 && (s ^ prev) < 0) crossings++;
+                prev = s;
+            }
+            db[f] = 10 * Math.log10(squares / FRAME_SAMPLES / FULL_SCALE + 1e-12);
+            zcr[f] = (double) crossings / FRAME_SAMPLES;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.chat.audio;
+
+import io.github.jaredmdobson.concentus.OpusDecoder;
+import io.github.jaredmdobson.concentus.OpusException;
+import jakarta.annotation.Nullable;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * ffmpeg 없이 프로세스 안에서 WebM/Opus -> WAV(PCM s16le, 16kHz, mono) 변환.
+ * <p>
+ * 1. WebM(EBML) 디먹서: 브라우저 MediaRecorder가 만드는 구조(Segment/Cluster 크기 미정, 레이싱 없음)를 기준으로
+ *    Tracks에서 A_OPUS 트랙을 찾고 SimpleBlock/Block에서 Opus 패킷을 꺼낸다.
+ * 2. Opus 디코더(Concentus, libopus의 순수 Java 포팅): 48kHz로 디코드, 스테레오면 모노로 합친다.
+ * 3. PolyphaseResampler: 48kHz -> 16kHz. 마지막 블록의 DiscardPadding(인코더 끝 패딩)은 잘라 내 ffmpeg와 길이를 맞춘다.
+ * 4. 출력은 풀링된 direct 버퍼(AudioBuffers)에 WAV로 바로 쓴다. (앞 44바이트를 헤더 자리로 비워 두고 마지막에 채움)
+ * 5. (선택) splitOnSilence: VAD가 발화 끝을 찾으면 그때까지의 PCM을 WAV 하나로 떼어 넘기고 새 버퍼에서 이어 쓴다.
+ * 6. (선택) speculate: 발화 중간의 쉼에서 앞부분(prefix)을 미리 떼어 넘긴다. (발화가 끝나기 전에 STT를 돌려 두기 위해)
+ * <p>
+ * feed()로 바이트를 나눠 넣어도 된다. 완전한 요소만 처리하고 남은 바이트는 다음 feed까지 보관한다.
+ * (스트리밍 변환에서는 청크가 도착하는 대로, 일괄 변환에서는 한 번에 넣는다)
+ * 지원하지 않는 입력(WebM이 아님, Opus 트랙 없음, EBML 레이싱, 3채널 이상 등)이면 UnsupportedAudioException을 던지고,
+ * 호출자는 ffmpeg 변환으로 대체한다.
+ */
+final class WebmOpusDecoder {
+
+    static final class UnsupportedAudioException extends IOException {
+        UnsupportedAudioException(String message) {
+            super(message);
+        }
+    }
+
+    // EBML/Matroska 요소 ID (마커 비트 포함)
+    private static final int EBML = 0x1A45DFA3;
+    private static final int DOC_TYPE = 0x4282;
+    private static final int SEGMENT = 0x18538067;
+    private static final int TRACKS = 0x1654AE6B;
+    private static final int TRACK_ENTRY = 0xAE;
+    private static final int TRACK_NUMBER = 0xD7;
+    private static final int CODEC_ID = 0x86;
+    private static final int CODEC_PRIVATE = 0x63A2;
+    private static final int CLUSTER = 0x1F43B675;
+    private static final int BLOCK_GROUP = 0xA0;
+    private static final int BLOCK = 0xA1;
+    private static final int SIMPLE_BLOCK = 0xA3;
+    private static final int DISCARD_PADDING = 0x75A2;
+
+    private static final int OPUS_RATE = 48_000;
+    // Opus 패킷 하나의 최대 길이: 120ms @ 48kHz
+    private static final int MAX_FRAME_SAMPLES = 5_760;
+    private static final int MAX_ELEMENT_BYTES = 16 * 1024 * 1024;
+
+    // 디코드 작업 버퍼는 스레드마다 하나만 두고 재사용한다.
+    private static final ThreadLocal<short[]> SCRATCH = ThreadLocal.withInitial(() -> new short[MAX_FRAME_SAMPLES * 2]);
+
+    // 아직 처리하지 못한 입력 바이트 [start, end)
+    private byte[] in = new byte[16 * 1024];
+    private int start;
+    private int end;
+    private boolean headerSeen;
+
+    // 트랙 정보 (Tracks 요소를 읽는 동안 채움)
+    private long entryNumber = -1;
+    private String entryCodec;
+    private byte[] entryPrivate;
+    private long opusTrack = -1;
+    private int channels;
+    private int skipSamples;
+    // 마지막 블록 끝에서 버릴 샘플 수 (48kHz, BlockGroup의 DiscardPadding)
+    private long discardSamples;
+
+    private OpusDecoder decoder;
+    private final PolyphaseResampler resampler = new PolyphaseResampler(OPUS_RATE / AudioUtils.STT_SAMPLE_RATE);
+
+    // 출력: 앞 44바이트는 WAV 헤더 자리, 이후 PCM s16le (작은 배열에 모았다가 풀 버퍼에 쓴다)
+    private DataBuffer out;
+    private final byte[] pending = new byte[8 * 1024];
+    private int pendingLen;
+    private final PolyphaseResampler.ShortSink sink = this::writeSample;
+
+    // 발화 분리 (splitOnSilence로 켰을 때만)
+    private VoiceActivityDetector vad;
+    private Consumer<DataBuffer> onUtterance;
+    private int idleDropBytes;
+    private Consumer<DataBuffer> onPrefix;
+    private int prefixBytes;
+    private int pauseFrames;
+    // 처음부터 낸 출력 샘플 수(16k, 버린 무음 포함)와, 그 기준으로 마지막으로 넘긴 발화의 끝 위치
+    private long samplesOut;
+    private volatile long utteranceEndSample;
+
+    /**
+     * @param expectedInputBytes 예상 입력 크기 (출력 버퍼 초기 용량 추정용, 모르면 0)
+     */
+    WebmOpusDecoder(int expectedInputBytes) {
+        // Opus(약 32kbps) -> PCM 16k(256kbps) 이므로 입력의 약 8배
+        newOutput(Math.max(64 * 1024, Math.min(expectedInputBytes, 8 * 1024 * 1024) * 8));
+    }
+
+    /**
+     * 발화 단위로 나눈다. VAD가 발화 끝을 확정하면 그때까지의 출력을 WAV로 봉해 onUtterance에 넘긴다. (받은 쪽이 release)
+     * 발화가 없는 동안 쌓인 출력이 idleDropMs를 넘으면 버린다. (무음만 계속 들어오는 세션의 메모리 보호)
+     * finish()는 마지막 발화 이후의 나머지만 돌려준다.
+     */
+    void splitOnSilence(VoiceActivityDetector vad, int idleDropMs, @Nullable Consumer<DataBuffer> onUtterance) {
+        this.vad = vad;
+        this.onUtterance = onUtterance;
+        this.idleDropBytes = (int) Math.min(Integer.MAX_VALUE, (long) idleDropMs * AudioUtils.STT_SAMPLE_RATE / 1000 * 2);
+    }
+
+    /**
+     * 발화 중에 출력이 prefixMs 이상 쌓이고 VAD가 pauseMs 이상의 쉼을 보면, 그때까지를 WAV로 봉해 onPrefix에 넘긴다.
+     * (받은 쪽이 release) 이후 발화 끝(onUtterance)이나 finish()는 마지막 prefix 이후의 나머지만 돌려준다.
+     * splitOnSilence로 VAD를 먼저 설정해야 한다.
+     */
+    void speculate(int prefixMs, int pauseMs, Consumer<DataBuffer> onPrefix) {
+        if (vad == null) throw new IllegalStateException("splitOnSilence first");
+        this.onPrefix = onPrefix;
+        this.prefixBytes = (int) Math.min(Integer.MAX_VALUE, (long) prefixMs * AudioUtils.STT_SAMPLE_RATE / 1000 * 2);
+        this.pauseFrames = Math.max(1, pauseMs / 20);
+    }
+
+    /**
+     * 마지막으로 onUtterance에 넘긴 발화의 끝 위치. 입력 처음부터 센 16k 출력 샘플 수다.
+     * (같은 입력을 일괄 변환한 결과에서 이 위치 앞은 이미 발화로 처리된 부분이다. 넘긴 발화가 없으면 0)
+     */
+    long utteranceEndSample() {
+        return utteranceEndSample;
+    }
+
+    /**
+     * WebM 전체를 한 번에 변환한다. 입력 버퍼는 읽기만 하고 release 하지 않는다.
+     *
+     * @return WAV가 담긴 풀 버퍼 (호출자가 release)
+     */
+    static DataBuffer toWav(DataBuffer webm) throws IOException {
+        WebmOpusDecoder d = new WebmOpusDecoder(webm.readableByteCount());
+        try {
+            d.feed(webm);
+            return d.finish();
+        } catch (IOException | RuntimeException e) {
+            d.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 입력 버퍼의 읽을 수 있는 구간을 넣는다. (읽기 위치는 바꾸지 않고, release 하지 않는다)
+     */
+    void feed(DataBuffer data) throws IOException {
+        try (DataBuffer.ByteBufferIterator it = data.readableByteBuffers()) {
+            while (it.hasNext()) feed(it.next());
+        }
+    }
+
+    void feed(ByteBuffer data) throws IOException {
+        append(data);
+        parse();
+    }
+
+    /**
+     * 입력 종료. 끝에 잘린 요소는 버리고 지금까지 디코드한 PCM으로 WAV를 만든다.
+     *
+     * @return WAV가 담긴 풀 버퍼 (호출자가 release)
+     */
+    DataBuffer finish() throws IOException {
+        if (!headerSeen) throw new UnsupportedAudioException("not a WebM stream");
+        if (decoder == null) throw new UnsupportedAudioException("no Opus audio decoded");
+        resampler.flush(sink);
+        trimPadding();
+        return seal();
+    }
+
+    /**
+     * 마지막 블록의 DiscardPadding만큼 출력 끝을 잘라 낸다. (ffmpeg도 같은 만큼 버린다)
+     */
+    private void trimPadding() {
+        if (discardSamples <= 0) return;
+        flushPending();
+        long bytes = discardSamples * AudioUtils.STT_SAMPLE_RATE / OPUS_RATE * 2;
+        int pcm = out.writePosition() - AudioUtils.WAV_HEADER_BYTES;
+        out.writePosition(out.writePosition() - (int) Math.min(pcm, bytes));
+    }
+
+    /**
+     * 지금까지의 출력에 WAV 헤더를 채워 떼어 낸다.
+     */
+    private DataBuffer seal() {
+        flushPending();
+        int written = out.writePosition();
+        out.writePosition(0);
+        out.write(AudioUtils.wavHeader(written - AudioUtils.WAV_HEADER_BYTES, AudioUtils.STT_SAMPLE_RATE, 1));
+        out.writePosition(written);
+        DataBuffer wav = out;
+        out = null;
+        return wav;
+    }
+
+    private void newOutput(int capacity) {
+        out = AudioBuffers.allocate(capacity);
+        out.write(new byte[AudioUtils.WAV_HEADER_BYTES]);
+    }
+
+    /**
+     * 변환을 포기할 때 출력 버퍼를 돌려준다. (finish 후에는 아무 일도 하지 않음)
+     */
+    void release() {
+        if (out != null) {
+            DataBufferUtils.release(out);
+            out = null;
+        }
+    }
+
+    // ---- EBML 파싱 ----
+
+    private void parse() throws IOException {
+        while (true) {
+            int p = start;
+            if (end - p < 1) return;
+
+            int idLen = vintLength(in[p]);
+            if (idLen < 1 || idLen > 4) throw new UnsupportedAudioException("bad EBML id at " + p);
+            if (end - p < idLen + 1) return;
+            int id = 0;
+            for (int i = 0; i < idLen; i++) id = (id << 8) | (in[p + i] & 0xFF);
+
+            int sizeLen = vintLength(in[p + idLen]);
+            if (sizeLen < 1 || sizeLen > 8) throw new UnsupportedAudioException("bad EBML size at " + p);
+            if (end - p < idLen + sizeLen) return;
+            long size = readVint(in, p + idLen, sizeLen);
+            int payload = p + idLen + sizeLen;
+
+            if (!headerSeen) {
+                if (id != EBML) throw new UnsupportedAudioException("not a WebM stream");
+                headerSeen = true;
+            }
+
+            // 컨테이너 요소는 안으로 들어가 자식 요소를 이어서 읽는다. (크기 미정(-1)이어도 상관없음)
+            if (id == EBML || id == SEGMENT || id == TRACKS || id == CLUSTER || id == BLOCK_GROUP || id == TRACK_ENTRY) {
+                if (id == TRACK_ENTRY) commitTrackEntry();
+                if (id == CLUSTER) startCluster();
+                start = payload;
+                continue;
+            }
+
+            if (size < 0) throw new UnsupportedAudioException("unknown-size element 0x" + Integer.toHexString(id));
+            if (size > MAX_ELEMENT_BYTES) throw new UnsupportedAudioException("element too large: " + size);
+            if (end - payload < size) return; // 나머지가 아직 도착하지 않음
+
+            int len = (int) size;
+            switch (id) {
+                case DOC_TYPE -> {
+                    String docType = new String(in, payload, len, StandardCharsets.US_ASCII).trim();
+                    if (!docType.equals("webm") && !docType.equals("matroska")) {
+                        throw new UnsupportedAudioException("doc type " + docType);
+                    }
+                }
+                case TRACK_NUMBER -> entryNumber = readUint(in, payload, len);
+                case CODEC_ID -> entryCodec = new String(in, payload, len, StandardCharsets.US_ASCII).trim();
+                case CODEC_PRIVATE -> entryPrivate = Arrays.copyOfRange(in, payload, payload + len);
+                case SIMPLE_BLOCK, BLOCK -> block(payload, len);
+                case DISCARD_PADDING -> discardSamples = readInt(in, payload, len) * OPUS_RATE / 1_000_000_000L;
+                default -> { } // 그 밖의 요소(SeekHead, Info, Cues, Tags ...)는 건너뜀
+            }
+            start = payload + len;
+        }
+    }
+
+    private void commitTrackEntry() throws IOException {
+        if (entryCodec != null && entryCodec.equals("A_OPUS") && opusTrack < 0) {
+            if (entryPrivate == null || entryPrivate.length < 12
+                    || !new String(entryPrivate, 0, 8, StandardCharsets.US_ASCII).equals("OpusHead")) {
+                throw new UnsupportedAudioException("missing OpusHead");
+            }
+            channels = entryPrivate[9] & 0xFF;
+            if (channels < 1 || channels > 2) throw new UnsupportedAudioException("opus channels=" + channels);
+            skipSamples = (entryPrivate[10] & 0xFF) | ((entryPrivate[11] & 0xFF) << 8); // pre-skip (48kHz 기준)
+            opusTrack = entryNumber;
+            try {
+                decoder = new OpusDecoder(OPUS_RATE, channels);
+            } catch (OpusException e) {
+                throw new UnsupportedAudioException("opus decoder init failed: " + e.getMessage());
+            }
+        }
+        entryNumber = -1;
+        entryCodec = null;
+        entryPrivate = null;
+    }
+
+    private void startCluster() throws IOException {
+        if (opusTrack < 0) {
+            commitTrackEntry(); // 마지막 TrackEntry
+            if (opusTrack < 0) throw new UnsupportedAudioException("no Opus track");
+        }
+    }
+
+    /**
+     * SimpleBlock/Block: [트랙 번호 vint][timecode 2B][flags 1B][프레임(들)]
+     */
+    private void block(int p, int len) throws IOException {
+        int limit = p + len;
+        int trackLen = vintLength(in[p]);
+        if (trackLen < 1 || trackLen > 8 || trackLen + 3 > len) throw new UnsupportedAudioException("bad block header");
+        long track = readVint(in, p, trackLen);
+        if (track != opusTrack) return;
+        discardSamples = 0; // DiscardPadding은 같은 BlockGroup 안에서 Block 뒤에 온다.
+        int flags = in[p + trackLen + 2] & 0xFF;
+        int q = p + trackLen + 3;
+
+        switch ((flags >> 1) & 0x3) {
+            case 0 -> decode(q, limit - q);  // 레이싱 없음 (MediaRecorder 기본)
+            case 1 -> {                     // Xiph 레이싱
+                int frames = (in[q++] & 0xFF) + 1;
+                int[] sizes = new int[frames];
+                int total = 0;
+                for (int i = 0; i < frames - 1; i++) {
+                    int s = 0, b;
+                    do {
+                        if (q >= limit) throw new UnsupportedAudioException("bad xiph lacing");
+                        b = in[q++] & 0xFF;
+                        s += b;
+                    } while (b == 255);
+                    sizes[i] = s;
+                    total += s;
+                }
+                sizes[frames - 1] = limit - q - total;
+                for (int s : sizes) {
+                    if (s < 0 || q + s > limit) throw new UnsupportedAudioException("bad xiph lacing");
+                    decode(q, s);
+                    q += s;
+                }
+            }
+            case 2 -> {                     // 고정 크기 레이싱
+                int frames = (in[q++] & 0xFF) + 1;
+                int s = (limit - q) / frames;
+                for (int i = 0; i < frames; i++, q += s) decode(q, s);
+            }
+            default -> throw new UnsupportedAudioException("EBML lacing");
+        }
+    }
+
+    private void decode(int p, int len) throws IOException {
+        short[] pcm = SCRATCH.get();
+        int samples;
+        try {
+            samples = decoder.decode(in, p, len, pcm, 0, MAX_FRAME_SAMPLES, false);
+        } catch (OpusException e) {
+            throw new UnsupportedAudioException("opus decode failed: " + e.getMessage());
+        }
+        for (int i = 0; i < samples; i++) {
+            if (skipSamples > 0) {
+                skipSamples--;
+                continue;
+            }
+            int mono = channels == 1 ? pcm[i] : (pcm[2 * i] + pcm[2 * i + 1]) >> 1;
+            resampler.push(mono, sink);
+        }
+    }
+
+    private void writeSample(short s) {
+        if (pendingLen + 2 > pending.length) {
+            flushPending();
+            // 발화 전 무음이 길게 쌓였으면 버린다.
+            if (vad != null && vad.isIdle() && out.writePosition() - AudioUtils.WAV_HEADER_BYTES > idleDropBytes) {
+                out.writePosition(AudioUtils.WAV_HEADER_BYTES);
+            }
+        }
+        pending[pendingLen++] = (byte) s;
+        pending[pendingLen++] = (byte) (s >> 8);
+        samplesOut++;
+
+        if (vad == null) return;
+        if (vad.push(s)) {
+            // 발화 끝: 지금까지를 한 발화로 떼어 넘긴다. (뒤쪽 무음은 받는 쪽에서 trim)
+            if (onUtterance != null) {
+                DataBuffer wav = cut();
+                utteranceEndSample = samplesOut;
+                onUtterance.accept(wav);
+            }
+        } else if (onPrefix != null && vad.inPause(pauseFrames)
+                && out.writePosition() + pendingLen - AudioUtils.WAV_HEADER_BYTES >= prefixBytes) {
+            // 발화 중간의 쉼: 앞부분을 미리 넘긴다.
+            onPrefix.accept(cut());
+        }
+    }
+
+    private DataBuffer cut() {
+        DataBuffer wav = seal();
+        newOutput(64 * 1024);
+        return wav;
+    }
+
+    private void flushPending() {
+        if (out == null) throw new IllegalStateException("decoder released");
+        out.write(pending, 0, pendingLen);
+        pendingLen = 0;
+    }
+
+    // ---- 입력 버퍼 ----
+
+    private void append(ByteBuffer data) {
+        int len = data.remaining();
+        if (end + len > in.length) {
+            // 처리한 앞부분을 버리고 당긴 뒤에도 모자라면 키운다.
+            int remaining = end - start;
+            byte[] target = remaining + len > in.length ? new byte[Math.max(in.length * 2, remaining + len)] : in;
+            System.arraycopy(in, start, target, 0, remaining);
+            in = target;
+            start = 0;
+            end = remaining;
+        }
+        data.duplicate().get(in, end, len);
+        end += len;
+    }
+
+    // ---- vint ----
+
+    /** 첫 바이트의 앞쪽 0 비트 수 + 1 = vint 길이 (0x00이면 0) */
+    private static int vintLength(byte first) {
+        int b = first & 0xFF;
+        return b == 0 ? 0 : Integer.numberOfLeadingZeros(b) - 23;
+    }
+
+    /** 크기/트랙 번호용 vint (마커 비트 제거). 값 비트가 모두 1이면 크기 미정(-1) */
+    private static long readVint(byte[] a, int p, int len) {
+        long v = (a[p] & 0xFF) & (0xFF >> len);
+        boolean allOnes = v == (0xFF >> len);
+        for (int i = 1; i < len; i++) {
+            int b = a[p + i] & 0xFF;
+            v = (v << 8) | b;
+            allOnes &= b == 0xFF;
+        }
+        return allOnes ? -1 : v;
+    }
+
+    private static long readUint(byte[] a, int p, int len) {
+        long v = 0;
+        for (int i = 0; i < len; i++) v = (v << 8) | (a[p + i] & 0xFF);
+        return v;
+    }
+
+    private static long readInt(byte[] a, int p, int len) {
+        if (len == 0) return 0;
+        long v = a[p]; // 부호 확장
+        for (int i = 1; i < len; i++) v = (v << 8) | (a[p + i] & 0xFF);
+        return v;
+    }
+}
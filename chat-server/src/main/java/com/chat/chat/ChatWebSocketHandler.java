@@ -4,10 +4,13 @@ import com.chat.common.Lang;
 import com.chat.common.constants.MessageType;
 import com.chat.common.ws.SessionRegistry;
 import com.chat.chat.model.ChatInbound;
+import com.chat.chat.model.OutboundEvent;
 import com.chat.common.json.JsonUtils;
+import com.chat.common.ws.WireProtocol;
 import com.chat.common.ws.WsEmitter;
 import com.chat.conversation.service.ConversationService;
 import com.chat.pipeline.LlmFirstRagOrchestrator;
+import com.chat.pipeline.RagAdmission;
 import com.chat.rag.model.Citation;
 import com.chat.rag.model.SearchPlan;
 import com.chat.trans.NaverPapagoTransClient;
@@ -21,7 +24,6 @@ import reactor.core.publisher.Mono;
 import reactor.core.publisher.SignalType;
 
 import java.util.List;
-import java.util.Map;
 
 
 @Slf4j
@@ -34,6 +36,14 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     private final NaverPapagoTransClient transClient; //Papago API 번역 클라이언트 (비동기 Mono 반환)
     private final LlmFirstRagOrchestrator rag; //Rag 및 LLM 오케스트레이터 (비동기 Mono 반환)
     private final ConversationService conversationService; //DB 저장을 위한 서비스 주입
+    private final RagAdmission admission; // 사용자별 토큰 한도 + 전역 동시 실행 제한
+
+    @Override
+    public List<String> getSubProtocols() {
+        // 클라이언트가 chat.bin.v1을 요청하면 답변 조각을 바이너리 프레임으로 보낸다. (없으면 기존 JSON)
+        return WireProtocol.SUBPROTOCOLS;
+    }
+
     /**
      * WebSocket 연결이 수립될 때 호출되는 메인 메서드
      * @param session 현재 연결된 WebSocket 세션
@@ -41,6 +51,8 @@ public class ChatWebSocketHandler implements WebSocketHandler {
      */
     @Override
     public Mono<Void> handle(WebSocketSession session) {
+        // 0. 파드 종료(드레인) 중이면 새 연결은 바로 닫는다. (1012: 클라이언트가 다시 연결해 다른 파드로 붙는다)
+        if (registry.isDraining()) return session.close(CloseStatus.SERVICE_RESTARTED);
         // 1. Emitter 생성: 클라이언트에게 메시지를 보내는 통로(Flux)를 생성하고 레지스트리에 등록
         WsEmitter emitter = registry.createEmitter(session.getId(), session);
         // 2. Inbound(수신) 파이프라인 정의 : 클라이언트로부터 메시지를 받았을 때의 처리 흐름
@@ -96,29 +108,19 @@ public class ChatWebSocketHandler implements WebSocketHandler {
                             .flatMap(in2 -> router.route(in2, session, emitter)) // (비동기 flatMap) 번역본을 라우팅
                             .onErrorResume(e -> Mono.empty()); // 이 흐름에서 에러나도 전체를 중단시키지 않고 무시
 
-                    // Flow 3: RAG 실행 -> LLM 답변 -> 역번역 -> 클라이언트 전송 (비동기)
+                    // Flow 3: RAG 실행 -> LLM 답변(문장 단위 역번역 스트리밍) -> 클라이언트 전송 (비동기)
                     Mono<Void> ragAndTranslateFlow = koMono
                             .flatMap(koUserText -> { // (비동기 flatMap) 캐시된 한국어 텍스트를 받음
                                 // 2a. RAG + LLM 실행 (비동기)
-                                // rag.run이 LLM의 최종 한국어 답변(String)을 Mono로 반환함
-                                // (emitter는 RAG/LLM의 중간 스트리밍 데이터를 보내는 데 사용될 수 있음)
-                                return rag.run(koUserText, emitter);
-                            })
-                            .doOnNext(t -> System.out.println("text ="+ t)) // LLM의 최종 한국어 답변 로깅
-                            .flatMap(llmKoAnswer -> { // (비동기 flatMap) LLM의 한국어 답변을 받음
-                                // 2b. Papago 역번역 (비동기)
-                                // LLM의 한국어 답변("ko")을 사용자의 원래 언어(sourceLang, 예: "en")로 다시 번역
-                                return transClient.translate(targetLang, sourceLang, llmKoAnswer);
+                                // LLM의 한국어 답변은 문장이 완성되는 대로 사용자의 원래 언어(sourceLang, 예: "en")로
+                                // 번역되어 emitter로 스트리밍되고, rag.run은 번역이 끝난 최종 답변(String)을 Mono로 반환함
+                                return rag.run(koUserText, sourceLang, emitter);
                             })
+                            .doOnNext(t -> System.out.println("text ="+ t)) // 최종 번역된 답변 로깅
                             .doOnNext(translatedAnswer -> { // 최종 번역된 답변(예: "en")을 받음
                                 // 2c. 클라이언트에 최종 답변 전송
                                 // emitter를 통해 "original_text" 이벤트로 최종 LLM 답변을 클라이언트에 전송
-                                emitter.emitText(JsonUtils.toJson(Map.of(
-                                        "type", "nlp-stream",
-                                        "event", "original_text", // 원본 텍스트 이벤트
-                                        "data", Map.of("text", translatedAnswer),
-                                        "traceId", traceId
-                                )));
+                                emitter.emit(new OutboundEvent.Final(traceId, translatedAnswer));
                             })
                             .doOnNext(translatedAnswer->{
                                 // --- [수정 3: Fire-and-Forget으로 '질문/답변' 동시 저장] ---
@@ -142,7 +144,9 @@ public class ChatWebSocketHandler implements WebSocketHandler {
                     // 2. 끝나면, translatedFlow (단순 번역 전송)를 실행하고 끝날 때까지 기다린다.
                     // 3. 끝나면, ragAndTranslateFlow (RAG+LLM)를 실행하고 끝날 때까지 기다린다.
                     // 이 3개가 모두 끝나야, concatMap이 비로소 이번 메시지(A) 처리 완료로 간주함.
-                    return originalFlow.then(translatedFlow).then(ragAndTranslateFlow);
+                    // 입장 제어: 사용자 토큰 한도 초과/서버 혼잡이면 대기하지 않고 SYSTEM 메시지로 바로 거절
+                    return admission.admit(emitter.getUserId(), emitter,
+                            () -> originalFlow.then(translatedFlow).then(ragAndTranslateFlow));
                 })
                 .doFinally((SignalType sig) -> { // (부수 효과) Inbound 스트림이 *최종* 종료될 때
                     // .concatMap은 메시지 1개마다 실행되지만, .doFinally는 연결이 살아있는 동안에는 실행 안 됨
@@ -0,0 +1,76 @@
+package com.chat.chat.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * 클라이언트로 보내는 이벤트. 각 이벤트가 자기 JSON을 JsonGenerator에 직접 쓴다. (중간 Map/String 없음)
+ * 실제 버퍼 쓰기는 WsEmitter가 보내는 시점에 한다. (common.ws.EventWriter)
+ * <p>
+ * nlp-stream 형식: {"type":"nlp-stream","event":"...","data":{...},"traceId":"..."}
+ * 그 밖의 형식: {"type":"...","text":"...","ts":...} (ChatOutbound와 같음, null 필드는 생략)
+ */
+public sealed interface OutboundEvent {
+
+    void writeTo(JsonGenerator g) throws IOException;
+
+    /** 답변 조각 (event=delta) */
+    record Delta(String traceId, String text) implements OutboundEvent {
+        @Override
+        public void writeTo(JsonGenerator g) throws IOException {
+            nlpStream(g, "delta", "text", text, traceId);
+        }
+    }
+
+    /** 사용자 언어로 된 최종 답변 (event=original_text) */
+    record Final(String traceId, String text) implements OutboundEvent {
+        @Override
+        public void writeTo(JsonGenerator g) throws IOException {
+            nlpStream(g, "original_text", "text", text, traceId);
+        }
+    }
+
+    /** 파이프라인 오류 (event=error) */
+    record Error(String traceId, String message) implements OutboundEvent {
+        @Override
+        public void writeTo(JsonGenerator g) throws IOException {
+            nlpStream(g, "error", "message", message, traceId);
+        }
+    }
+
+    /** SYSTEM/CHAT/STT_PARTIAL/PONG 등 단순 메시지 */
+    record Plain(String type, String text, Long ts) implements OutboundEvent {
+        @Override
+        public void writeTo(JsonGenerator g) throws IOException {
+            g.writeStartObject();
+            g.writeStringField("type", type);
+            if (text != null) g.writeStringField("text", text);
+            if (ts != null) g.writeNumberField("ts", ts);
+            g.writeEndObject();
+        }
+    }
+
+    static OutboundEvent system(String text) {
+        return new Plain("SYSTEM", text, null);
+    }
+
+    static OutboundEvent chat(String type, String text) {
+        return new Plain(type, text, null);
+    }
+
+    static OutboundEvent of(ChatOutbound o) {
+        return new Plain(o.getType(), o.getText(), o.getTs());
+    }
+
+    private static void nlpStream(JsonGenerator g, String event, String field, String value, String traceId) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("type", "nlp-stream");
+        g.writeStringField("event", event);
+        g.writeObjectFieldStart("data");
+        g.writeStringField(field, value);
+        g.writeEndObject();
+        g.writeStringField("traceId", traceId);
+        g.writeEndObject();
+    }
+}
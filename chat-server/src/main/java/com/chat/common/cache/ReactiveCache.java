@@ -0,0 +1,211 @@
+package com.chat.common.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 크기/TTL 제한이 있는 프로세스 내(in-JVM) 캐시 + 동일 키 동시 요청 병합(request coalescing).
+ * <p>
+ * - 크기 제한: LinkedHashMap(access-order) 기반 LRU. 최대 개수를 넘으면 가장 오래 안 쓴 항목을 버린다.
+ * - TTL: 저장 시각 기준으로 ttl이 지나면 조회 시 만료로 보고 제거한다. (computeIfAbsent는 꺼낼 때마다 저장 시각을 갱신)
+ * - 병합: 같은 키로 캐시 미스가 동시에 여러 번 나면, 업스트림 호출(loader)은 한 번만 하고 결과를 공유한다.
+ * - 갱신: 필요하면 오래된 값을 먼저 돌려주고 백그라운드에서 갱신(stale-while-revalidate)할 수 있다.
+ * - 지표: chat.cache.hits / misses / stale.hits / evictions 카운터와 chat.cache.size 게이지 (tag: cache=이름, tier=local)
+ *
+ * @param <K> 키 타입
+ * @param <V> 값 타입
+ */
+public class ReactiveCache<K, V> {
+
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    // 진행 중인 로드 (키당 최대 1개). 완료/실패 시 제거된다.
+    private final ConcurrentHashMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter staleHits;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+
+    /**
+     * @param name     지표 태그에 쓰일 캐시 이름
+     * @param maxSize  최대 항목 수
+     * @param ttl      항목 유효 시간
+     * @param registry Micrometer 레지스트리
+     */
+    public ReactiveCache(String name, int maxSize, Duration ttl, MeterRegistry registry) {
+        this.ttlNanos = ttl.toNanos();
+        this.hits = counter("chat.cache.hits", name, registry);
+        this.misses = counter("chat.cache.misses", name, registry);
+        this.staleHits = counter("chat.cache.stale.hits", name, registry);
+        this.sizeEvictions = Counter.builder("chat.cache.evictions")
+                .tag("cache", name).tag("tier", "local").tag("cause", "size").register(registry);
+        this.expiredEvictions = Counter.builder("chat.cache.evictions")
+                .tag("cache", name).tag("tier", "local").tag("cause", "expired").register(registry);
+
+        int bound = Math.max(1, maxSize);
+        // accessOrder=true: get()할 때마다 순서가 갱신되어 LRU가 된다.
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                boolean evict = size() > bound;
+                if (evict) sizeEvictions.increment();
+                return evict;
+            }
+        };
+        Gauge.builder("chat.cache.size", this, ReactiveCache::size)
+                .tag("cache", name).tag("tier", "local").register(registry);
+    }
+
+    private static Counter counter(String metric, String name, MeterRegistry registry) {
+        return Counter.builder(metric).tag("cache", name).tag("tier", "local").register(registry);
+    }
+
+    /**
+     * 캐시에서 값을 찾고, 없으면 loader로 불러와 저장한 뒤 반환한다.
+     * 같은 키에 대한 동시 미스는 하나의 loader 호출로 합쳐진다.
+     * loader가 비어 있는(empty) Mono를 반환하면 저장하지 않는다.
+     *
+     * @param key    캐시 키
+     * @param loader 캐시 미스 시 실행할 업스트림 호출
+     */
+    public Mono<V> get(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            V cached = getIfPresent(key);
+            if (cached != null) {
+                hits.increment();
+                return Mono.just(cached);
+            }
+            misses.increment();
+            return load(key, loader);
+        });
+    }
+
+    /**
+     * stale-while-revalidate 조회.
+     * 저장된 지 freshFor 이내면 그대로 반환하고, 그 이후(ttl 이내)면 오래된 값을 즉시 반환하면서
+     * 백그라운드에서 loader로 갱신한다. (갱신도 동시 요청 병합 대상)
+     * 따라서 캐시의 ttl은 "fresh 구간 + stale 허용 구간"으로 설정해야 한다.
+     *
+     * @param key      캐시 키
+     * @param freshFor 이 시간 이내의 값은 갱신 없이 사용
+     * @param loader   캐시 미스/갱신 시 실행할 업스트림 호출
+     */
+    public Mono<V> getStaleWhileRevalidate(K key, Duration freshFor, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            Entry<V> e = getEntry(key);
+            if (e == null) {
+                misses.increment();
+                return load(key, loader);
+            }
+            hits.increment();
+            if (e.ageNanos() > freshFor.toNanos()) {
+                staleHits.increment();
+                // 갱신 실패는 다음 조회에서 다시 시도하면 되므로 무시한다. (오래된 값은 ttl까지 유지)
+                load(key, loader).subscribe(v -> { }, err -> { });
+            }
+            return Mono.just(e.value());
+        });
+    }
+
+    /**
+     * loader를 실행해 결과를 저장한다. 같은 키로 이미 진행 중인 로드가 있으면 그것을 공유한다.
+     */
+    private Mono<V> load(K key, Supplier<Mono<V>> loader) {
+        return inFlight.computeIfAbsent(key, k -> loader.get()
+                .doOnNext(v -> put(k, v))
+                // 구독은 computeIfAbsent가 끝난 뒤에 일어나므로, 여기서 지우는 것은 항상 자기 자신이다.
+                .doFinally(sig -> inFlight.remove(k))
+                .cache());
+    }
+
+    /**
+     * loader 없이 캐시만 조회한다. 적중/미스를 지표에 집계한다.
+     * (미스 시 직접 계산한 값을 put으로 넣는 경우에 사용)
+     */
+    public V lookup(K key) {
+        V v = getIfPresent(key);
+        if (v != null) hits.increment();
+        else misses.increment();
+        return v;
+    }
+
+    /**
+     * 만료되지 않은 값이 있으면 반환한다. (지표에는 집계하지 않음)
+     */
+    public V getIfPresent(K key) {
+        Entry<V> e = getEntry(key);
+        return e == null ? null : e.value();
+    }
+
+    /**
+     * 저장 시각을 포함한 항목을 반환한다. 만료된 항목은 제거하고 null을 반환한다.
+     */
+    public Entry<V> getEntry(K key) {
+        synchronized (entries) {
+            Entry<V> e = entries.get(key);
+            if (e != null && e.isExpired(ttlNanos)) {
+                entries.remove(key);
+                expiredEvictions.increment();
+                return null;
+            }
+            return e;
+        }
+    }
+
+    /**
+     * 만료되지 않은 값이 있으면 반환하고, 없으면 factory로 만들어 저장한 뒤 반환한다. (원자적, 지표에는 집계하지 않음)
+     * 값 자체가 상태를 갖는 경우(예: 사용자별 카운터)에 사용한다.
+     * 꺼낼 때마다 저장 시각을 지금으로 바꾸므로 ttl은 마지막 사용 이후의 유휴 시간이 된다.
+     * (계속 쓰이는 상태가 ttl마다 새 값으로 초기화되지 않도록)
+     */
+    public V computeIfAbsent(K key, Function<K, V> factory) {
+        synchronized (entries) {
+            V v = getIfPresent(key);
+            if (v == null) v = factory.apply(key);
+            entries.put(key, new Entry<>(v, System.nanoTime()));
+            return v;
+        }
+    }
+
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, System.nanoTime()));
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 캐시 항목: 값 + 저장 시각(System.nanoTime)
+     */
+    public record Entry<V>(V value, long writtenAtNanos) {
+        public long ageNanos() {
+            return System.nanoTime() - writtenAtNanos;
+        }
+
+        boolean isExpired(long ttlNanos) {
+            return ageNanos() > ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.chat.common.resilience;
+
+import com.chat.config.AppProperties;
+import com.chat.exception.UpstreamException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 업스트림 클라이언트 하나(Papago, STT, Vertex, Gemini)의 장애 격리 장치.
+ * <p>
+ * - 서킷 브레이커: 최근 window-size번 호출 중 실패율이 failure-rate-threshold 이상이면 open-ms 동안 호출하지 않고
+ *   바로 UpstreamException으로 실패한다. 이후 half-open-calls번 시험 호출이 모두 성공하면 다시 닫는다.
+ * - 적응형 타임아웃: 최근 성공 지연의 timeout-percentile 값 x timeout-multiplier (min/max 사이로 제한).
+ *   표본이 적을 때는 max-timeout-ms를 쓴다. (기존 고정 타임아웃과 같은 값)
+ *   요청 크기에 따라 지연이 달라지는 호출(STT: 오디오 길이)은 call(call, units)로 작업량을 넘긴다.
+ *   지연은 단위당 값으로 기록하고, 타임아웃은 단위당 값 x units 로 계산한다. (min/max 제한은 그대로)
+ * - 헤지 요청(선택, 멱등 호출만): hedge-percentile 지연이 지나도 응답이 없으면 같은 요청을 한 번 더 보내고
+ *   먼저 온 응답을 쓴다. 추가 부하를 막기 위해 전체 호출의 hedge-max-ratio까지만 헤지한다.
+ * <p>
+ * 지표: chat.upstream.calls (tag: client, outcome), chat.upstream.hedges, chat.upstream.circuit.state(0 닫힘, 1 반열림, 2 열림),
+ * chat.upstream.timeout.ms
+ */
+@Slf4j
+public class UpstreamGuard {
+
+    private enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final String name;
+    private final AppProperties.Resilience.Guard cfg;
+
+    // 서킷 상태 (this로 동기화)
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+    private final boolean[] outcomes; // true = 실패
+    private int outcomeCount;
+    private int outcomeIndex;
+    private int failures;
+
+    // 최근 성공 지연(ms) 링 버퍼와 계산해 둔 백분위 (this로 동기화)
+    private final long[] latencies;
+    private int latencyCount;
+    private int latencyIndex;
+    private double timeoutPerUnitMs = -1; // 학습된 단위당 타임아웃 (표본 부족이면 -1)
+    private long hedgeDelayMs = -1;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+
+    private final Counter success;
+    private final Counter failure;
+    private final Counter timeout;
+    private final Counter rejected;
+    private final Counter hedges;
+
+    public UpstreamGuard(String name, AppProperties.Resilience.Guard cfg, MeterRegistry registry) {
+        this.name = name;
+        this.cfg = cfg;
+        this.outcomes = new boolean[Math.max(1, cfg.getWindowSize())];
+        this.latencies = new long[Math.max(1, cfg.getLatencySamples())];
+
+        this.success = outcome(registry, "success");
+        this.failure = outcome(registry, "failure");
+        this.timeout = outcome(registry, "timeout");
+        this.rejected = outcome(registry, "rejected");
+        this.hedges = Counter.builder("chat.upstream.hedges").tag("client", name).register(registry);
+        Gauge.builder("chat.upstream.circuit.state", this, g -> g.stateValue()).tag("client", name).register(registry);
+        Gauge.builder("chat.upstream.timeout.ms", this, g -> g.currentTimeoutMs(1)).tag("client", name).register(registry);
+    }
+
+    private Counter outcome(MeterRegistry registry, String outcome) {
+        return Counter.builder("chat.upstream.calls").tag("client", name).tag("outcome", outcome).register(registry);
+    }
+
+    /**
+     * 서킷 브레이커 + 적응형 타임아웃을 적용해 호출한다.
+     */
+    public <T> Mono<T> call(Supplier<Mono<T>> call) {
+        return call(call, 1);
+    }
+
+    /**
+     * call()과 같지만 작업량(units, 예: 오디오 초)에 비례하는 타임아웃을 쓴다. 1보다 작으면 1로 본다.
+     * 같은 guard의 호출은 모두 같은 단위를 써야 한다. (지연을 단위당 값으로 학습하므로)
+     */
+    public <T> Mono<T> call(Supplier<Mono<T>> call, double units) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) return rejectedError();
+            return attempt(call, units);
+        });
+    }
+
+    /**
+     * call()에 더해 헤지 요청을 보낼 수 있다. 같은 요청을 두 번 보내도 안전한(멱등) 호출에만 사용한다.
+     * <p>
+     * - 헤지는 첫 시도가 아직 진행 중일 때만 보낸다. (첫 시도가 끝나면 대기 중인 헤지는 취소된다)
+     * - 첫 시도가 실패하면 헤지를 기다리지 않고 바로 그 실패로 끝난다.
+     * - 헤지가 실패하거나 헤지 한도(hedge-max-ratio)에 걸리면 무시하고 첫 시도의 결과를 기다린다.
+     *   첫 시도에는 항상 타임아웃이 있으므로 호출은 반드시 끝난다.
+     */
+    public <T> Mono<T> callHedged(Supplier<Mono<T>> call) {
+        if (!cfg.isHedgeEnabled()) return call(call);
+        return Mono.defer(() -> {
+            if (!tryAcquire()) return rejectedError();
+            long delay = hedgeDelay();
+            if (delay < 0) return attempt(call, 1);
+            Mono<T> hedge = Mono.delay(Duration.ofMillis(delay))
+                    .flatMap(t -> {
+                        if (!allowHedge()) return Mono.<T>empty();
+                        hedges.increment();
+                        log.debug("[GUARD:{}] hedging after {}ms", name, delay);
+                        return attempt(call, 1);
+                    })
+                    .onErrorResume(e -> Mono.empty());
+            // merge: 먼저 온 값을 쓰고(next가 나머지를 취소), 첫 시도의 에러는 그대로 바로 전달된다.
+            return Flux.merge(attempt(call, 1), hedge).next();
+        });
+    }
+
+    /**
+     * 스트리밍 호출. 첫 원소까지의 시간(TTFT)에 적응형 타임아웃을 적용하고, 이후 원소 사이에는 max-timeout-ms를 적용한다.
+     * 스트림이 정상 종료되거나 원소를 받은 뒤 구독자가 취소하면(next() 등) 성공, 에러로 끝나면 실패로 기록한다.
+     */
+    public <T> Flux<T> callMany(Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) return Flux.error(rejected());
+            long startedAt = System.nanoTime();
+            long limit = currentTimeoutMs(1);
+            AtomicBoolean received = new AtomicBoolean();
+            return call.get()
+                    .timeout(Mono.delay(Duration.ofMillis(limit)),
+                            item -> Mono.delay(Duration.ofMillis(cfg.getMaxTimeoutMs())))
+                    .doOnNext(item -> {
+                        if (received.compareAndSet(false, true)) {
+                            recordLatency((System.nanoTime() - startedAt) / 1_000_000L, 1);
+                        }
+                    })
+                    .onErrorMap(e -> onFailure(e, limit))
+                    .doFinally(sig -> {
+                        if (sig == SignalType.ON_COMPLETE || (sig == SignalType.CANCEL && received.get())) {
+                            onSuccess();
+                        } else if (sig == SignalType.CANCEL) {
+                            onCancel();
+                        }
+                    });
+        });
+    }
+
+    private <T> Mono<T> attempt(Supplier<Mono<T>> call, double units) {
+        long startedAt = System.nanoTime();
+        long limit = currentTimeoutMs(units);
+        return Mono.defer(call)
+                .timeout(Duration.ofMillis(limit))
+                .doOnSuccess(v -> {
+                    recordLatency((System.nanoTime() - startedAt) / 1_000_000L, units);
+                    onSuccess();
+                })
+                .onErrorMap(e -> onFailure(e, limit))
+                .doOnCancel(this::onCancel);
+    }
+
+    private <T> Mono<T> rejectedError() {
+        return Mono.error(rejected());
+    }
+
+    private UpstreamException rejected() {
+        rejected.increment();
+        return new UpstreamException(name + " circuit open");
+    }
+
+    // ---- 서킷 브레이커 ----
+
+    private synchronized boolean tryAcquire() {
+        calls.incrementAndGet();
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < Duration.ofMillis(cfg.getOpenMs()).toNanos()) return false;
+            state = State.HALF_OPEN;
+            halfOpenPermits = cfg.getHalfOpenCalls();
+            halfOpenSuccesses = 0;
+            log.info("[GUARD:{}] circuit half-open", name);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits <= 0) return false;
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    private synchronized void onSuccess() {
+        success.increment();
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= cfg.getHalfOpenCalls()) {
+                state = State.CLOSED;
+                resetWindow();
+                log.info("[GUARD:{}] circuit closed", name);
+            }
+            return;
+        }
+        recordOutcome(false);
+    }
+
+    /** 결과 없이 취소된 호출(헤지에 진 쪽 등)은 통계에 넣지 않는다. 반열림 시험 호출이었다면 기회를 돌려준다. */
+    private synchronized void onCancel() {
+        if (state == State.HALF_OPEN) halfOpenPermits++;
+    }
+
+    private Throwable onFailure(Throwable e, long limit) {
+        boolean isTimeout = e instanceof TimeoutException;
+        (isTimeout ? timeout : failure).increment();
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                open();
+            } else if (state == State.CLOSED) {
+                recordOutcome(true);
+            }
+        }
+        return isTimeout ? new UpstreamException(name + " timed out after " + limit + "ms", e) : e;
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[outcomeIndex]) failures--;
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = failed;
+        if (failed) failures++;
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+
+        if (outcomeCount >= cfg.getMinCalls() && (double) failures / outcomeCount >= cfg.getFailureRateThreshold()) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        resetWindow();
+        log.warn("[GUARD:{}] circuit opened for {}ms", name, cfg.getOpenMs());
+    }
+
+    private void resetWindow() {
+        Arrays.fill(outcomes, false);
+        outcomeCount = 0;
+        outcomeIndex = 0;
+        failures = 0;
+    }
+
+    private synchronized int stateValue() {
+        return switch (state) {
+            case CLOSED -> 0;
+            case HALF_OPEN -> 1;
+            case OPEN -> 2;
+        };
+    }
+
+    // ---- 지연 기록 / 적응형 타임아웃 ----
+
+    private synchronized void recordLatency(long ms, double units) {
+        latencies[latencyIndex] = Math.round(ms / Math.max(1, units));
+        latencyIndex = (latencyIndex + 1) % latencies.length;
+        if (latencyCount < latencies.length) latencyCount++;
+        // 정렬 비용을 줄이기 위해 일정 개수마다 백분위를 다시 계산한다.
+        if (latencyCount >= cfg.getMinLatencySamples() && latencyIndex % 16 == 0) {
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            long pTimeout = sorted[index(sorted.length, cfg.getTimeoutPercentile())];
+            long pHedge = sorted[index(sorted.length, cfg.getHedgePercentile())];
+            timeoutPerUnitMs = pTimeout * cfg.getTimeoutMultiplier();
+            hedgeDelayMs = Math.max(cfg.getHedgeMinDelayMs(), pHedge);
+        }
+    }
+
+    private static int index(int n, double percentile) {
+        return Math.min(n - 1, Math.max(0, (int) Math.ceil(percentile * n) - 1));
+    }
+
+    private synchronized long currentTimeoutMs(double units) {
+        if (timeoutPerUnitMs < 0) return cfg.getMaxTimeoutMs();
+        long scaled = Math.round(timeoutPerUnitMs * Math.max(1, units));
+        return Math.max(cfg.getMinTimeoutMs(), Math.min(cfg.getMaxTimeoutMs(), scaled));
+    }
+
+    /** 헤지 대기 시간. 표본이 부족하거나 서킷이 반열림이면 -1 (헤지 안 함) */
+    private synchronized long hedgeDelay() {
+        return state == State.CLOSED ? hedgeDelayMs : -1;
+    }
+
+    private boolean allowHedge() {
+        long n = calls.get();
+        if (hedged.get() + 1 > Math.max(1, (long) (n * cfg.getHedgeMaxRatio()))) return false;
+        hedged.incrementAndGet();
+        return true;
+    }
+}
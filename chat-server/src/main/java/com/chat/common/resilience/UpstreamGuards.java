@@ -0,0 +1,30 @@
+package com.chat.common.resilience;
+
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 업스트림 이름별 UpstreamGuard 보관소. 같은 이름이면 같은 서킷/지연 통계를 공유한다.
+ * 설정은 app.resilience.clients.{name} (없으면 기본값)
+ */
+@Component
+public class UpstreamGuards {
+
+    private final AppProperties.Resilience props;
+    private final MeterRegistry registry;
+    private final Map<String, UpstreamGuard> guards = new ConcurrentHashMap<>();
+
+    public UpstreamGuards(AppProperties props, MeterRegistry registry) {
+        this.props = props.getResilience();
+        this.registry = registry;
+    }
+
+    public UpstreamGuard get(String name) {
+        return guards.computeIfAbsent(name, n ->
+                new UpstreamGuard(n, props.getClients().getOrDefault(n, new AppProperties.Resilience.Guard()), registry));
+    }
+}
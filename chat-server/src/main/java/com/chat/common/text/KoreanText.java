@@ -0,0 +1,95 @@
+package com.chat.common.text;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 한국어 질문 텍스트를 다루는 간단한 유틸리티.
+ * 형태소 분석기 없이 동작하는 휴리스틱이므로, 캐시 키/검색어 후보를 만드는 용도로만 사용한다.
+ */
+public final class KoreanText {
+
+    private KoreanText() {
+    }
+
+    // 길이가 긴 조사부터 검사해야 "에서"가 "서"보다 먼저 잘린다.
+    private static final List<String> JOSA = List.of(
+            "에서는", "으로는", "에게서", "이라도",
+            "까지", "부터", "에서", "에게", "한테", "으로", "이나", "이랑", "처럼", "보다", "에는", "과의", "와의",
+            "은", "는", "이", "가", "을", "를", "에", "의", "와", "과", "도", "로", "만", "랑");
+
+    // 서술어(질문/요청) 어미: 이것으로 끝나는 어절은 검색 키워드가 아니다.
+    // 한 글자 어미("요", "다")는 "필요", "바다" 같은 명사와 겹치므로 두 글자 이상 위주로 둔다.
+    private static final List<String> PREDICATE_ENDINGS = List.of(
+            "습니다", "니다", "세요", "나요", "가요", "까요", "어요", "아요", "해요", "돼요", "되요", "지요",
+            "는지", "을까", "할까", "인가", "니까", "해줘", "주라", "한다", "된다", "있다", "없다", "했다",
+            "이다", "싶어", "싶다", "줘", "죠");
+
+    // 의미가 없는 의문사/대명사/부사
+    private static final Set<String> STOPWORDS = Set.of(
+            "어떻게", "어디", "어디서", "무엇", "뭐", "뭘", "언제", "왜", "어떤", "무슨",
+            "좀", "혹시", "저", "제", "저는", "제가", "우리", "저희", "그", "이", "그런", "이런",
+            "수", "것", "거", "관련", "대해", "대한", "대해서", "있는", "하는", "할", "되는");
+
+    /**
+     * 질문 정규화: 유니코드 NFC, 소문자, 문장부호 제거, 연속 공백 축약
+     * ("다문화 자녀 학교 입학 준비?" == "다문화  자녀 학교 입학 준비")
+     */
+    public static String normalize(String text) {
+        return Normalizer.normalize(Objects.requireNonNullElse(text, ""), Normalizer.Form.NFC)
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[\\p{Punct}？！。，·…~]+", " ")
+                .strip()
+                .replaceAll("\\s+", " ");
+    }
+
+    /**
+     * 정규화된 텍스트의 어절 목록
+     */
+    public static List<String> tokens(String text) {
+        String n = normalize(text);
+        return n.isEmpty() ? List.of() : List.of(n.split(" "));
+    }
+
+    /**
+     * 어절이 서술어(질문/요청형 어미)인지 여부
+     */
+    public static boolean isPredicate(String token) {
+        for (String end : PREDICATE_ENDINGS) {
+            if (token.endsWith(end)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 어절 끝의 조사를 떼어낸다. 남는 부분이 2글자 미만이면 명사의 일부로 보고 그대로 둔다.
+     * (예: "자녀의" -> "자녀", "아이" -> "아이")
+     */
+    public static String stripJosa(String token) {
+        for (String j : JOSA) {
+            if (token.endsWith(j) && token.length() - j.length() >= 2) {
+                return token.substring(0, token.length() - j.length());
+            }
+        }
+        return token;
+    }
+
+    /**
+     * 명사구 휴리스틱으로 검색 키워드를 뽑는다.
+     * 서술어/불용어 어절은 버리고, 나머지 어절은 조사를 떼고 2글자 이상만 남긴다. (순서 유지, 중복 제거)
+     */
+    public static List<String> keywords(String text) {
+        List<String> out = new ArrayList<>();
+        for (String t : tokens(text)) {
+            if (STOPWORDS.contains(t) || isPredicate(t)) continue;
+            String k = stripJosa(t);
+            if (k.length() < 2 || STOPWORDS.contains(k) || out.contains(k)) continue;
+            out.add(k);
+        }
+        return out;
+    }
+}
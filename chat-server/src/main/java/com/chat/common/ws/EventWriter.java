@@ -0,0 +1,74 @@
+package com.chat.common.ws;
+
+import com.chat.chat.model.OutboundEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * OutboundEvent를 세션 버퍼 팩토리(Reactor Netty면 풀 버퍼)에서 받은 DataBuffer에 바로 쓴다.
+ * <p>
+ * JsonGenerator는 스레드마다 하나를 만들어 재사용하고, 출력 대상만 이벤트마다 바꾼다.
+ * (이벤트 하나에 버퍼 하나, 중간 Map/String/byte[] 없음. 송신 스레드는 이벤트 루프 몇 개뿐이다)
+ * 쓰는 중에 실패하면 그 스레드의 generator는 버리고 다음에 새로 만든다.
+ */
+final class EventWriter {
+
+    private static final JsonFactory JSON = JsonFactory.builder().build();
+    private static final int INITIAL_CAPACITY = 256;
+    private static final ThreadLocal<EventWriter> LOCAL = ThreadLocal.withInitial(EventWriter::new);
+
+    /** 현재 대상 버퍼로 넘겨 주는 스트림 (generator가 내부 버퍼를 flush할 때만 불린다) */
+    private static final class Target extends OutputStream {
+        DataBuffer buf;
+
+        @Override
+        public void write(int b) {
+            buf.write((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buf.write(b, off, len);
+        }
+    }
+
+    private final Target target = new Target();
+    private final JsonGenerator generator;
+
+    private EventWriter() {
+        try {
+            this.generator = JSON.createGenerator(target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // 최상위 값 사이 구분자(공백)를 쓰지 않는다.
+        generator.setRootValueSeparator(null);
+    }
+
+    /**
+     * 이벤트 JSON을 담은 버퍼를 돌려준다. (받은 쪽이 release, WebSocketMessage로 보내면 Netty가 release)
+     */
+    static DataBuffer write(DataBufferFactory factory, OutboundEvent event) {
+        EventWriter w = LOCAL.get();
+        DataBuffer buf = factory.allocateBuffer(INITIAL_CAPACITY);
+        w.target.buf = buf;
+        try {
+            event.writeTo(w.generator);
+            w.generator.flush();
+            return buf;
+        } catch (IOException | RuntimeException e) {
+            LOCAL.remove();
+            DataBufferUtils.release(buf);
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        } finally {
+            w.target.buf = null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.chat.common.ws;
+
+import com.chat.chat.model.OutboundEvent;
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 세션 하나의 송신 대기열. (WsEmitter 내부용)
+ * <p>
+ * - 크기 제한: max-queue. 소켓이 요청(request)한 만큼만 꺼내 보내므로, 클라이언트가 느리면 여기에 쌓인다.
+ *   (Reactor Netty는 채널이 쓰기 가능할 때만 더 요청한다)
+ * - 넘치면 overflow 정책(COALESCE_DELTAS | DROP_OLDEST_DELTA | CLOSE)을 따른다. delta가 아닌 메시지는 버리지 않는다.
+ * - 메시지는 보낼 때 WebSocketMessage로 만든다. 대기 중에는 이벤트 객체/String/byte[]만 들고 있어 버릴 때 release할 것이 없다.
+ *   이벤트는 EventWriter가 세션 버퍼에 JSON을 바로 쓴다.
+ * - 여러 스레드에서 동시에 offer해도 된다. (대기열은 this로 동기화, 내보내기는 wip 카운터로 한 스레드만)
+ * - delta는 세션이 고른 WireProtocol에 따라 JSON 텍스트 또는 바이너리 프레임으로 만든다.
+ * <p>
+ * 지표: chat.ws.outbound.dropped, chat.ws.outbound.coalesced, chat.ws.outbound.closed 카운터,
+ * chat.ws.outbound.delta.bytes 분포 (tag: mode=json|binary, delta 프레임 하나의 페이로드 크기)
+ */
+@Slf4j
+final class OutboundQueue {
+
+    private static final CloseStatus SLOW_CONSUMER = CloseStatus.POLICY_VIOLATION.withReason("slow consumer");
+
+    /** 대기 중인 메시지. delta는 같은 key끼리 text를 이어 붙일 수 있다. */
+    static final class Pending {
+        private final String json;
+        private final byte[] binary;
+        private final OutboundEvent event;
+        private final String deltaKey;
+        private final String deltaText;
+        private StringBuilder merged; // 합쳐진 적이 있을 때만 만든다
+
+        private Pending(String json, byte[] binary, OutboundEvent event, String deltaKey, String deltaText) {
+            this.json = json;
+            this.binary = binary;
+            this.event = event;
+            this.deltaKey = deltaKey;
+            this.deltaText = deltaText;
+        }
+
+        static Pending text(String json) {
+            return new Pending(json, null, null, null, null);
+        }
+
+        static Pending binary(byte[] bytes) {
+            return new Pending(null, bytes, null, null, null);
+        }
+
+        static Pending event(OutboundEvent event) {
+            return new Pending(null, null, event, null, null);
+        }
+
+        static Pending delta(String traceId, String text) {
+            return new Pending(null, null, null, traceId, text);
+        }
+
+        boolean isDelta() {
+            return deltaKey != null;
+        }
+
+        void append(Pending next) {
+            if (merged == null) merged = new StringBuilder(deltaText);
+            merged.append(next.deltaText);
+        }
+
+        private CharSequence text() {
+            return merged != null ? merged : deltaText;
+        }
+    }
+
+    private final WebSocketSession session;
+    private final int capacity;
+    private final AppProperties.Ws.Overflow policy;
+    private final MeterRegistry meterRegistry;
+    private final WireProtocol protocol;
+    private final DistributionSummary deltaBytes;
+
+    // 아래 네 필드는 this로 동기화
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private boolean done; // complete 또는 느린 클라이언트로 닫힘. 이후 offer는 무시
+    private long dropped;
+    private long coalesced;
+
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile FluxSink<WebSocketMessage> out;
+
+    OutboundQueue(WebSocketSession session, AppProperties.Ws.Outbound cfg, MeterRegistry meterRegistry) {
+        this.session = session;
+        this.capacity = Math.max(1, cfg.getMaxQueue());
+        this.policy = cfg.getOverflow();
+        this.meterRegistry = meterRegistry;
+        this.protocol = WireProtocol.of(session);
+        this.deltaBytes = DistributionSummary.builder("chat.ws.outbound.delta.bytes")
+                .tag("mode", protocol.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    /**
+     * 소켓 송신 스트림. (session.send에 한 번만 구독)
+     */
+    Flux<WebSocketMessage> flux() {
+        return Flux.create(sink -> {
+            out = sink;
+            sink.onRequest(n -> drain());
+            // 연결이 끊기면 남은 메시지를 들고 있지 않는다.
+            sink.onDispose(() -> {
+                synchronized (this) {
+                    done = true;
+                    queue.clear();
+                }
+            });
+            drain();
+        });
+    }
+
+    void offer(Pending p) {
+        boolean close = false;
+        synchronized (this) {
+            if (done) return;
+            Pending tail = queue.peekLast();
+            if (policy == AppProperties.Ws.Overflow.COALESCE_DELTAS && p.isDelta()
+                    && tail != null && p.deltaKey.equals(tail.deltaKey)) {
+                // 아직 못 보낸 같은 스트림의 delta 뒤에 붙인다. (순서는 그대로, 프레임 수만 줄어든다)
+                tail.append(p);
+                coalesced++;
+                meterRegistry.counter("chat.ws.outbound.coalesced").increment();
+                return;
+            }
+            if (queue.size() >= capacity) {
+                if (policy == AppProperties.Ws.Overflow.DROP_OLDEST_DELTA && dropOldestDelta()) {
+                    dropped++;
+                    meterRegistry.counter("chat.ws.outbound.dropped").increment();
+                } else {
+                    close = true;
+                    done = true;
+                    queue.clear();
+                }
+            }
+            if (!close) queue.add(p);
+        }
+        if (close) {
+            log.warn("[WS:{}] outbound queue full ({} messages, policy {}), closing slow consumer",
+                    session.getId(), capacity, policy);
+            meterRegistry.counter("chat.ws.outbound.closed").increment();
+            session.close(SLOW_CONSUMER).subscribe(v -> { }, e -> { });
+        }
+        drain();
+    }
+
+    /**
+     * 남은 메시지를 모두 보낸 뒤 송신 스트림을 끝낸다.
+     */
+    void complete() {
+        synchronized (this) {
+            done = true;
+        }
+        drain();
+    }
+
+    synchronized int depth() {
+        return queue.size();
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    synchronized long coalesced() {
+        return coalesced;
+    }
+
+    private WebSocketMessage toMessage(Pending p) {
+        if (p.binary != null) return session.binaryMessage(f -> f.wrap(p.binary));
+        if (p.event != null) return text(p.event);
+        if (p.deltaKey == null) return session.textMessage(p.json);
+        WebSocketMessage msg = protocol == WireProtocol.BINARY && WireProtocol.isBinaryKey(p.deltaKey)
+                ? session.binaryMessage(f -> WireProtocol.encodeDelta(f, p.deltaKey, p.text()))
+                : text(new OutboundEvent.Delta(p.deltaKey, p.text().toString()));
+        deltaBytes.record(msg.getPayload().readableByteCount());
+        return msg;
+    }
+
+    private WebSocketMessage text(OutboundEvent event) {
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT, EventWriter.write(session.bufferFactory(), event));
+    }
+
+    private boolean dropOldestDelta() {
+        for (Iterator<Pending> it = queue.iterator(); it.hasNext(); ) {
+            if (it.next().isDelta()) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            FluxSink<WebSocketMessage> sink = out;
+            if (sink != null) {
+                while (sink.requestedFromDownstream() > 0) {
+                    Pending p;
+                    synchronized (this) {
+                        p = queue.poll();
+                    }
+                    if (p == null) break;
+                    sink.next(toMessage(p));
+                }
+                boolean finished;
+                synchronized (this) {
+                    finished = done && queue.isEmpty();
+                }
+                if (finished) sink.complete();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
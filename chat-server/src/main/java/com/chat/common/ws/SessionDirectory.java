@@ -0,0 +1,168 @@
+package com.chat.common.ws;
+
+import com.chat.common.json.JsonUtils;
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 파드 간 세션 디렉터리 + 전달(relay). (app.cluster.enabled=true 이고 Redis가 있을 때만 동작)
+ * <p>
+ * - 위치: 이 파드에 붙은 세션마다 Redis 키 {key-prefix}{sessionId} = podId 를 TTL로 기록하고,
+ *   heartbeat-seconds마다 다시 써서 연장한다. 파드가 죽으면 session-ttl-seconds 뒤에 위치가 사라진다.
+ * - 전달: 파드마다 자기 채널 {channel-prefix}{podId}를 구독한다. 다른 파드의 세션으로 보낼 메시지는
+ *   위치를 조회해 그 파드 채널에 발행하고, 받은 파드가 로컬 Emitter로 내보낸다. (pub/sub이라 받는 파드가 없으면 유실)
+ * <p>
+ * Redis 장애는 로그만 남기고 전달 실패로 취급한다. (로컬 세션 송수신에는 영향 없음)
+ * <p>
+ * 지표: chat.ws.relay 카운터 (tag: outcome=local|sent|received|miss|error)
+ */
+@Slf4j
+@Component
+public class SessionDirectory {
+
+    /** 파드 사이에 주고받는 메시지 */
+    record Relay(String sessionId, String text) {
+    }
+
+    // 위치 키가 아직 이 파드를 가리킬 때만 지운다. (세션 ID는 파드마다 따로 만들므로 드물게 겹칠 수 있음)
+    private static final RedisScript<Long> DELETE_IF_OWNER = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final AppProperties.Cluster cfg;
+    private final ReactiveStringRedisTemplate redis; // 비활성화 시 null
+    private final MeterRegistry meterRegistry;
+    private final String podId;
+    private final Duration ttl;
+    private final Set<String> local = ConcurrentHashMap.newKeySet();
+    private Disposable heartbeat;
+    private Disposable inbox;
+
+    public SessionDirectory(AppProperties props,
+                            MeterRegistry meterRegistry,
+                            ObjectProvider<ReactiveStringRedisTemplate> redisProvider) {
+        this.cfg = props.getCluster();
+        this.meterRegistry = meterRegistry;
+        this.redis = cfg.isEnabled() ? redisProvider.getIfAvailable() : null;
+        this.podId = resolvePodId(cfg.getPodId());
+        this.ttl = Duration.ofSeconds(cfg.getSessionTtlSeconds());
+        if (cfg.isEnabled() && redis == null) {
+            log.warn("[CLUSTER] enabled but no ReactiveStringRedisTemplate available, relaying within this pod only");
+        }
+    }
+
+    public String podId() {
+        return podId;
+    }
+
+    /**
+     * 자기 파드 채널을 구독하고 위치 갱신을 시작한다. 받은 메시지는 deliver로 넘긴다. (SessionRegistry가 한 번 호출)
+     */
+    void start(Consumer<Relay> deliver) {
+        if (redis == null) return;
+        this.inbox = redis.listenToChannel(cfg.getChannelPrefix() + podId)
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnNext(json -> {
+                    try {
+                        deliver.accept(JsonUtils.fromJson(json, Relay.class));
+                        count("received");
+                    } catch (RuntimeException e) {
+                        log.warn("[CLUSTER] bad relay message: {}", e.toString());
+                    }
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(s -> log.warn("[CLUSTER] relay subscription lost: {}", s.failure().toString())))
+                .subscribe();
+
+        Duration every = Duration.ofSeconds(cfg.getHeartbeatSeconds());
+        this.heartbeat = Flux.interval(every, every, Schedulers.boundedElastic())
+                .concatMap(t -> Flux.fromIterable(List.copyOf(local))
+                        .flatMap(sid -> redis.opsForValue().set(key(sid), podId, ttl), 32)
+                        .then()
+                        .onErrorResume(e -> {
+                            log.warn("[CLUSTER] heartbeat failed: {}", e.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+        log.info("[CLUSTER] pod {} relaying on {}{}", podId, cfg.getChannelPrefix(), podId);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (heartbeat != null) heartbeat.dispose();
+        if (inbox != null) inbox.dispose();
+    }
+
+    /** 세션이 이 파드에 붙었음을 기록한다. */
+    void register(String sessionId) {
+        local.add(sessionId);
+        if (redis == null) return;
+        redis.opsForValue().set(key(sessionId), podId, ttl)
+                .subscribe(ok -> { }, e -> log.warn("[CLUSTER] register {} failed: {}", sessionId, e.toString()));
+    }
+
+    /** 세션 위치를 지운다. (다른 파드가 같은 키를 쓰고 있으면 그대로 둔다) */
+    void unregister(String sessionId) {
+        if (!local.remove(sessionId) || redis == null) return;
+        redis.execute(DELETE_IF_OWNER, List.of(key(sessionId)), List.of(podId))
+                .subscribe(n -> { }, e -> log.warn("[CLUSTER] unregister {} failed: {}", sessionId, e.toString()));
+    }
+
+    /**
+     * 다른 파드에 붙은 세션으로 텍스트를 보낸다.
+     *
+     * @return 받은 파드가 있으면 true (위치를 모르거나, Redis가 없거나, 구독 중인 파드가 없으면 false)
+     */
+    Mono<Boolean> relay(String sessionId, String text) {
+        if (redis == null) {
+            count("miss");
+            return Mono.just(false);
+        }
+        return redis.opsForValue().get(key(sessionId))
+                // 이 파드를 가리키는데 로컬에 없으면 이미 끊긴 세션이다.
+                .filter(pod -> !pod.equals(podId))
+                .flatMap(pod -> redis.convertAndSend(cfg.getChannelPrefix() + pod,
+                        JsonUtils.toJson(new Relay(sessionId, text))))
+                .map(receivers -> receivers > 0)
+                .defaultIfEmpty(false)
+                .doOnNext(sent -> count(sent ? "sent" : "miss"))
+                .onErrorResume(e -> {
+                    log.warn("[CLUSTER] relay to {} failed: {}", sessionId, e.toString());
+                    count("error");
+                    return Mono.just(false);
+                });
+    }
+
+    void count(String outcome) {
+        meterRegistry.counter("chat.ws.relay", "outcome", outcome).increment();
+    }
+
+    private String key(String sessionId) {
+        return cfg.getKeyPrefix() + sessionId;
+    }
+
+    private static String resolvePodId(String configured) {
+        if (configured != null && !configured.isBlank()) return configured.trim();
+        String host = System.getenv("HOSTNAME");
+        return host != null && !host.isBlank() ? host : UUID.randomUUID().toString();
+    }
+}
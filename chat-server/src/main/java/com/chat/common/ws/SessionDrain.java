@@ -0,0 +1,74 @@
+package com.chat.common.ws;
+
+import com.chat.config.AppProperties;
+import com.chat.pipeline.RagAdmission;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+
+/**
+ * 파드 종료(SIGTERM) 시 세션 드레인.
+ * 가장 먼저 멈추는 Lifecycle이라 웹 서버가 내려가기 전에 아래 순서로 실행된다.
+ * <p>
+ * 1. 새 소켓을 받지 않고(SessionRegistry.isDraining) readiness를 REFUSING_TRAFFIC으로 바꿔 Service에서 빠진다.
+ * 2. 진행 중인 파이프라인(RagAdmission)과 녹음 중인 오디오 세션이 끝나기를 drain-timeout-seconds까지 기다린다.
+ * 3. 남은 소켓은 1012(SERVICE_RESTARTED)로 닫는다. 클라이언트는 다시 연결해 다른 파드로 붙는다.
+ * <p>
+ * spring.lifecycle.timeout-per-shutdown-phase와 terminationGracePeriodSeconds는 drain-timeout-seconds보다 길어야 한다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SessionDrain implements SmartLifecycle {
+
+    private static final String AUDIO_PATH = "/ws/audio";
+    private static final long POLL_MS = 200;
+
+    private final SessionRegistry registry;
+    private final RagAdmission admission;
+    private final ApplicationEventPublisher publisher;
+    private final AppProperties props;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        registry.startDrain();
+        AvailabilityChangeEvent.publish(publisher, this, ReadinessState.REFUSING_TRAFFIC);
+
+        long deadline = System.nanoTime() + props.getCluster().getDrainTimeoutSeconds() * 1_000_000_000L;
+        log.info("[DRAIN] draining: {} pipelines in flight, {} audio sessions",
+                admission.inFlight(), registry.count(AUDIO_PATH));
+        try {
+            while ((admission.inFlight() > 0 || registry.count(AUDIO_PATH) > 0) && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("[DRAIN] closing remaining sessions ({} pipelines still in flight)", admission.inFlight());
+        registry.closeAll(CloseStatus.SERVICE_RESTARTED);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // 웹 서버(graceful shutdown 포함)보다 먼저 멈춘다.
+        return SmartLifecycle.DEFAULT_PHASE;
+    }
+}
@@ -1,7 +1,16 @@
 package com.chat.common.ws;
 
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -11,7 +20,12 @@ import java.util.concurrent.ConcurrentHashMap;
  * 활성화된 모든 웹소켓 세션(WsEmitter)을 관리하는 중앙 저장소(Registry) 역할을 하는 클래스입니다.
  * 세션 ID를 키(key)로 사용하여 각 세션의 Emitter에 쉽게 접근하고, 생성 및 제거를 담당합니다.
  * 멀티스레드 환경에서 안전하게 동작하도록 설계되었습니다.
+ * <p>
+ * 파드가 여러 개일 때는 SessionDirectory가 세션 위치(세션 ID -> 파드)를 Redis에 기록하고,
+ * emitText(sessionId, json)는 다른 파드에 붙은 세션에도 메시지를 전달합니다. (app.cluster)
+ * 종료 중(draining)에는 새 소켓을 받지 않습니다. (SessionDrain)
  */
+@Slf4j
 @Component
 public class SessionRegistry {
 
@@ -27,6 +41,46 @@ public class SessionRegistry {
      */
     private final Map<String, WsEmitter> emitters = new ConcurrentHashMap<>();
 
+    /**
+     * 세션 위치 기록 및 파드 간 전달을 담당합니다. (클러스터 모드가 꺼져 있으면 아무것도 하지 않습니다)
+     */
+    private final SessionDirectory directory;
+
+    /**
+     * 세션별 송신 대기열 설정과 지표 등록용 레지스트리입니다.
+     */
+    private final AppProperties.Ws.Outbound outboundCfg;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 파드 종료 중이면 true. 핸들러는 이 값을 보고 새 연결을 바로 닫습니다.
+     */
+    private volatile boolean draining;
+
+    public SessionRegistry(SessionDirectory directory, AppProperties props, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.outboundCfg = props.getWs().getOutbound();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("chat.ws.sessions", emitters, Map::size).register(meterRegistry);
+        // 송신 대기열: 전체 대기 메시지 수와 가장 밀린 세션의 대기 수
+        Gauge.builder("chat.ws.outbound.queued", emitters,
+                m -> m.values().stream().mapToInt(WsEmitter::queueDepth).sum()).register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.queue.max", emitters,
+                m -> m.values().stream().mapToInt(WsEmitter::queueDepth).max().orElse(0)).register(meterRegistry);
+    }
+
+    /**
+     * 다른 파드가 전달한 메시지를 이 파드의 세션으로 내보내도록 디렉터리에 연결합니다.
+     */
+    @PostConstruct
+    void start() {
+        directory.start(relay -> {
+            var e = emitters.get(relay.sessionId());
+            if (e != null) e.emitText(relay.text());
+            else directory.count("miss"); // 그 사이 끊긴 세션
+        });
+    }
+
     /**
      * 새로운 웹소켓 연결을 위한 WsEmitter를 생성하고 레지스트리에 등록합니다.
      * 이 메소드는 클라이언트와 웹소켓 연결이 처음 수립되었을 때 호출됩니다.
@@ -37,9 +91,11 @@ public class SessionRegistry {
      */
     public WsEmitter createEmitter(String sessionId, WebSocketSession session) {
         // 주어진 세션 ID와 WebSocketSession을 사용하여 WsEmitter 인스턴스를 생성합니다.
-        var emitter = WsEmitter.of(sessionId, session);
+        var emitter = WsEmitter.of(sessionId, session, outboundCfg, meterRegistry);
         // 생성된 emitter를 sessionId를 키로 하여 맵에 저장(등록)합니다.
         emitters.put(sessionId, emitter);
+        // 다른 파드에서도 이 세션을 찾을 수 있도록 위치를 기록합니다.
+        directory.register(sessionId);
         // 방금 생성한 emitter를 호출한 쪽으로 반환합니다.
         return emitter;
     }
@@ -64,13 +120,60 @@ public class SessionRegistry {
         // 맵에서 sessionId에 해당하는 emitter를 '원자적으로(atomically)' 제거하고,
         // 제거된 emitter를 반환받습니다. (제거와 반환이 동시에 일어남)
         var e = emitters.remove(sessionId);
+        directory.unregister(sessionId);
 
         // 만약 맵에 해당 sessionId가 존재해서 emitter가 성공적으로 제거되었다면 (null이 아니라면)
         if (e != null) {
+            // 느린 클라이언트 때문에 대기열에서 버리거나 합친 메시지가 있었다면 남겨 둡니다.
+            if (e.droppedCount() > 0 || e.coalescedCount() > 0) {
+                log.info("[WS:{}] outbound dropped={} coalesced={}", sessionId, e.droppedCount(), e.coalescedCount());
+            }
             // 해당 emitter의 complete() 메소드를 호출하여 스트림을 정상적으로 종료시키고
             // 관련된 모든 리소스를 해제하도록 합니다.
             e.complete();
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 세션이 어느 파드에 있든 텍스트 메시지를 보냅니다.
+     * 이 파드의 세션이면 바로 내보내고, 아니면 SessionDirectory를 통해 세션이 붙은 파드로 전달합니다.
+     *
+     * @return 전달되었으면 true (세션을 찾지 못했거나 전달에 실패하면 false)
+     */
+    public Mono<Boolean> emitText(String sessionId, String json) {
+        var e = emitters.get(sessionId);
+        if (e != null) {
+            e.emitText(json);
+            directory.count("local");
+            return Mono.just(true);
+        }
+        return directory.relay(sessionId, json);
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * 드레인을 시작합니다. 이후 들어오는 연결은 핸들러가 바로 닫습니다. (되돌릴 수 없음)
+     */
+    void startDrain() {
+        draining = true;
+    }
+
+    /**
+     * 핸드셰이크 경로(예: /ws/audio)가 같은 로컬 세션 수를 셉니다.
+     */
+    public int count(String path) {
+        return (int) emitters.values().stream()
+                .filter(e -> path.equals(e.getSession().getHandshakeInfo().getUri().getPath()))
+                .count();
+    }
+
+    /**
+     * 남아 있는 로컬 세션을 모두 주어진 상태 코드로 닫습니다. (정리는 각 핸들러의 종료 처리가 합니다)
+     */
+    void closeAll(CloseStatus status) {
+        List.copyOf(emitters.values()).forEach(e -> e.getSession().close(status).subscribe(v -> { }, err -> { }));
+    }
+}
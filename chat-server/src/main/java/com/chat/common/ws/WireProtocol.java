@@ -0,0 +1,69 @@
+package com.chat.common.ws;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 채팅 WebSocket 송신 형식. 클라이언트가 핸드셰이크의 Sec-WebSocket-Protocol 헤더로 고른다.
+ * <p>
+ * - chat.json.v1 (또는 헤더 없음): 모든 이벤트를 JSON 텍스트 프레임으로 보낸다. (기존 클라이언트)
+ * - chat.bin.v1: 답변 조각(delta)은 바이너리 프레임, 나머지 이벤트는 JSON 텍스트 프레임으로 보낸다.
+ * <p>
+ * 바이너리 프레임: [tag u8][key 길이 u8][key ASCII][text UTF-8 ... 프레임 끝까지]
+ * - tag: 이벤트 종류 (0x01 = nlp-stream delta)
+ * - key: 스트림 키 (traceId)
+ * text 길이는 WebSocket 프레임 길이로 알 수 있으므로 따로 싣지 않는다.
+ */
+public enum WireProtocol {
+
+    JSON("chat.json.v1"),
+    BINARY("chat.bin.v1");
+
+    /** nlp-stream delta */
+    public static final byte TAG_DELTA = 0x01;
+
+    /** 핸들러가 지원하는 subprotocol 목록 (선택은 클라이언트가 보낸 순서를 따른다) */
+    public static final List<String> SUBPROTOCOLS = List.of(BINARY.subprotocol, JSON.subprotocol);
+
+    private final String subprotocol;
+
+    WireProtocol(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String subprotocol() {
+        return subprotocol;
+    }
+
+    /** 핸드셰이크에서 고른 형식 (고르지 않았으면 JSON) */
+    static WireProtocol of(WebSocketSession session) {
+        return BINARY.subprotocol.equals(session.getHandshakeInfo().getSubProtocol()) ? BINARY : JSON;
+    }
+
+    /**
+     * 바이너리 delta 프레임으로 보낼 수 있는 키인지 (ASCII, 255바이트 이하)
+     */
+    static boolean isBinaryKey(String key) {
+        if (key.length() > 255) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) > 0x7F) return false;
+        }
+        return true;
+    }
+
+    /**
+     * delta 프레임을 풀 버퍼 하나에 바로 쓴다. (중간 String/byte[] 없음, 버퍼는 전송 후 Netty가 release)
+     */
+    static DataBuffer encodeDelta(DataBufferFactory factory, String key, CharSequence text) {
+        DataBuffer buf = factory.allocateBuffer(2 + key.length() + text.length() * 3);
+        buf.write(TAG_DELTA);
+        buf.write((byte) key.length());
+        buf.write(key, StandardCharsets.US_ASCII);
+        buf.write(text, StandardCharsets.UTF_8);
+        return buf;
+    }
+}
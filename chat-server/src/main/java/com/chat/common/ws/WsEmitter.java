@@ -1,64 +1,113 @@
 package com.chat.common.ws;
 
 import com.chat.chat.model.ChatOutbound;
-import com.chat.common.json.JsonUtils;
+import com.chat.chat.model.OutboundEvent;
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+
+import java.net.InetSocketAddress;
 
 
 /**
  * 특정 WebSocket 클라이언트 한 명에게 메시지를 보내는 역할을 전담
- * 복잡한 리액티브 스트림(Sink)을 내부에 감추고, 외부에서는 emit()나 complete() 같은 간단한 메서드만 호출하여 특정 클라이언트와 통신할 수 있도록 편리한 인터페이스 제공
+ * 복잡한 리액티브 스트림을 내부에 감추고, 외부에서는 emit()나 complete() 같은 간단한 메서드만 호출하여 특정 클라이언트와 통신할 수 있도록 편리한 인터페이스 제공
  *
  * 이 클래스는 특정 WebSocket 클라이언트 한 명에게 메시지를 보내는(emit) 역할을 담당합니다.
- * 내부적으로 Project Reactor의 Sinks API를 사용하여 메시지를 반응형 스트림(Flux)으로 처리합니다.
+ * 보낼 메시지는 세션별 크기 제한 대기열(OutboundQueue)에 넣고, 소켓이 받을 수 있는 만큼만 꺼내 보냅니다.
+ * 느린 클라이언트 때문에 대기열이 넘치면 app.ws.outbound.overflow 정책(delta 합치기/버리기, 연결 종료)을 따릅니다.
+ * 여러 스레드(Firestore 콜백, Papago 응답 등)에서 동시에 호출해도 안전합니다.
  */
-@RequiredArgsConstructor
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 @Getter
 public class WsEmitter {
 
     private final String sessionId;
     private final WebSocketSession session;
-    private final Sinks.Many<WebSocketMessage> sink;
+    @Getter(AccessLevel.NONE)
+    private final OutboundQueue outbound;
     private final java.util.concurrent.ConcurrentHashMap<String, Object> attributes = new java.util.concurrent.ConcurrentHashMap<>();
 
-    public static WsEmitter of(String sessionId, WebSocketSession session) {
-        var sink = Sinks.many()
-                .unicast()
-                .<WebSocketMessage>onBackpressureBuffer();
-        return new WsEmitter(sessionId, session, sink);
+    public static WsEmitter of(String sessionId, WebSocketSession session,
+                               AppProperties.Ws.Outbound cfg, MeterRegistry meterRegistry) {
+        return new WsEmitter(sessionId, session, new OutboundQueue(session, cfg, meterRegistry));
+    }
+
+    /**
+     * 게이트웨이가 핸드셰이크 요청에 넣어 준 사용자 ID(X-User-Id).
+     * 없으면(게이트웨이를 거치지 않은 연결) 클라이언트 주소로 묶어 "anon:{ip}"로 본다.
+     * 세션 ID로 두면 다시 연결할 때마다 새 토큰 버킷(RagAdmission)을 받아 제한을 피할 수 있다.
+     * X-Forwarded-For는 클라이언트가 바꿀 수 있으므로 직접 읽지 않는다. (신뢰할 프록시 뒤라면 server.forward-headers-strategy로 반영)
+     */
+    public String getUserId() {
+        String userId = session.getHandshakeInfo().getHeaders().getFirst("X-User-Id");
+        if (userId != null && !userId.isBlank()) return userId.trim();
+        InetSocketAddress remote = session.getHandshakeInfo().getRemoteAddress();
+        if (remote == null) return "anon:" + sessionId;
+        return "anon:" + (remote.getAddress() != null ? remote.getAddress().getHostAddress() : remote.getHostString());
     }
 
     public Flux<WebSocketMessage> flux() {
-        return sink.asFlux();
+        return outbound.flux();
     }
 
     public void emitText(String json) {
-        var msg = session.textMessage(json);
-        System.out.println("-----------------------------------------------");
-        System.out.println(json);
-        System.out.println("-----------------------------------------------");
-        sink.tryEmitNext(msg);
+        log.debug("[WS:{}] >> {}", sessionId, json);
+        outbound.offer(OutboundQueue.Pending.text(json));
     }
 
     public void emit(ChatOutbound outbound) {
-        String json = JsonUtils.toJson(outbound);
-        System.out.println("-----------------------------------------------");
-        System.out.println(json);
-        System.out.println("-----------------------------------------------");
-        sink.tryEmitNext(session.textMessage(json));
+        emit(OutboundEvent.of(outbound));
+    }
+
+    /**
+     * 이벤트를 보낸다. JSON은 보내는 시점에 세션 버퍼에 바로 쓴다. (문자열을 만들지 않음)
+     */
+    public void emit(OutboundEvent event) {
+        log.debug("[WS:{}] >> {}", sessionId, event);
+        outbound.offer(OutboundQueue.Pending.event(event));
+    }
+
+    /**
+     * 스트리밍 답변 조각(delta)을 보낸다. chat.bin.v1 세션에는 바이너리 프레임으로 보낸다. (WireProtocol)
+     * 클라이언트가 밀려 있으면 아직 못 보낸 같은 traceId의 조각과 합치거나(COALESCE_DELTAS)
+     * 오래된 것부터 버릴 수 있다(DROP_OLDEST_DELTA).
+     *
+     * @param traceId 답변 스트림 키
+     * @param text    조각 텍스트
+     */
+    public void emitDelta(String traceId, String text) {
+        outbound.offer(OutboundQueue.Pending.delta(traceId, text));
     }
 
     public void emitBinary(byte[] bytes) {
-        sink.tryEmitNext(session.binaryMessage(f -> f.wrap(bytes)));
+        outbound.offer(OutboundQueue.Pending.binary(bytes));
     }
 
     public void complete() {
-        sink.tryEmitComplete();
+        outbound.complete();
+    }
+
+    /** 보내지 못하고 대기 중인 메시지 수 */
+    public int queueDepth() {
+        return outbound.depth();
+    }
+
+    /** 대기열이 넘쳐 버린 delta 수 */
+    public long droppedCount() {
+        return outbound.dropped();
+    }
+
+    /** 대기 중인 delta에 합쳐진 delta 수 */
+    public long coalescedCount() {
+        return outbound.coalesced();
     }
 
     public <T> void setAttribute(String key, T value) {
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * 전체 서비스 설정 클래스.
  * application.yml의 app.* 구조를 바인딩함.
@@ -35,6 +38,11 @@ public class AppProperties {
     private Trans trans = new Trans();
     private Llm llm= new Llm();
     private Vertex vertex = new Vertex();
+    private Rag rag = new Rag();
+    private Usage usage = new Usage();
+    private Resilience resilience = new Resilience();
+    private Cluster cluster = new Cluster();
+    private Ws ws = new Ws();
     @Data
     public static class Stt {
         private String baseUrl;            // https://naveropenapi.apigw.ntruss.com
@@ -50,6 +58,33 @@ public class AppProperties {
 
         private String apiKeyId;
         private String apiKey;
+        private Pool pool = new Pool();
+        private LongForm longForm = new LongForm();
+        private Speculative speculative = new Speculative();
+
+        // 추측 STT: 발화가 끝나기 전에 쉼 지점까지의 앞부분을 미리 인식해 두고, 끝나면 나머지 꼬리만 인식해 잇는다
+        // (프로세스 내 스트리밍 디코드 + VAD가 켜져 있을 때만)
+        @Data
+        public static class Speculative {
+            private boolean enabled = true;
+            // 앞부분이 이만큼 쌓인 뒤 처음 오는 쉼에서 떼어 인식
+            private int prefixMs = 8_000;
+            // 이만큼 이어진 무음을 쉼으로 본다 (app.audio.vad.end-silence-ms보다 짧아야 발화 중간의 쉼)
+            private int pauseMs = 200;
+        }
+
+        // 짧은 음성 인식(CSR) 길이 제한을 넘는 오디오: 쉼 지점에서 나눠 구간별로 동시에 인식하고 순서대로 잇는다
+        @Data
+        public static class LongForm {
+            private boolean enabled = true;
+            // 구간 최대 길이 (CSR 단문 인식 60초 제한보다 조금 짧게)
+            // app.audio.vad.max-utterance-ms는 이보다 길어야 한다. (그래야 긴 발화가 VAD에서 잘리지 않고 여기서 쉼 지점 분할됨)
+            private int maxSegmentMs = 55_000;
+            // 구간 끝에서 이만큼 앞까지 가장 조용한 지점을 찾아 자른다
+            private int splitSearchMs = 15_000;
+            // 동시에 진행할 구간 인식 요청 수 (결과 순서는 항상 유지됨)
+            private int concurrency = 3;
+        }
 
         // ---------- 호환용 alias (getTimeoutMs 호출 대응) ----------
         /** 호출부에서 getTimeoutMs()를 기대하는 경우를 위해 추가 */
@@ -75,6 +110,30 @@ public class AppProperties {
         private String apiKeyId;
         private int connectTimeoutMs;
         private int readTimeoutMs;
+        private Pool pool = new Pool();
+        private Pipeline pipeline = new Pipeline();
+        private Cache cache = new Cache();
+
+        // 스트리밍 답변을 문장 단위로 나눠 번역할 때의 설정
+        @Data
+        public static class Pipeline {
+            // 동시에 진행할 Papago 청크 번역 요청 수 (결과 순서는 항상 유지됨)
+            private int concurrency = 4;
+            // 이 길이보다 짧은 문장은 다음 문장과 묶어서 번역 (호출 수/문맥 단절 방지)
+            private int minChunkChars = 40;
+        }
+
+        // 번역 결과 캐시 설정
+        @Data
+        public static class Cache {
+            // 프로세스 내 캐시 최대 항목 수
+            private int maxSize = 10_000;
+            // 프로세스 내 캐시 항목 유효 시간
+            private long ttlSeconds = 21_600;
+            // true면 Redis를 2차 캐시로 사용 (여러 파드가 번역 결과 공유)
+            private boolean redisEnabled = false;
+            private long redisTtlSeconds = 604_800;
+        }
     }
 
     @Data
@@ -83,6 +142,151 @@ public class AppProperties {
         private int connectionTimeoutMs;
         private int readTimeoutMs;
         private String apiKey;
+        private Pool pool = new Pool();
+        private Prompt prompt = new Prompt();
+        private ContextCache contextCache = new ContextCache();
+
+        // 프롬프트 조립(PromptBuilder) 설정
+        @Data
+        public static class Prompt {
+            // 사용자 프롬프트의 검색 근거(CONTEXT)에 쓸 토큰 예산 (추정치 기준)
+            // 스니펫 500자(VertexSearchClient 상한) 근거 하나가 제목/URL 포함 약 370토큰(한글만이면 약 440)이므로
+            // rerank.top-k(5)개가 대부분 들어가는 값으로 둔다. 예산으로 빠진 근거는 chat.llm.prompt.citations.dropped로 확인
+            private int contextBudgetTokens = 2_000;
+        }
+
+        // Gemini 컨텍스트 캐시(cachedContents) 설정 - 고정 시스템 프롬프트를 캐시해 프롬프트 토큰 비용을 줄인다.
+        @Data
+        public static class ContextCache {
+            private boolean enabled = true;
+            // cachedContent는 생성한 모델에서만 쓸 수 있으므로 요청 모델도 이 값을 따른다.
+            private String model = "gemini-2.5-flash";
+            private long ttlSeconds = 3_600;
+            // 서버 쪽 만료 전에 로컬에서 먼저 갱신하기 위한 여유
+            private long refreshMarginSeconds = 300;
+            // 생성 실패(최소 토큰 수 미달 등) 시 다시 시도하기까지의 시간
+            private long failureBackoffSeconds = 600;
+            // cachedContents 생성/갱신 호출 제한 시간 (생성은 요청과 따로 돌지만 오래 매달려 있지 않게 한다)
+            private long requestTimeoutMs = 3_000;
+        }
+    }
+
+    // RAG 오케스트레이터(LlmFirstRagOrchestrator) 설정
+    @Data
+    public static class Rag {
+        private AnswerCache answerCache = new AnswerCache();
+        private Planner planner = new Planner();
+        private SpeculativeSearch speculativeSearch = new SpeculativeSearch();
+        private Rerank rerank = new Rerank();
+        private Admission admission = new Admission();
+
+        // 질문/검색계획 기준 답변 캐시 설정
+        @Data
+        public static class AnswerCache {
+            private boolean enabled = true;
+            private int maxSize = 2_000;
+            // 정책/행정 정보는 바뀔 수 있으므로 너무 길게 두지 않는다.
+            private long ttlSeconds = 3_600;
+        }
+
+        // 검색 계획 fast-path(FastQueryPlanner) 설정
+        @Data
+        public static class Planner {
+            // 키워드형 질문은 LLM rewrite 없이 바로 검색어로 사용
+            private boolean fastPathEnabled = true;
+            // 이 어절 수 이하 + 서술어가 없을 때만 키워드형으로 본다.
+            private int maxKeywordTokens = 6;
+            // 문장형 질문은 LLM rewrite와 로컬 계획을 경쟁시킨다. (LLM이 grace 안에 오면 LLM 결과 사용)
+            private boolean speculativeRace = true;
+            private long raceGraceMs = 1_500;
+            // 학습된(LLM이 만든) 질문 -> 검색어 캐시
+            private int learnedMaxSize = 10_000;
+            private long learnedTtlSeconds = 86_400;
+        }
+
+        // 원문 질문 선검색(검색 계획과 병렬) 설정
+        @Data
+        public static class SpeculativeSearch {
+            private boolean enabled = true;
+            // 원문 질문 선검색은 요청 시작부터 이 시간까지 기다린다.
+            private long deadlineMs = 3_000;
+            // 재작성 쿼리 검색은 rewrite 결과가 나온 시점부터 이 시간까지 기다린다. (rewrite 지연에 깎이지 않음)
+            private long rewrittenDeadlineMs = 1_500;
+        }
+
+        // 검색 결과 융합/재정렬(FusionReranker) 설정
+        @Data
+        public static class Rerank {
+            // hybrid | rrf | bm25 | none
+            private String strategy = "hybrid";
+            // 프롬프트에 들어가는 근거 수 (쿼리/검색 결과 수를 늘려도 프롬프트 크기는 이 값으로 고정)
+            private int topK = 5;
+            // 쿼리당 검색 결과 수
+            private int perQueryK = 10;
+            // 검색에 사용할 최대 쿼리 수
+            private int maxQueries = 3;
+            private int rrfK = 60;
+            // hybrid에서 BM25 점수 비율 (0이면 rrf, 1이면 bm25)
+            private double bm25Weight = 0.4;
+            private double bm25K1 = 1.2;
+            private double bm25B = 0.75;
+        }
+
+        // 파이프라인 입장 제어(RagAdmission) 설정
+        @Data
+        public static class Admission {
+            private boolean enabled = true;
+            // 전역 동시 실행 파이프라인 수
+            private int maxInFlight = 64;
+            // 사용자별 토큰 버킷 (질문 하나에 보통 수천 토큰)
+            private long bucketCapacityTokens = 60_000;
+            private long refillTokensPerMinute = 20_000;
+            private int maxUsers = 100_000;
+            // 마지막 조회/차감 이후 이 시간 동안 안 쓴 버킷을 버린다. (bucket-capacity-tokens / refill-tokens-per-minute 분보다 길어야 한다)
+            private long bucketIdleTtlSeconds = 3_600;
+        }
+    }
+
+    // LLM 토큰 사용량 장부(UsageLedger) 설정
+    @Data
+    public static class Usage {
+        // trace(세션)별 마지막 사용량 보관 개수/시간
+        private int traceMaxSize = 50_000;
+        private long traceTtlSeconds = 3_600;
+        // 사용자/모델별 시간 단위 누적치를 Firestore에 기록
+        private boolean flushEnabled = true;
+        private long flushIntervalSeconds = 60;
+        private String collection = "llmUsageHourly";
+    }
+
+    // 업스트림 클라이언트별 서킷 브레이커/적응형 타임아웃/헤지(UpstreamGuard) 설정
+    @Data
+    public static class Resilience {
+        // key: papago | stt | vertex | llm (없으면 Guard 기본값)
+        private Map<String, Guard> clients = new HashMap<>();
+
+        @Data
+        public static class Guard {
+            // 서킷 브레이커: 최근 windowSize번 중 실패율이 임계치 이상이면 openMs 동안 즉시 실패
+            private int windowSize = 50;
+            private int minCalls = 20;
+            private double failureRateThreshold = 0.5;
+            private long openMs = 10_000;
+            // 열림 이후 시험 호출 수 (모두 성공하면 닫힘)
+            private int halfOpenCalls = 3;
+            // 적응형 타임아웃 = 최근 성공 지연의 timeoutPercentile 값 x timeoutMultiplier (min~max)
+            private int latencySamples = 256;
+            private int minLatencySamples = 20;
+            private double timeoutPercentile = 0.99;
+            private double timeoutMultiplier = 2.0;
+            private long minTimeoutMs = 1_000;
+            private long maxTimeoutMs = 15_000;
+            // 헤지 요청 (멱등 호출만): hedgePercentile 지연 후에도 응답이 없으면 한 번 더 보낸다
+            private boolean hedgeEnabled = false;
+            private double hedgePercentile = 0.95;
+            private long hedgeMinDelayMs = 100;
+            private double hedgeMaxRatio = 0.1;
+        }
     }
 
     @Data
@@ -93,6 +297,34 @@ public class AppProperties {
         private String scope;
         private String dataStoreId;
         private Http http=new Http();
+        private Pool pool = new Pool();
+        private Cache cache = new Cache();
+
+        // 검색 결과 캐시 설정
+        @Data
+        public static class Cache {
+            private int maxSize = 5_000;
+            // 이 시간 동안은 캐시된 결과를 그대로 사용
+            private long ttlSeconds = 600;
+            // true면 ttl이 지난 결과를 staleSeconds 동안 즉시 반환하고 백그라운드에서 갱신
+            private boolean staleWhileRevalidate = false;
+            private long staleSeconds = 3_600;
+        }
+    }
+
+    // 업스트림별 커넥션 풀(WebClientConfig) 설정. 업스트림마다 풀을 따로 두어 한쪽이 느려져도 다른 쪽 연결을 뺏지 않게 한다.
+    @Data
+    public static class Pool {
+        private int maxConnections = 50;
+        // 연결을 기다리는 요청 수 상한 (넘으면 즉시 실패)
+        private int pendingAcquireMaxCount = 100;
+        private long pendingAcquireTimeoutMs = 2_000;
+        // 유휴/수명 초과 연결 정리 (업스트림/LB가 먼저 끊기 전에 정리)
+        private long maxIdleTimeMs = 30_000;
+        private long maxLifeTimeMs = 300_000;
+        private long evictInBackgroundMs = 30_000;
+        // HTTP/2 사용 (ALPN으로 협상, 지원하지 않으면 HTTP/1.1)
+        private boolean http2 = false;
     }
 
     @Data
@@ -104,7 +336,64 @@ public class AppProperties {
     public static class Audio {
         private String ffmpegPath;
 
+        // WebM/Opus는 ffmpeg 대신 프로세스 안에서 디먹스/디코드/리샘플 (다른 컨테이너는 ffmpeg)
+        private boolean inProcessDecode = true;
+
         private Mock mock = new Mock();
+        private Streaming streaming = new Streaming();
+        private Vad vad = new Vad();
+        private Memory memory = new Memory();
+
+        // 스트리밍 트랜스코딩: 세션마다 ffmpeg 하나를 띄워 청크가 도착하는 대로 변환
+        @Data
+        public static class Streaming {
+            private boolean enabled = true;
+            // 빠진 seq를 기다리며 보관할 수 있는 청크 수 (넘으면 일괄 변환으로 대체)
+            private int maxPendingChunks = 32;
+            // FINISH 후 남은 꼬리 변환을 기다리는 시간
+            private long finishTimeoutMs = 5_000;
+        }
+
+        // 녹음 중인 오디오(병합 전 청크) 메모리 한도
+        @Data
+        public static class Memory {
+            // 세션 하나가 보관할 수 있는 최대 크기 (메모리+디스크). 넘으면 1009(TOO_BIG_TO_PROCESS)로 닫는다
+            private long sessionMaxBytes = 32L * 1024 * 1024;
+            // 세션별 메모리 보관 한도. 넘는 청크는 세션 전용 임시 파일(mmap)에 쓴다
+            private long sessionMemoryBytes = 2L * 1024 * 1024;
+            // 파드 전체 메모리 보관 한도. 넘으면 모든 세션의 새 청크를 임시 파일에 쓴다
+            private long globalMemoryBytes = 256L * 1024 * 1024;
+            // 파드 전체 임시 파일 한도. 넘으면 1013(SERVICE_OVERLOAD)으로 닫는다
+            private long globalSpillBytes = 4L * 1024 * 1024 * 1024;
+            // 임시 파일 위치 (비어 있으면 java.io.tmpdir)
+            private String spillDir;
+        }
+
+        // 음성 구간 검출: STT 전 앞뒤 무음 자르기 + (프로세스 내 스트리밍 디코드일 때) 발화 끝 자동 감지
+        @Data
+        public static class Vad {
+            private boolean enabled = true;
+            // 발화 끝을 감지하면 FINISH 없이 바로 STT/번역/RAG 처리 (한 세션에서 여러 발화)
+            private boolean autoFinish = true;
+            // 잡음 바닥보다 이만큼(dB) 크면 음성 후보
+            private double thresholdDb = 9;
+            // 이보다 작은 프레임(dBFS)은 항상 무음
+            private double minEnergyDb = -50;
+            // 영교차율이 이보다 높은 프레임은 에너지가 threshold-db의 2배 이상일 때만 음성 (히스/바람 잡음 제외)
+            private double maxZcr = 0.35;
+            // 발화 시작으로 인정할 최소 음성 길이
+            private int minSpeechMs = 200;
+            // 이만큼 무음이 이어지면 발화 끝
+            private int endSilenceMs = 700;
+            // 발화가 이보다 길면 강제로 끊는다 (세션당 PCM 보관량 상한, 16kHz mono 기준 2분 = 약 3.8MB)
+            // 반드시 app.stt.long-form.max-segment-ms보다 길어야 한다. 짧으면 긴 발화가 쉼이 아닌 곳에서 잘리고
+            // long-form(쉼 지점 분할)이 실행되지 않는다. (CSR 60초 제한은 long-form이 맞춘다)
+            private int maxUtteranceMs = 120_000;
+            // 잘라낼 때 음성 앞뒤로 남겨 둘 여유
+            private int paddingMs = 200;
+            // 발화 전 무음이 이보다 길게 쌓이면 버림
+            private int idleDropMs = 10_000;
+        }
 
         @Data
         public static class Mock {
@@ -119,5 +408,43 @@ public class AppProperties {
         }
     }
 
+    // 파드 간 세션 디렉터리/전달(SessionDirectory)과 종료 시 드레인(SessionDrain) 설정
+    @Data
+    public static class Cluster {
+        // Redis에 세션 -> 파드 위치를 기록하고 다른 파드 세션으로 메시지를 전달 (꺼져 있으면 파드 안에서만 전달)
+        private boolean enabled = false;
+        // 파드 식별자 (비어 있으면 HOSTNAME, 그것도 없으면 임의 값)
+        private String podId;
+        private String keyPrefix = "chat:session:";
+        private String channelPrefix = "chat:relay:";
+        // 세션 위치 키 TTL과 갱신 주기 (파드가 죽으면 TTL 뒤에 위치가 사라진다)
+        private long sessionTtlSeconds = 60;
+        private long heartbeatSeconds = 20;
+        // 종료 시 진행 중인 파이프라인을 기다리는 최대 시간 (이후 남은 소켓은 1012로 닫는다)
+        private long drainTimeoutSeconds = 60;
+    }
+
+    // WebSocket 송신(WsEmitter) 설정
+    @Data
+    public static class Ws {
+        // permessage-deflate 확장 허용 (클라이언트가 요청할 때만 적용)
+        private boolean compression = true;
+        private Outbound outbound = new Outbound();
+
+        // 세션별 송신 대기열. 클라이언트가 느려 대기열이 max-queue를 넘으면 overflow 정책을 따른다.
+        @Data
+        public static class Outbound {
+            private int maxQueue = 256;
+            private Overflow overflow = Overflow.COALESCE_DELTAS;
+        }
 
+        public enum Overflow {
+            // 대기 중인 같은 스트림의 delta는 하나로 합치고, 그래도 가득 차면 연결을 닫는다.
+            COALESCE_DELTAS,
+            // 가득 차면 가장 오래된 delta를 버린다. (delta가 없으면 연결을 닫는다)
+            DROP_OLDEST_DELTA,
+            // 가득 차면 바로 연결을 닫는다.
+            CLOSE
+        }
+    }
 }
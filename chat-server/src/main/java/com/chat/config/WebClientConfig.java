@@ -7,7 +7,11 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ClientRequest;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 
 /**
@@ -32,11 +36,32 @@ public class WebClientConfig {
      *
      *connectTimeoutMs: TCP 연결이 완료될 때까지 기다리는 시간(보통 3000ms 정도)
      * readTimeoutMs: 요청을 보낸 뒤 서버 응답(첫 바이트/헤더)를 받을 때까지 기다리는 시간(STT는 60000~90000ms 권장)
+     *
+     * 커넥션 풀(ConnectionProvider)은 업스트림마다 따로 만든다. (bulkhead)
+     * HttpClient.create()의 기본 풀은 모든 WebClient가 공유하므로, Gemini가 느려져 연결을 붙잡고 있으면
+     * Papago/STT 요청도 같은 풀에서 연결을 기다리게 된다.
+     * 지표: reactor.netty.connection.provider.* (tag: name=stt|trans|llm|vertex)
      */
-    private ReactorClientHttpConnector connector(int connectTimeoutMs,int readTimeoutMs) {
-        HttpClient http = HttpClient.create()
+    private ReactorClientHttpConnector connector(String name, int connectTimeoutMs, int readTimeoutMs, AppProperties.Pool pool) {
+        ConnectionProvider provider = ConnectionProvider.builder(name)
+                .maxConnections(pool.getMaxConnections())                                   // 최대 연결 수
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())                   // 연결 대기열 상한
+                .pendingAcquireTimeout(Duration.ofMillis(pool.getPendingAcquireTimeoutMs())) // 연결 대기 시간
+                .maxIdleTime(Duration.ofMillis(pool.getMaxIdleTimeMs()))                     // 유휴 연결 정리
+                .maxLifeTime(Duration.ofMillis(pool.getMaxLifeTimeMs()))                     // 오래된 연결 정리
+                .evictInBackground(Duration.ofMillis(pool.getEvictInBackgroundMs()))
+                .metrics(true)
+                .build();
+
+        HttpClient http = HttpClient.create(provider)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)   // TCP 연결 타임아웃
-                .responseTimeout(java.time.Duration.ofMillis(readTimeoutMs));     // 응답 대기 타임아웃
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));                // 응답 대기 타임아웃
+
+        if (pool.isHttp2()) {
+            // ALPN으로 h2를 협상하고, 안 되면 HTTP/1.1을 쓴다. h2는 연결 하나로 여러 요청을 동시에 보내므로
+            // 요청마다 새 연결(TLS 핸드셰이크)을 맺는 일이 줄어든다.
+            http = http.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
 
         return new ReactorClientHttpConnector(http);
 
@@ -46,7 +71,7 @@ public class WebClientConfig {
     public WebClient sttWebClient(){
         return WebClient.builder()
                 .baseUrl(props.getStt().getBaseUrl())
-                .clientConnector(connector(props.getStt().getConnectTimeoutMs(),props.getStt().getReadTimeoutMs()))
+                .clientConnector(connector("stt", props.getStt().getConnectTimeoutMs(),props.getStt().getReadTimeoutMs(), props.getStt().getPool()))
                 .build();
     }
 
@@ -54,7 +79,7 @@ public class WebClientConfig {
     public WebClient transWebClient(){
         return WebClient.builder()
                 .baseUrl(props.getTrans().getBaseUrl())
-                .clientConnector(connector(props.getTrans().getConnectTimeoutMs(),props.getTrans().getReadTimeoutMs()))
+                .clientConnector(connector("trans", props.getTrans().getConnectTimeoutMs(),props.getTrans().getReadTimeoutMs(), props.getTrans().getPool()))
                 .build();
     }
 
@@ -64,7 +89,7 @@ public class WebClientConfig {
     public WebClient llmWebClient() {
         return WebClient.builder()
                 .baseUrl(props.getLlm().getBaseUrl())
-                .clientConnector(connector(props.getLlm().getConnectionTimeoutMs(),props.getLlm().getReadTimeoutMs()))
+                .clientConnector(connector("llm", props.getLlm().getConnectionTimeoutMs(),props.getLlm().getReadTimeoutMs(), props.getLlm().getPool()))
                 .build();
     }
 
@@ -72,7 +97,7 @@ public class WebClientConfig {
     public WebClient  vertexWebClient() {
         return WebClient.builder()
                 .baseUrl(props.getVertex().getSearchBaseUrl())
-                .clientConnector(connector(props.getVertex().getHttp().getConnectionTimeoutMs(), props.getVertex().getHttp().getReadTimeoutMs()))
+                .clientConnector(connector("vertex", props.getVertex().getHttp().getConnectionTimeoutMs(), props.getVertex().getHttp().getReadTimeoutMs(), props.getVertex().getPool()))
                 /**
                  * WebClient 인스턴스가 생성하는 모든 HTTP 요청(Request)을 실행하기 직전에 가로채서(intecept) 특정 로직을 수행하게 하는 기능
                  * 앞으로 vertexWebClient 를 사용하는 모든 요청을 가로채서, 자동으로 토큰을 붙인 뒤, 원래 하려던 요청을 계속 진행시켜라라는 공통 규칙을 설정
@@ -10,15 +10,22 @@ import org.springframework.web.reactive.socket.server.support.HandshakeWebSocket
 import org.springframework.web.reactive.socket.server.support.WebSocketHandlerAdapter;
 import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
 import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import reactor.netty.http.server.WebsocketServerSpec;
 
 import java.util.Map;
 
 @Configuration
 public class WebSocketConfig implements WebFluxConfigurer {
 
+    /**
+     * permessage-deflate: 클라이언트가 확장을 요청하면 프레임을 압축한다. (app.ws.compression)
+     * JSON 모드의 반복되는 키/이벤트 이름이 잘 줄어든다. 바이너리 모드 클라이언트는 확장을 요청하지 않으면 된다.
+     */
     @Bean
-    public WebSocketService webSocketServcie(){
-        return new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy());
+    public WebSocketService webSocketServcie(AppProperties props){
+        boolean compress = props.getWs().isCompression();
+        return new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy(
+                () -> WebsocketServerSpec.builder().compress(compress)));
     }
 
     @Bean
@@ -1,21 +1,31 @@
 package com.chat.llm;
 
+import com.chat.common.resilience.UpstreamGuard;
+import com.chat.common.resilience.UpstreamGuards;
 import com.chat.config.AppProperties;
 import com.chat.llm.model.CompleteAnswer;
+import com.chat.llm.model.Delta;
 import com.chat.llm.model.Usage;
 import com.chat.rag.model.SearchPlan;
+import com.chat.usage.UsageLedger;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Nullable;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * LlmClient 인터페이스의 기본 구현체.
@@ -25,13 +35,42 @@ import java.util.concurrent.ConcurrentMap;
 @RequiredArgsConstructor // Lombok: final 필드에 대한 생성자를 자동으로 주입한다.
 public class DefaultLlmClient implements LlmClient {
 
+    // 스트리밍 청크(JSON) 파싱용. ObjectMapper는 설정 후에는 thread-safe 하므로 재사용한다.
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     // 비동기 HTTP 통신을 위한 Spring WebClient (Bean으로 주입받음)
     private final WebClient llmWebClient;
-    // traceId별 토큰 사용량을 저장하기 위한 동시성 지원 맵
-    // (WebSocket 세션별로 토큰 사용량을 추적하기 위함)
-    private final ConcurrentMap<String, Usage> usageMap = new ConcurrentHashMap<>();
+    // traceId별 마지막 사용량 + 사용자/모델별 누적 사용량 장부 (TTL로 끝난 세션 항목은 자동 제거)
+    private final UsageLedger usageLedger;
     // 애플리케이션 설정(API 키 등)을 주입받는다.
     private final AppProperties props;
+    // 고정 시스템 프롬프트용 Gemini 컨텍스트 캐시
+    private final GeminiContextCache contextCache;
+    // 서킷 브레이커 + 적응형 타임아웃 (app.resilience.clients.llm / llm-rewrite)
+    private final UpstreamGuards guards;
+
+    // 쿼리 재작성 시스템 프롬프트 (고정 문자열 -> Gemini 컨텍스트 캐시 대상)
+    private static final String REWRITE_SYSTEM_INSTRUCTION = """
+            [SYSTEM ROLE]
+            너는 대한민국 다문화 가정을 위한 정보 검색 시스템의 **쿼리 재작성 전문 AI**이다.
+            너의 **유일한 임무**는 사용자의 자연어 질문을 분석하여 Vertex AI Search 엔진이 관련 문서를 가장 효과적으로 찾을 수 있도록 **최적의 검색 쿼리 2개**를 생성하는 것이다.
+            검색 대상 DB는 다문화 지원 포털('다누리', '한울타리'), 지역 센터 웹사이트, 정부 정책 문서 등이다.
+
+            [OUTPUT REQUIREMENT - CRITICAL]
+            -   **절대적으로 JSON 형식만 출력해야 한다.** 응답은 반드시 `{"queries": ["쿼리1", "쿼리2", "쿼리3"]}` 형태여야 한다.
+            -   **어떠한 추가 텍스트도 절대 포함해서는 안 된다.** (예: "다음은 생성된 쿼리입니다:", 설명, 사과, 인사말, 코드 블록 마크다운(` ```json ... ``` `) 등 모두 금지)
+            -   **오직 JSON 객체 하나만** 응답의 시작부터 끝까지 존재해야 한다.
+
+            [QUERY GENERATION GUIDELINES]
+            -   사용자 질문의 핵심 **키워드**와 **의도**를 정확히 파악하라.
+            -   생성할 쿼리는 **2개**로 고정한다.
+            -   쿼리는 **간결한 명사형 키워드 조합**을 사용해야 한다. (예: "다문화 자녀 학교 적응 지원", "결혼이민자 취업 비자 변경", "한국어 교육 무료 강좌")
+            -   **절대로 완전한 문장, 질문, 서술형 표현을 사용하지 마라.** (나쁜 예: "다문화 자녀가 어떻게 학교에 적응할 수 있나요?", "결혼 이민자를 위한 취업 지원 프로그램을 알려주세요.")
+            -   쿼리는 Vertex AI Search가 이해하기 쉬운 **검색 엔진 친화적인 형태**여야 한다.
+
+            [FINAL WARNING]
+            **JSON 형식 및 내용 요구사항을 정확히 따르지 않으면 결과는 실패로 간주된다. 다른 모든 텍스트 없이 오직 지정된 JSON 형식의 쿼리 3개만 생성하라.**
+            """;
 
     /**
      * 사용자의 자연어 질문(한국어)을 받아, Vertex AI Search에 최적화된
@@ -46,38 +85,13 @@ public class DefaultLlmClient implements LlmClient {
     public Mono<SearchPlan> rewriteForSearch(String userTextKo, String traceId) {
 
         // 1. Gemini API에 전송할 HTTP Body(Map) 생성
+        //    시스템 프롬프트(REWRITE_SYSTEM_INSTRUCTION)는 호출 시점에 컨텍스트 캐시 참조 또는 직접 전송으로 붙인다.
         Map<String, Object> body = Map.of(
-                // 1) 시스템 프롬프트: AI의 역할(쿼리 재작성)과 출력 형식을 강력하게 지시
-                "system_instruction", Map.of(
-                        "parts", List.of(Map.of("text",
-                                """
-                                        [SYSTEM ROLE]
-                                        너는 대한민국 다문화 가정을 위한 정보 검색 시스템의 **쿼리 재작성 전문 AI**이다.
-                                        너의 **유일한 임무**는 사용자의 자연어 질문을 분석하여 Vertex AI Search 엔진이 관련 문서를 가장 효과적으로 찾을 수 있도록 **최적의 검색 쿼리 2개**를 생성하는 것이다.
-                                        검색 대상 DB는 다문화 지원 포털('다누리', '한울타리'), 지역 센터 웹사이트, 정부 정책 문서 등이다.
-                                        
-                                        [OUTPUT REQUIREMENT - CRITICAL]
-                                        -   **절대적으로 JSON 형식만 출력해야 한다.** 응답은 반드시 `{"queries": ["쿼리1", "쿼리2", "쿼리3"]}` 형태여야 한다.
-                                        -   **어떠한 추가 텍스트도 절대 포함해서는 안 된다.** (예: "다음은 생성된 쿼리입니다:", 설명, 사과, 인사말, 코드 블록 마크다운(` ```json ... ``` `) 등 모두 금지)
-                                        -   **오직 JSON 객체 하나만** 응답의 시작부터 끝까지 존재해야 한다.
-                                        
-                                        [QUERY GENERATION GUIDELINES]
-                                        -   사용자 질문의 핵심 **키워드**와 **의도**를 정확히 파악하라.
-                                        -   생성할 쿼리는 **2개**로 고정한다.
-                                        -   쿼리는 **간결한 명사형 키워드 조합**을 사용해야 한다. (예: "다문화 자녀 학교 적응 지원", "결혼이민자 취업 비자 변경", "한국어 교육 무료 강좌")
-                                        -   **절대로 완전한 문장, 질문, 서술형 표현을 사용하지 마라.** (나쁜 예: "다문화 자녀가 어떻게 학교에 적응할 수 있나요?", "결혼 이민자를 위한 취업 지원 프로그램을 알려주세요.")
-                                        -   쿼리는 Vertex AI Search가 이해하기 쉬운 **검색 엔진 친화적인 형태**여야 한다.
-                                        
-                                        [FINAL WARNING]
-                                        **JSON 형식 및 내용 요구사항을 정확히 따르지 않으면 결과는 실패로 간주된다. 다른 모든 텍스트 없이 오직 지정된 JSON 형식의 쿼리 3개만 생성하라.**
-                                        """
-                        ))
-                ),
-                // 2) 사용자 입력: "원문 질의: " 프리픽스를 붙여 LLM이 질문임을 명확히 인지하게 한다.
+                // 1) 사용자 입력: "원문 질의: " 프리픽스를 붙여 LLM이 질문임을 명확히 인지하게 한다.
                 "contents", List.of(Map.of(
                         "parts", List.of(Map.of("text", "원문 질의: " + userTextKo))
                 )),
-                // 3) 생성 설정: JSON 모드 및 스키마 정의
+                // 2) 생성 설정: JSON 모드 및 스키마 정의
                 "generationConfig", Map.of(
                         "temperature", 0.0, // 창의성을 0으로 설정하여 일관된 쿼리 생성
                         "topP", 1.0,
@@ -100,22 +114,31 @@ public class DefaultLlmClient implements LlmClient {
                 )
         );
 
-        // 4) WebClient로 API 비동기 호출
-        return llmWebClient.post()
-                .uri("/v1beta/models/gemini-2.5-flash:generateContent") // API 엔드포인트
+        // 3) WebClient로 API 비동기 호출
+        return withContextCache("llm-rewrite", REWRITE_SYSTEM_INSTRUCTION, cachedContent -> llmWebClient.post()
+                .uri(modelUri(":generateContent")) // API 엔드포인트
                 .header("x-goog-api-key", props.getLlm().getApiKey()) // API 키 설정
                 .contentType(MediaType.APPLICATION_JSON) // 요청 본문은 JSON
-                .bodyValue(body) // 위에서 생성한 body 객체
+                .bodyValue(withSystem(body, REWRITE_SYSTEM_INSTRUCTION, cachedContent)) // 시스템 프롬프트를 붙인 body
                 .retrieve() // 응답 수신 시작
-                // 5) 에러 처리: 4xx(클라이언트) 또는 5xx(서버) 에러 발생 시
+                // 4) 에러 처리: 4xx(클라이언트) 또는 5xx(서버) 에러 발생 시
                 .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(), resp ->
                         // 에러 응답 본문(String)을 읽어 Mono<Error>로 변환
                         resp.bodyToMono(String.class).flatMap(err ->
-                                Mono.error(new IllegalArgumentException("Gemini API error: " + err))
+                                Mono.error(apiError(resp.statusCode().value(), err, cachedContent,
+                                        IllegalArgumentException::new))
                         )
                 )
-                // 6) 응답 본문(Map) 받기 (Gemini의 'candidates' 래퍼 구조)
-                .bodyToMono(Map.class)
+                // 5) 응답 본문(Map) 받기 (Gemini의 'candidates' 래퍼 구조)
+                .bodyToMono(Map.class))
+                // 6) 컨텍스트 캐시 절약량 기록
+                .doOnNext(resp -> {
+                    if (resp.get("usageMetadata") instanceof Map<?, ?> usageData) {
+                        Usage u = toUsage((Map<String, Object>) usageData);
+                        usageLedger.recordAuxiliary(traceId, contextCache.model(), u);
+                        contextCache.recordSavings(u);
+                    }
+                })
                 // 7) [map 동기] 중첩된 응답 Map에서 실제 텍스트(JSON 문자열) 추출
                 .map(this::extractTextFromCandidates)
                 // 8) [map 동기] 추출된 텍스트(JSON 문자열)를 다시 Map<String, Object>로 파싱
@@ -148,37 +171,33 @@ public class DefaultLlmClient implements LlmClient {
     @Override
     public Mono<CompleteAnswer> getCompleteAnswer(String systemPrompt, String userPrompt, String traceId) {
 
-        // 1. API Body 생성 (시스템 프롬프트와 사용자 입력)
-        var systemInstruction = Map.of(
-                "parts", List.of(Map.of("text", systemPrompt))
-        );
+        // 1. API Body 생성 (사용자 입력, 시스템 프롬프트는 호출 시점에 붙임)
         var userContents = List.of(Map.of(
                 "role", "user",
                 "parts", List.of(Map.of("text", userPrompt))
         ));
         Map<String, Object> body = Map.of(
-                "system_instruction", systemInstruction,
                 "contents", userContents
         );
 
         // 2. WebClient로 API 비동기 호출 (일반 모드)
-        return llmWebClient.post()
-                .uri("/v1beta/models/gemini-2.5-flash:generateContent")
+        return withContextCache("llm", systemPrompt, cachedContent -> llmWebClient.post()
+                .uri(modelUri(":generateContent"))
                 .header("x-goog-api-key", props.getLlm().getApiKey())
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON) // JSON 응답 선호
-                .bodyValue(body)
+                .bodyValue(withSystem(body, systemPrompt, cachedContent))
                 .retrieve()
                 // 3. 에러 처리
                 .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(), resp ->
                         resp.bodyToMono(String.class).flatMap(err ->
-                                Mono.error(new RuntimeException("Gemini API Error: " + err))
+                                Mono.error(apiError(resp.statusCode().value(), err, cachedContent, RuntimeException::new))
                         )
                 )
                 // 4. 응답 본문을 제네릭 Map<String, Object> 타입으로 받음
                 // (Map.class 대신 ParameterizedTypeReference를 사용해야 제네릭 타입 추론 가능)
                 .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
-                })
+                }))
                 // 5. [map 동기] 응답 Map을 파싱하여 CompleteAnswer 객체로 변환
                 .map(data -> {
                     try {
@@ -192,16 +211,11 @@ public class DefaultLlmClient implements LlmClient {
                         String text = (String) parts.get(0).get("text");
 
                         // 5b. 토큰 사용량(Usage) 추출 (usageMetadata)
-                        Map<String, Object> usageData = (Map<String, Object>) data.get("usageMetadata");
-                        Usage u = new Usage(
-                                // getOrDefault와 Number 캐스팅으로 NPE(NullPointerException) 및 타입 오류 방지
-                                ((Number) usageData.getOrDefault("promptTokenCount", 0)).intValue(),
-                                ((Number) usageData.getOrDefault("candidatesTokenCount", 0)).intValue(),
-                                ((Number) usageData.getOrDefault("totalTokenCount", 0)).intValue()
-                        );
+                        Usage u = toUsage((Map<String, Object>) data.get("usageMetadata"));
 
-                        // 5c. 토큰 사용량 맵에 저장 (추후 조회를 위해)
-                        usageMap.put(traceId, u);
+                        // 5c. 토큰 사용량 장부에 기록 (추후 조회를 위해)
+                        usageLedger.record(traceId, contextCache.model(), u);
+                        contextCache.recordSavings(u);
 
                         System.out.println("FULL TEXT: " + text); // 디버깅용 최종 텍스트 로깅
 
@@ -219,6 +233,72 @@ public class DefaultLlmClient implements LlmClient {
     }
 
 
+    /**
+     * getCompleteAnswer와 같은 프롬프트를 `:streamGenerateContent` (SSE) 엔드포인트로 보내고,
+     * Gemini가 청크를 보내는 즉시 Delta로 변환해 흘려보낸다.
+     * 전체 답변을 기다리지 않으므로 첫 토큰까지의 시간(TTFT)이 사용자 체감 지연이 된다.
+     * 토큰 사용량(usageMetadata)은 마지막 청크에 실려 오므로, 스트림 종료 시 사용량 장부에 기록한 뒤
+     * isFinal=true인 빈 Delta를 마지막으로 방출한다.
+     *
+     * @param systemPrompt 시스템 프롬프트 (AI의 역할)
+     * @param userPrompt   사용자 프롬프트 (질문)
+     * @param traceId      요청 추적 ID
+     * @return 답변 조각(Delta) 스트림
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Flux<Delta> streamAnswer(String systemPrompt, String userPrompt, String traceId) {
+
+        // 1. API Body 생성 (getCompleteAnswer와 동일)
+        Map<String, Object> body = Map.of(
+                "contents", List.of(Map.of(
+                        "role", "user",
+                        "parts", List.of(Map.of("text", userPrompt))
+                ))
+        );
+
+        // 청크마다 갱신되는 사용량. 마지막으로 받은 값이 최종 사용량이다.
+        AtomicReference<Usage> usage = new AtomicReference<>();
+
+        // 2. SSE 모드(alt=sse)로 호출: 각 이벤트의 data가 GenerateContentResponse JSON 한 덩어리
+        //    (캐시 만료 응답은 첫 이벤트 전에 오므로, 직접 전송으로 재시도해도 중복 출력이 없다)
+        return withContextCacheMany("llm", systemPrompt, cachedContent -> llmWebClient.post()
+                .uri(modelUri(":streamGenerateContent?alt=sse"))
+                .header("x-goog-api-key", props.getLlm().getApiKey())
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(withSystem(body, systemPrompt, cachedContent))
+                .retrieve()
+                // 3. 에러 처리
+                .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(), resp ->
+                        resp.bodyToMono(String.class).flatMap(err ->
+                                Mono.error(apiError(resp.statusCode().value(), err, cachedContent, RuntimeException::new))
+                        )
+                )
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                }))
+                // 4. SSE 이벤트 -> 응답 Map (data가 없는 keep-alive 이벤트는 건너뜀)
+                .mapNotNull(ServerSentEvent::data)
+                .map(this::parseStreamChunk)
+                // 5. 사용량이 실려 있으면 갱신하고, 텍스트 조각을 Delta로 변환
+                .map(chunk -> {
+                    var usageData = (Map<String, Object>) chunk.get("usageMetadata");
+                    if (usageData != null) usage.set(toUsage(usageData));
+                    return new Delta(joinParts(chunk), false);
+                })
+                .filter(d -> !d.text().isEmpty())
+                // 6. 스트림이 정상 종료되면 사용량을 저장하고 종료 신호(isFinal) 방출
+                .concatWith(Mono.fromSupplier(() -> {
+                    Usage u = usage.get();
+                    if (u != null) {
+                        usageLedger.record(traceId, contextCache.model(), u);
+                        contextCache.recordSavings(u);
+                    }
+                    return new Delta("", true);
+                }));
+    }
+
+
     /**
      * Gemini 응답(Map)에서 `candidates[0].content.parts[0].text` 경로의 텍스트를
      * 안전하게 추출하는 헬퍼 메서드.
@@ -246,6 +326,129 @@ public class DefaultLlmClient implements LlmClient {
                 .trim();
     }
 
+    /**
+     * 스트리밍 청크 하나(JSON 문자열)를 Map으로 파싱한다.
+     * 청크가 깨져 있으면 답변 전체가 의미 없으므로 에러로 전파한다.
+     */
+    private Map<String, Object> parseStreamChunk(String json) {
+        try {
+            return MAPPER.readValue(json, new com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>>() {
+            });
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse Gemini stream chunk: " + json, e);
+        }
+    }
+
+    /**
+     * 응답(또는 스트리밍 청크)의 `candidates[0].content.parts[*].text`를 이어 붙인다.
+     * 스트리밍에서는 토큰 사이 공백이 의미가 있으므로 trim 하지 않는다.
+     *
+     * @return 텍스트가 없으면 빈 문자열
+     */
+    @SuppressWarnings("unchecked")
+    private String joinParts(Map<?, ?> resp) {
+        var candidates = (List<Map<String, Object>>) resp.get("candidates");
+        if (candidates == null || candidates.isEmpty()) return "";
+
+        var content = (Map<String, Object>) candidates.get(0).get("content");
+        var parts = (List<Map<String, Object>>) (content != null ? content.get("parts") : null);
+        if (parts == null || parts.isEmpty()) return "";
+
+        var sb = new StringBuilder();
+        for (var p : parts) {
+            Object t = p.get("text");
+            if (t instanceof String text) sb.append(text);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gemini의 usageMetadata를 Usage로 변환한다.
+     * getOrDefault와 Number 캐스팅으로 NPE(NullPointerException) 및 타입 오류를 방지한다.
+     */
+    private static Usage toUsage(Map<String, Object> usageData) {
+        return new Usage(
+                ((Number) usageData.getOrDefault("promptTokenCount", 0)).intValue(),
+                ((Number) usageData.getOrDefault("candidatesTokenCount", 0)).intValue(),
+                ((Number) usageData.getOrDefault("totalTokenCount", 0)).intValue(),
+                ((Number) usageData.getOrDefault("cachedContentTokenCount", 0)).intValue()
+        );
+    }
+
+    /**
+     * 모델 엔드포인트 URI. cachedContent는 만들 때의 모델에서만 쓸 수 있으므로 같은 모델 설정을 사용한다.
+     */
+    private String modelUri(String method) {
+        return "/v1beta/models/" + contextCache.model() + method;
+    }
+
+    /**
+     * body에 시스템 프롬프트를 붙인다.
+     * cachedContent가 있으면 그 이름만 참조하고, 없으면 기존처럼 system_instruction으로 직접 보낸다.
+     */
+    private static Map<String, Object> withSystem(Map<String, Object> body, String systemPrompt, @Nullable String cachedContent) {
+        var out = new LinkedHashMap<>(body);
+        if (cachedContent != null) {
+            out.put("cachedContent", cachedContent);
+        } else {
+            out.put("system_instruction", Map.of("parts", List.of(Map.of("text", systemPrompt))));
+        }
+        return out;
+    }
+
+    /**
+     * 컨텍스트 캐시를 참조해 호출하고, 캐시가 만료/삭제되었다는 응답이면 캐시를 버리고 직접 전송으로 한 번 더 호출한다.
+     *
+     * 실제 호출은 UpstreamGuard(guardName)를 거친다. 서킷이 열려 있으면 Gemini를 부르지 않고 바로 UpstreamException으로 실패한다.
+     *
+     * @param guardName UpstreamGuard 이름 (rewrite와 답변 생성은 지연 분포가 달라 따로 둔다)
+     * @param call      cachedContent 이름(없으면 null)을 받아 실제 호출을 만드는 함수
+     */
+    private <T> Mono<T> withContextCache(String guardName, String systemPrompt, Function<String, Mono<T>> call) {
+        return withContextCacheMany(guardName, systemPrompt, name -> call.apply(name).flux()).next();
+    }
+
+    private <T> Flux<T> withContextCacheMany(String guardName, String systemPrompt, Function<String, Flux<T>> call) {
+        UpstreamGuard guard = guards.get(guardName);
+        return contextCache.resolve(systemPrompt)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(name -> name.isEmpty()
+                        ? guard.callMany(() -> call.apply(null))
+                        : guard.callMany(() -> call.apply(name.get())).onErrorResume(CachedContentUnavailableException.class, e -> {
+                            contextCache.invalidate(systemPrompt);
+                            return guard.callMany(() -> call.apply(null));
+                        }));
+    }
+
+    /**
+     * Gemini 에러 응답을 예외로 변환한다.
+     * cachedContent를 참조한 요청이 "CachedContent not found" 응답(404/403)으로 실패했을 때만 캐시 만료로 본다.
+     * (그 밖의 403은 API 키/권한 문제라 직접 전송으로 다시 불러도 같은 결과이므로 그대로 실패시킨다)
+     */
+    private static RuntimeException apiError(int status, String err, @Nullable String cachedContent,
+                                             Function<String, RuntimeException> otherwise) {
+        if (cachedContent != null && isCachedContentNotFound(status, err)) {
+            return new CachedContentUnavailableException(cachedContent + ": " + err);
+        }
+        return otherwise.apply("Gemini API error: " + err);
+    }
+
+    private static boolean isCachedContentNotFound(int status, String err) {
+        if (status != 404 && status != 403) return false;
+        String e = err.toLowerCase(Locale.ROOT);
+        return e.contains("cachedcontent") && e.contains("not found");
+    }
+
+    /**
+     * 요청이 참조한 cachedContent를 더 이상 쓸 수 없음 (만료/삭제)
+     */
+    private static final class CachedContentUnavailableException extends RuntimeException {
+        CachedContentUnavailableException(String message) {
+            super(message);
+        }
+    }
+
     /**
      * LLM이 반환한 텍스트(JSON 문자열)를 Map<String, Object>로 파싱한다.
      * LLM이 JSON 외에 잡음(예: ```json ... ```)을 섞었을 경우를 대비해 폴백 로직을 포함한다.
@@ -283,7 +486,7 @@ public class DefaultLlmClient implements LlmClient {
 
 
     /**
-     * 지정된 traceId(세션 ID)에 대해 `getCompleteAnswer`에서 저장했던
+     * 지정된 traceId(세션 ID)에 대해 `getCompleteAnswer`/`streamAnswer`에서 기록했던
      * 마지막 토큰 사용량(Usage)을 반환한다.
      *
      * @param traceId 조회할 traceId
@@ -291,6 +494,6 @@ public class DefaultLlmClient implements LlmClient {
      */
     @Override
     public Usage lastUsage(String traceId) {
-        return usageMap.get(traceId);
+        return usageLedger.lastUsage(traceId);
     }
 }
\ No newline at end of file
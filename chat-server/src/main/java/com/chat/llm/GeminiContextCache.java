@@ -0,0 +1,173 @@
+package com.chat.llm;
+
+import com.chat.common.cache.ReactiveCache;
+import com.chat.config.AppProperties;
+import com.chat.llm.model.Usage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gemini 명시적 컨텍스트 캐시(cachedContents) 관리.
+ * 쿼리 재작성/답변 생성의 시스템 프롬프트는 고정 문자열이라 매 요청마다 같은 토큰을 다시 보내고 있다.
+ * 시스템 프롬프트별로 cachedContents 리소스를 만들어 두고, 요청에서는 그 이름(cachedContent)만 참조한다.
+ * <p>
+ * - 생성: POST /v1beta/cachedContents (model + systemInstruction + ttl)
+ * - 갱신: 로컬 항목이 ttl의 절반을 넘기면 PATCH /v1beta/{name} 으로 ttl을 연장한다. (실패 시 새로 생성)
+ * - 요청은 기다리지 않는다: 아직 이름이 없으면 생성은 뒤에서 하고 이번 요청은 system_instruction을 직접 보낸다.
+ *   생성/갱신 호출은 request-timeout-ms로 끊는다. (답변 경로에 cachedContents 지연이 실리지 않음)
+ * - 폴백: 생성이 실패하면(최소 토큰 수 미달, 권한 등) failure-backoff-seconds 동안은 시도하지 않고
+ *         기존처럼 system_instruction을 직접 보낸다. 요청 중 캐시가 만료/삭제되었으면 호출 측에서 invalidate 후 재시도한다.
+ * - 지표: 응답 usageMetadata.cachedContentTokenCount를 chat.llm.prompt.tokens.saved(source=context-cache)에 누적
+ */
+@Slf4j
+@Component
+public class GeminiContextCache {
+
+    private final WebClient llmWebClient;
+    private final AppProperties props;
+    private final AppProperties.Llm.ContextCache cfg;
+    // key: 시스템 프롬프트 해시, value: cachedContents/{id}
+    private final ReactiveCache<String, String> names;
+    private final Duration freshFor;
+    // 생성 실패한 프롬프트 -> 다시 시도해도 되는 시각(System.nanoTime)
+    private final ConcurrentHashMap<String, Long> failedUntil = new ConcurrentHashMap<>();
+    private final Counter savedTokens;
+
+    public GeminiContextCache(WebClient llmWebClient, AppProperties props, MeterRegistry registry) {
+        this.llmWebClient = llmWebClient;
+        this.props = props;
+        this.cfg = props.getLlm().getContextCache();
+        // 서버 쪽 만료 전에 로컬 항목이 먼저 사라지도록 여유(refresh-margin)를 둔다.
+        Duration ttl = Duration.ofSeconds(Math.max(60, cfg.getTtlSeconds() - cfg.getRefreshMarginSeconds()));
+        this.freshFor = ttl.dividedBy(2);
+        this.names = new ReactiveCache<>("llm-context", 64, ttl, registry);
+        this.savedTokens = Counter.builder("chat.llm.prompt.tokens.saved")
+                .tag("source", "context-cache").register(registry);
+    }
+
+    public String model() {
+        return cfg.getModel();
+    }
+
+    /**
+     * 시스템 프롬프트에 대한 cachedContent 이름을 반환한다.
+     * 비활성화되었거나 생성할 수 없으면 empty (호출 측은 system_instruction을 직접 보낸다)
+     */
+    public Mono<String> resolve(String systemPrompt) {
+        if (!cfg.isEnabled()) return Mono.empty();
+        String key = key(systemPrompt);
+        Long until = failedUntil.get(key);
+        if (until != null && System.nanoTime() < until) return Mono.empty();
+
+        if (names.getIfPresent(key) == null) {
+            // 처음 만드는 중에는 기다리지 않는다. (같은 키의 생성은 ReactiveCache가 하나로 합친다)
+            lookup(key, systemPrompt).subscribe(v -> { }, e -> { });
+            return Mono.empty();
+        }
+        // 있으면 바로 돌려준다. (오래됐으면 갱신은 뒤에서)
+        return lookup(key, systemPrompt);
+    }
+
+    private Mono<String> lookup(String key, String systemPrompt) {
+        return names.getStaleWhileRevalidate(key, freshFor, () -> refreshOrCreate(key, systemPrompt))
+                .onErrorResume(e -> {
+                    failedUntil.put(key, System.nanoTime() + Duration.ofSeconds(cfg.getFailureBackoffSeconds()).toNanos());
+                    log.warn("[LLM-CACHE] cachedContents unavailable, sending system instruction inline for {}s: {}",
+                            cfg.getFailureBackoffSeconds(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 요청에서 cachedContent가 만료/삭제되었다는 응답을 받았을 때 호출한다. 다음 resolve에서 새로 만든다.
+     */
+    public void invalidate(String systemPrompt) {
+        names.invalidate(key(systemPrompt));
+    }
+
+    /**
+     * 응답 사용량 중 캐시에서 읽은 토큰을 절약량으로 기록한다.
+     */
+    public void recordSavings(Usage usage) {
+        if (usage != null && usage.cachedPromptTokens() > 0) savedTokens.increment(usage.cachedPromptTokens());
+    }
+
+    /**
+     * 기존 리소스가 있으면 ttl을 연장하고, 없거나 연장에 실패하면 새로 만든다.
+     */
+    private Mono<String> refreshOrCreate(String key, String systemPrompt) {
+        String existing = names.getIfPresent(key);
+        if (existing == null) return create(key, systemPrompt);
+        return llmWebClient.patch()
+                .uri("/v1beta/" + existing)
+                .header("x-goog-api-key", props.getLlm().getApiKey())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("ttl", cfg.getTtlSeconds() + "s"))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
+                })
+                .timeout(requestTimeout())
+                .map(res -> existing)
+                .onErrorResume(e -> create(key, systemPrompt));
+    }
+
+    private Mono<String> create(String key, String systemPrompt) {
+        Map<String, Object> body = Map.of(
+                "model", "models/" + cfg.getModel(),
+                "displayName", "chat-system-" + key.substring(0, 12),
+                "systemInstruction", Map.of("parts", List.of(Map.of("text", systemPrompt))),
+                "ttl", cfg.getTtlSeconds() + "s"
+        );
+        return llmWebClient.post()
+                .uri("/v1beta/cachedContents")
+                .header("x-goog-api-key", props.getLlm().getApiKey())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .retrieve()
+                .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(), resp ->
+                        resp.bodyToMono(String.class).flatMap(err ->
+                                Mono.error(new RuntimeException("Gemini cachedContents error: " + err))
+                        )
+                )
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
+                })
+                .timeout(requestTimeout())
+                .flatMap(res -> {
+                    Object name = res.get("name");
+                    if (!(name instanceof String n) || n.isBlank()) {
+                        return Mono.error(new RuntimeException("Gemini cachedContents response has no name: " + res));
+                    }
+                    failedUntil.remove(key);
+                    log.info("[LLM-CACHE] created {} (ttl={}s)", n, cfg.getTtlSeconds());
+                    return Mono.just(n);
+                });
+    }
+
+    private Duration requestTimeout() {
+        return Duration.ofMillis(cfg.getRequestTimeoutMs());
+    }
+
+    private static String key(String systemPrompt) {
+        try {
+            var md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(systemPrompt.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
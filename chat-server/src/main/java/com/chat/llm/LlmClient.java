@@ -30,8 +30,9 @@ public interface LlmClient {
      * @return Flux<Delta> 실시간으로 GPT처럼 답변이 타이핑되는 듯한 경험을 만드는 핵심
      * -> 전체 답변을 한 번에 기다리는 대신, 이 메서드는 시간의 흐름에 따라 여러 Delta 객체로 이루어진 스트림을 반환
      * -> 각 Delta는 최종 답변의 작은 조각을 담고 있다.
+     * -> 마지막 원소는 isFinal=true인 빈 Delta이며, 이 시점에는 lastUsage(traceId)로 토큰 사용량을 조회할 수 있다.
      */
-    //Flux<Delta> streamAnswer(String systemPrompt, String userPrompt, String traceId);
+    Flux<Delta> streamAnswer(String systemPrompt, String userPrompt, String traceId);
 
     public Mono<CompleteAnswer> getCompleteAnswer(String systemPrompt, String userPrompt, String traceId);
     @Nullable
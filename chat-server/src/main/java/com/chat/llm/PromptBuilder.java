@@ -1,16 +1,23 @@
 package com.chat.llm;
 
+import com.chat.common.text.KoreanText;
 import com.chat.rag.model.Citation;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public final class PromptBuilder {
     private PromptBuilder() {
     }
 
-    // 시스템 프롬프트(지시)만 반환
+    // 시스템 프롬프트(지시)만 반환 (고정 문자열이므로 클래스 로딩 시 한 번만 만든다)
     public static String getSystemInstruction() {
-        return """
+        return SYSTEM_INSTRUCTION;
+    }
+
+    private static final String SYSTEM_INSTRUCTION = """
         [SYSTEM]
         당신은 한국에 거주하는 다문화 가정을 돕는 친절하고 공감 능력 있는 안내 도우미입니다.
         항상 한국어로, 따뜻하고 이해하기 쉬운 어조로 답변해 주세요.
@@ -60,18 +67,137 @@ public final class PromptBuilder {
 
         - 답변 생성 시 위의 인용 및 링크 규칙을 **최우선**으로 엄격하게 준수해야 합니다.
         """;
+
+    private static final int SYSTEM_INSTRUCTION_TOKENS = estimateTokens(SYSTEM_INSTRUCTION);
+
+    public static int getSystemInstructionTokens() {
+        return SYSTEM_INSTRUCTION_TOKENS;
     }
 
-    // 사용자 질문 + 컨텍스트만 반환
+    // 사용자 질문 + 컨텍스트만 반환 (근거 최대 5개를 그대로 이어 붙임)
     public static String getUserContextPrompt(String userTextKo, List<Citation> cites) {
         var sb = new StringBuilder();
         for (int i = 0; i < Math.min(cites.size(), 5); i++) {
             var c = cites.get(i);
-            sb.append("[").append(i + 1).append("] ").append(c.title()).append("\n")
-                    .append(c.snippet()).append("\n")
-                    .append(c.url()).append("\n\n");
+            appendCitation(sb, i + 1, c.title(), c.snippet(), c.url());
+        }
+        return userContext(userTextKo, sb.toString());
+    }
+
+    /**
+     * 토큰 예산 안에서 사용자 프롬프트를 조립한 결과
+     *
+     * @param text            사용자 프롬프트
+     * @param citations       실제로 프롬프트에 들어간 근거 ([번호] 순서)
+     * @param estimatedTokens 이 프롬프트의 추정 토큰 수
+     * @param baselineTokens  같은 입력으로 getUserContextPrompt를 썼을 때의 추정 토큰 수 (절약량 계산용)
+     * @param droppedDuplicate 앞선 근거와 문장이 모두 겹쳐 뺀 근거 수
+     * @param droppedBudget    예산을 넘어 뺀 근거 수
+     */
+    public record UserPrompt(String text, List<Citation> citations, int estimatedTokens, int baselineTokens,
+                             int droppedDuplicate, int droppedBudget) {
+    }
+
+    /**
+     * 토큰 예산을 고려한 사용자 프롬프트 조립.
+     * cites는 관련도 순(reranker 결과)이라고 보고, 앞에서부터 예산(budgetTokens)에 들어가는 만큼 채운다.
+     * - 앞선 근거에 이미 나온 문장은 뺀다. (같은 기관 자료가 여러 URL로 검색되는 경우가 많음)
+     * - 남은 문장이 없는 근거는 건너뛴다.
+     * - 예산을 넘는 근거는 건너뛰고 더 짧은 다음 근거를 시도한다. (첫 근거는 잘라서라도 넣는다)
+     */
+    public static UserPrompt getUserContextPrompt(String userTextKo, List<Citation> cites, int budgetTokens) {
+        var sb = new StringBuilder();
+        List<Citation> used = new ArrayList<>();
+        Set<String> seenSentences = new HashSet<>();
+        int remaining = budgetTokens;
+        int droppedDuplicate = 0, droppedBudget = 0;
+
+        for (int i = 0; i < cites.size(); i++) {
+            Citation c = cites.get(i);
+            // 이 근거의 새 문장은 실제로 프롬프트에 넣을 때만 seenSentences에 합친다. (예산으로 빠진 근거가 뒤 근거의 문장을 막지 않도록)
+            Set<String> fresh = new HashSet<>();
+            String snippet = dedupeSentences(c.snippet(), seenSentences, fresh);
+            if (snippet.isEmpty()) {
+                droppedDuplicate++;
+                continue;
+            }
+
+            int n = used.size() + 1;
+            var entry = new StringBuilder();
+            appendCitation(entry, n, c.title(), snippet, c.url());
+            int cost = estimateTokens(entry);
+            if (cost > remaining) {
+                if (!used.isEmpty()) {
+                    droppedBudget++;
+                    continue;
+                }
+                // 첫 근거가 예산보다 크면 스니펫을 잘라서 넣는다. (근거 없는 답변보다는 낫다)
+                entry.setLength(0);
+                appendCitation(entry, n, c.title(), truncateToTokens(snippet, remaining - (cost - estimateTokens(snippet))), c.url());
+                cost = estimateTokens(entry);
+            }
+            sb.append(entry);
+            used.add(c);
+            seenSentences.addAll(fresh);
+            remaining -= cost;
+            if (remaining <= 0) {
+                droppedBudget += cites.size() - i - 1;
+                break;
+            }
         }
 
+        String text = userContext(userTextKo, sb.toString());
+        return new UserPrompt(text, List.copyOf(used), estimateTokens(text),
+                estimateTokens(getUserContextPrompt(userTextKo, cites)), droppedDuplicate, droppedBudget);
+    }
+
+    private static void appendCitation(StringBuilder sb, int n, String title, String snippet, String url) {
+        sb.append("[").append(n).append("] ").append(title).append("\n")
+                .append(snippet).append("\n")
+                .append(url).append("\n\n");
+    }
+
+    /**
+     * 이미 나온 문장(정규화 기준)을 뺀 스니펫을 반환하고, 새 문장은 fresh에 추가한다. (seen은 바꾸지 않는다)
+     */
+    private static String dedupeSentences(String snippet, Set<String> seen, Set<String> fresh) {
+        if (snippet == null || snippet.isBlank()) return "";
+        var sb = new StringBuilder();
+        for (String sentence : snippet.split("(?<=[.?!。])\\s+|\\n+")) {
+            String key = KoreanText.normalize(sentence);
+            if (key.isEmpty() || seen.contains(key) || !fresh.add(key)) continue;
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append(sentence.strip());
+        }
+        return sb.toString();
+    }
+
+    private static String truncateToTokens(String text, int maxTokens) {
+        if (maxTokens <= 0) return "";
+        int end = text.length();
+        while (end > 0 && estimateTokens(text.substring(0, end)) > maxTokens) {
+            end -= Math.max(1, end / 10);
+        }
+        return end >= text.length() ? text : text.substring(0, Math.max(0, end)) + "…";
+    }
+
+    /**
+     * Gemini 토큰 수 추정 (토크나이저 호출 없이 근사)
+     * 한글/한자 등 비ASCII 문자는 약 0.8토큰, ASCII(영문/숫자/URL)는 약 4글자당 1토큰으로 본다.
+     * 절대값보다는 "어느 쪽 프롬프트가 더 작은가" 비교와 예산 판정에 쓰는 값이다.
+     */
+    public static int estimateTokens(CharSequence text) {
+        if (text == null) return 0;
+        int ascii = 0, other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x80) ascii++;
+            else if (!Character.isLowSurrogate(ch)) other++;
+        }
+        return (int) Math.ceil(other * 0.8 + ascii / 4.0);
+    }
+
+    private static String userContext(String userTextKo, String context) {
         return """
             [USER]
             %s
@@ -79,6 +205,6 @@ public final class PromptBuilder {
             [CONTEXT]
             아래는 사용자의 질문과 관련된 검색 정보입니다. 이 내용을 바탕으로 답변을 구성하되, 질문과 무관하거나 중복되는 정보는 제외하세요.
             %s
-            """.formatted(userTextKo, sb.toString());
+            """.formatted(userTextKo, context);
     }
 }
\ No newline at end of file
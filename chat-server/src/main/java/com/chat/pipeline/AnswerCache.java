@@ -0,0 +1,106 @@
+package com.chat.pipeline;
+
+import com.chat.common.cache.ReactiveCache;
+import com.chat.common.text.KoreanText;
+import com.chat.config.AppProperties;
+import com.chat.llm.model.CompleteAnswer;
+import com.chat.rag.model.Citation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * LlmFirstRagOrchestrator 앞단의 답변 캐시.
+ * 다문화 가정 질문은 표현만 조금 다른 중복 질문이 많아서("다문화 자녀 학교 입학 준비" 등),
+ * 매번 Gemini 2회 + Vertex 검색을 반복하지 않도록 한국어 답변(CompleteAnswer)과 근거(Citation)를 저장해 둔다.
+ * <p>
+ * 1단계 키: 정규화한 한국어 질문 -> 적중 시 LLM/검색을 모두 건너뜀
+ * 2단계 키: 재작성된 검색 쿼리(SearchPlan.queries) 집합 -> 적중 시 검색과 답변 생성을 건너뜀
+ * <p>
+ * 캐시된 답변의 Usage(totalTokens)를 항목의 비용으로 보고, 적중할 때마다 절약한 토큰 수를 지표로 남긴다.
+ * (chat.answer.cache.tokens.saved, tag: tier=question|plan)
+ */
+@Component
+public class AnswerCache {
+
+    /**
+     * 캐시 항목: 한국어 답변(+토큰 사용량)과 답변 생성에 쓰인 근거 목록
+     */
+    public record CachedAnswer(CompleteAnswer answer, List<Citation> citations) {
+        /** 이 답변을 새로 만들 때 들었던 토큰 비용 (사용량을 모르면 0) */
+        public int costTokens() {
+            return answer.usage() == null ? 0 : answer.usage().totalTokens();
+        }
+    }
+
+    private final boolean enabled;
+    private final ReactiveCache<String, CachedAnswer> byQuestion;
+    private final ReactiveCache<String, CachedAnswer> byPlan;
+    private final Counter savedByQuestion;
+    private final Counter savedByPlan;
+
+    public AnswerCache(AppProperties props, MeterRegistry registry) {
+        var cfg = props.getRag().getAnswerCache();
+        this.enabled = cfg.isEnabled();
+        Duration ttl = Duration.ofSeconds(cfg.getTtlSeconds());
+        this.byQuestion = new ReactiveCache<>("answer-question", cfg.getMaxSize(), ttl, registry);
+        this.byPlan = new ReactiveCache<>("answer-plan", cfg.getMaxSize(), ttl, registry);
+        this.savedByQuestion = Counter.builder("chat.answer.cache.tokens.saved")
+                .tag("tier", "question").register(registry);
+        this.savedByPlan = Counter.builder("chat.answer.cache.tokens.saved")
+                .tag("tier", "plan").register(registry);
+    }
+
+    /** 1단계: 질문으로 조회 */
+    @Nullable
+    public CachedAnswer findByQuestion(String userTextKo) {
+        if (!enabled) return null;
+        CachedAnswer hit = byQuestion.lookup(questionKey(userTextKo));
+        if (hit != null) savedByQuestion.increment(hit.costTokens());
+        return hit;
+    }
+
+    /** 2단계: 검색 계획으로 조회 */
+    @Nullable
+    public CachedAnswer findByPlan(List<String> queries) {
+        if (!enabled) return null;
+        CachedAnswer hit = byPlan.lookup(planKey(queries));
+        if (hit != null) savedByPlan.increment(hit.costTokens());
+        return hit;
+    }
+
+    /**
+     * 새로 만든 답변을 두 단계 키 모두에 저장한다.
+     * 빈 답변은 저장하지 않는다.
+     */
+    public void put(String userTextKo, List<String> queries, CachedAnswer value) {
+        if (!enabled || value.answer().text() == null || value.answer().text().isBlank()) return;
+        byQuestion.put(questionKey(userTextKo), value);
+        byPlan.put(planKey(queries), value);
+    }
+
+    /**
+     * 질문 정규화 (KoreanText.normalize)
+     * ("다문화 자녀 학교 입학 준비?" == "다문화  자녀 학교 입학 준비")
+     */
+    static String questionKey(String text) {
+        return KoreanText.normalize(text);
+    }
+
+    /**
+     * 검색 계획 정규화: 각 쿼리를 정규화한 뒤 정렬해서 이어 붙인다. (쿼리 순서가 달라도 같은 키)
+     */
+    static String planKey(List<String> queries) {
+        return queries.stream()
+                .map(AnswerCache::questionKey)
+                .filter(q -> !q.isEmpty())
+                .sorted()
+                .distinct()
+                .collect(Collectors.joining("\u0001"));
+    }
+}
@@ -1,24 +1,36 @@
 package com.chat.pipeline;
 
-import com.chat.common.json.JsonUtils;
+import com.chat.chat.model.OutboundEvent;
 import com.chat.common.ws.WsEmitter;
+import com.chat.config.AppProperties;
+import com.chat.exception.UpstreamException;
 import com.chat.llm.LlmClient;
 import com.chat.llm.PromptBuilder;
 import com.chat.llm.model.CompleteAnswer;
-import com.chat.llm.model.Delta; // (사용되지 않는 import)
+import com.chat.llm.model.Delta;
+import com.chat.llm.model.Usage;
+import com.chat.rag.CitationReranker;
+import com.chat.rag.FastQueryPlanner;
 import com.chat.rag.SearchClient;
 import com.chat.rag.model.Citation;
 import com.chat.rag.model.SearchPlan;
+import com.chat.trans.SentencePipelineTranslator;
+import com.chat.usage.UsageLedger;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -35,83 +47,106 @@ public class LlmFirstRagOrchestrator {
     private final LlmClient llm;
     // 검색 API 클라이언트 (Vertex AI Search 등)
     private final SearchClient search;
+    // 스트리밍 답변을 문장 단위로 번역하는 파이프라인 단계
+    private final SentencePipelineTranslator translator;
+    // 질문/검색계획 기준 답변 캐시
+    private final AnswerCache answerCache;
+    // 검색 계획 생성기 (LLM rewrite fast-path)
+    private final FastQueryPlanner planner;
+    private final AppProperties props;
+    // 쿼리별 검색 결과 융합/재정렬 단계
+    private final CitationReranker reranker;
+    private final MeterRegistry meterRegistry;
+    private final UsageLedger usageLedger;
 
     /**
-     * RAG 파이프라인 전체를 실행한다.
+     * RAG 파이프라인 전체를 실행한다. (한국어 답변)
      *
      * @param userTextKo 사용자의 원본 한국어 질문
      * @param emitter    WebSocket 클라이언트와 통신하기 위한 Emitter
      * @return LLM의 최종 답변 문자열을 담은 Mono<String>
      */
     public Mono<String> run(String userTextKo, WsEmitter emitter) {
+        return run(userTextKo, "ko", emitter);
+    }
+
+    /**
+     * RAG 파이프라인 전체를 실행하고, 답변을 사용자 언어로 번역하면서 스트리밍한다.
+     * 한국어 답변 조각은 문장 단위로 모이는 즉시 번역되어 "delta" 이벤트로 전송되므로,
+     * 번역 지연이 LLM 생성 지연과 겹쳐서 진행된다.
+     *
+     * @param userTextKo 사용자의 질문(한국어 번역본)
+     * @param userLang   사용자 언어 (Papago 코드, 예: "en"). "ko"면 번역하지 않음
+     * @param emitter    WebSocket 클라이언트와 통신하기 위한 Emitter
+     * @return 사용자 언어로 번역된 최종 답변 문자열을 담은 Mono<String>
+     */
+    public Mono<String> run(String userTextKo, String userLang, WsEmitter emitter) {
         // WebSocket 세션 ID를 추적 ID로 사용
         String traceId = emitter.getSessionId();
+        // 이 trace에서 쓰는 LLM 토큰을 사용자별로 집계하도록 연결
+        usageLedger.bindUser(traceId, emitter.getUserId());
 
-        // --- 1. 검색 계획 생성 (LLM 호출 1) ---
-        // 사용자의 질문을 LLM이 검색하기 좋은 쿼리로 재작성(rewrite)하도록 요청함.
-        Mono<SearchPlan> planMono = llm.rewriteForSearch(userTextKo, traceId)
+        // --- 1. 검색 계획 생성 (LLM 호출 1, 가능하면 생략) ---
+        // 학습된 계획/키워드형 질문이면 LLM 없이 바로, 아니면 LLM rewrite와 로컬 계획을 경쟁시킨다.
+        Mono<SearchPlan> planMono = planner.plan(userTextKo, traceId)
                 // 15초 타임아웃: 15초 내에 쿼리 생성이 안 되면 에러 발생
                 .timeout(Duration.ofSeconds(15))
                 // (부수 효과) 에러 발생 시 클라이언트에게 'rewrite timeout' 에러 전송
-                .doOnError(e -> emitter.emitText(JsonUtils.toJson(Map.of(
-                        "type","nlp-stream","event","error","data", Map.of("message","rewrite timeout"),"traceId",traceId))));
-
-        // --- 2. 검색 실행 (Search API 호출) ---
-        // 1번에서 생성된 '검색 계획(plan)'을 받아서 실제 검색을 실행함.
-        Mono<List<Citation>> citesMono = planMono.flatMap(plan -> {
-            List<String> qs = plan.queries();
-            // 쿼리가 비어있으면(LLM 실패), 원본 텍스트로 대신 검색
-            if (qs == null || qs.isEmpty()) qs = List.of(userTextKo);
-
-            log.info("[TraceID: {}] Generated Search Queries: {}", traceId, qs);
-
-            // 쿼리 중 최대 2개만 병렬로 실행
-            return Flux.fromIterable(qs.stream().limit(2).toList())
-                    // flatMap(..., 2): 2개의 검색(search.search)을 '병렬'로 동시 실행함.
-                    .flatMap(q -> search.search(q, 5), /*병렬*/ 2)
-                    // Flux<List<Citation>> -> Flux<Citation> (리스트를 개별 Citation으로 펼침)
-                    .flatMapIterable(list -> list)
-                    // Citation::url 기준으로 중복된 Citation 제거
-                    .distinct(Citation::url)
-                    // 최대 5개의 고유한 Citation만 가져옴
-                    .take(5)
-                    // Flux<Citation> -> Mono<List<Citation>> (다시 리스트로 수집)
-                    .collectList()
-                    // (부수 효과) 수집된 최종 Citation 로깅
-                    .doOnNext(c -> {
-                        log.info("[TraceID: {}] Collected Citations (Size: {}): {}", traceId,c.size(), c);});
-        });
+                .doOnError(e -> emitter.emit(new OutboundEvent.Error(traceId, "rewrite timeout")));
 
-        // --- 3. 최종 답변 생성 (LLM 호출 2) ---
-        // 2번에서 수집된 '검색 결과(cites)'와 '원본 질문'을 조합해 프롬프트를 만듦.
-        Mono<CompleteAnswer> answerMono = citesMono.flatMap(cites -> {
-            log.info("[TraceID: {}] Citations passed to LLM Prompt (Size: {}): {}", traceId, cites.size(), cites);
+        // --- 답변 캐시 확인 (1단계: 질문) ---
+        // 같은(정규화 기준) 질문에 대한 답변이 캐시에 있으면 rewrite/검색/답변 생성을 모두 건너뛴다.
+        // (구독 시점에 조회하도록 defer)
+        Mono<String> answerMono = Mono.defer(() -> {
+            AnswerCache.CachedAnswer hit = answerCache.findByQuestion(userTextKo);
+            if (hit != null) {
+                log.info("[TraceID: {}] answer cache hit (question), saved {} tokens", traceId, hit.costTokens());
+                return deliver(Flux.just(hit.answer().text()), userLang, emitter, traceId);
+            }
 
-            // 1. 시스템 프롬프트(역할)와 사용자 프롬프트(질문+검색결과)를 조립
-            String systemPrompt = PromptBuilder.getSystemInstruction();
-            String userPrompt = PromptBuilder.getUserContextPrompt(userTextKo, cites);
+            // --- 원문 질문 선검색 ---
+            // 검색 계획을 기다리지 않고 원문 질문으로 바로 검색을 시작해, 검색 지연을 계획 지연과 겹치게 한다.
+            // 선검색은 이 요청이 끝나면(완료/에러/취소) 함께 취소한다.
+            long startedAt = System.nanoTime();
+            Disposable.Composite requestScope = Disposables.composite();
+            Mono<List<Citation>> rawSearch = props.getRag().getSpeculativeSearch().isEnabled()
+                    ? startRawSearch(userTextKo, traceId, requestScope)
+                    : null;
 
-//            // (부수 효과) 클라이언트에게 "이제 LLM 답변 생성 시작"이라고 알림
-//            emitter.emitText(JsonUtils.toJson(Map.of(
-//                    "type","nlp-stream","event","progress","data", Map.of("stage","gen","detail","stream"),"traceId",traceId)));
+            return planMono.flatMap(plan -> {
+                List<String> qs = plan.queries();
+                // 쿼리가 비어있으면(LLM 실패), 원본 텍스트로 대신 검색
+                if (qs == null || qs.isEmpty()) qs = List.of(userTextKo);
 
-            // 2. LLM에게 최종 답변(비스트리밍)을 요청
-            return llm.getCompleteAnswer(systemPrompt, userPrompt, traceId);
+                log.info("[TraceID: {}] Generated Search Queries: {}", traceId, qs);
+
+                // --- 답변 캐시 확인 (2단계: 검색 계획) ---
+                // 질문 표현은 달라도 재작성된 쿼리가 같으면 같은 근거/답변이 나오므로 재사용한다.
+                AnswerCache.CachedAnswer planHit = answerCache.findByPlan(qs);
+                if (planHit != null) {
+                    log.info("[TraceID: {}] answer cache hit (plan), saved {} tokens", traceId, planHit.costTokens());
+                    return deliver(Flux.just(planHit.answer().text()), userLang, emitter, traceId);
+                }
+
+                List<String> planQueries = qs;
+                Mono<List<Citation>> citesMono = rawSearch == null
+                        ? retrieve(userTextKo, qs, traceId)
+                        : retrieveSpeculative(userTextKo, qs, rawSearch, startedAt, traceId);
+                return citesMono
+                        .flatMap(cites -> generate(userTextKo, planQueries, cites, userLang, emitter, traceId));
+            }).doFinally(sig -> requestScope.dispose());
         });
 
         // --- 4. 파이프라인 총괄 및 반환 ---
-        // 1 -> 2 -> 3번 Mono를 순차적으로 실행하고,
+        // (캐시 미스 시) 1 -> 2 -> 3번을 순차적으로 실행하고,
         // 클라이언트에게 진행 상황/결과/에러를 전송(부수 효과)한 뒤,
-        // 최종 LLM 답변(String)을 반환함.
+        // 최종 답변(사용자 언어, String)을 반환함.
         return answerMono
                 // (부수 효과) 이 파이프라인 *전체*가 구독(시작)될 때 "rewrite 시작" 알림
 //                .doOnSubscribe(s -> emitter.emitText(JsonUtils.toJson(Map.of(
 //                        "type","nlp-stream","event","progress","data", Map.of("stage","rewrite","detail","begin"),"traceId",traceId))))
-                // (부수 효과) LLM의 최종 답변(CompleteAnswer 객체) 로깅
-                .doOnNext(ca -> System.out.println("CompleteAnswer.text ="+ ca.text()))
-                // [map 동기] Mono<CompleteAnswer> -> Mono<String> (알맹이 변환)
-                // 이 파이프라인의 최종 성공 결과는 LLM의 '텍스트' 문자열임.
-                .map(CompleteAnswer::text)
+                // (부수 효과) 최종 답변 로깅
+                .doOnNext(text -> System.out.println("CompleteAnswer.text ="+ text))
                 // 65초 타임아웃: (rewrite 15초 포함) 전체 RAG 파이프라인 시간 제한
                 .timeout(Duration.ofSeconds(65))
 
@@ -120,8 +155,7 @@ public class LlmFirstRagOrchestrator {
                 // (부수 효과) 파이프라인 *전체* 중 에러 발생 시
                 .doOnError(e -> {
                     // 클라이언트에게 "error" 이벤트 전송
-                    emitter.emitText(JsonUtils.toJson(Map.of(
-                            "type","nlp-stream","event","error","data", Map.of("message", e.getMessage()),"traceId",traceId)));
+                    emitter.emit(new OutboundEvent.Error(traceId, e.getMessage()));
                     // 에러는 상위(WebSocket 핸들러)로 계속 전파됨
                 })
                 // (부수 효과) 파이프라인 *전체*가 *어쨌든* 종료될 때 (성공/에러/취소)
@@ -146,4 +180,215 @@ public class LlmFirstRagOrchestrator {
                     // (참고: 에러(ON_ERROR)시에는 doOnError가 이미 처리했으므로 여기선 'done' 안 보냄)
                 });
     }
-}
\ No newline at end of file
+
+    /**
+     * 2. 검색 실행 (Search API 호출)
+     * 검색 계획의 쿼리들로 실제 검색을 실행하고, 쿼리별 결과를 reranker로 합쳐 근거(Citation) 목록을 만든다.
+     * 검색이 실패(서킷 열림/타임아웃 등)한 쿼리는 빈 결과로 취급한다. (근거 없이라도 답변한다)
+     */
+    private Mono<List<Citation>> retrieve(String userTextKo, List<String> qs, String traceId) {
+        var cfg = props.getRag().getRerank();
+        List<String> used = qs.stream().limit(cfg.getMaxQueries()).toList();
+        return Flux.fromIterable(used)
+                // flatMapSequential: 병렬로 검색하되 결과는 쿼리 순서대로 받는다. (도착 순서와 무관한 순위)
+                .flatMapSequential(q -> search.search(q, cfg.getPerQueryK())
+                        .onErrorResume(e -> {
+                            log.warn("[TraceID: {}] search failed for '{}': {}", traceId, q, e.toString());
+                            return Mono.just(List.of());
+                        }), Math.max(1, used.size()))
+                .collectList()
+                .map(lists -> reranker.rerank(userTextKo, used, lists, cfg.getTopK()))
+                // (부수 효과) 수집된 최종 Citation 로깅
+                .doOnNext(c -> {
+                    log.info("[TraceID: {}] Collected Citations (Size: {}): {}", traceId,c.size(), c);});
+    }
+
+    /**
+     * 원문 질문 검색을 즉시 시작한다. (구독 여부와 상관없이 진행되고 결과는 재사용된다)
+     * 실패는 빈 결과로 취급한다. (검색 계획 쪽 결과만으로도 답변할 수 있으므로)
+     * 검색 구독은 requestScope에 묶여, 요청이 먼저 끝나면(취소/에러) 검색 호출도 취소된다.
+     */
+    private Mono<List<Citation>> startRawSearch(String userTextKo, String traceId, Disposable.Composite requestScope) {
+        Sinks.One<List<Citation>> result = Sinks.one();
+        requestScope.add(search.search(userTextKo, props.getRag().getRerank().getPerQueryK())
+                .onErrorResume(e -> {
+                    log.warn("[TraceID: {}] raw search failed: {}", traceId, e.toString());
+                    return Mono.just(List.of());
+                })
+                .defaultIfEmpty(List.of())
+                .subscribe(result::tryEmitValue));
+        return result.asMono();
+    }
+
+    /**
+     * 2'. 선검색 모드의 검색 실행
+     * 재작성된 쿼리 결과와 원문 질문 결과를 reranker로 합친다.
+     * - 원문 질문 검색: 요청 시작부터 deadline-ms
+     * - 재작성 쿼리 검색: rewrite 결과가 나온 지금부터 rewritten-deadline-ms (rewrite가 늦어도 검색할 시간을 따로 준다)
+     * 둘 중 긴 쪽까지 도착한 결과만 사용한다. 그때까지 아무 결과도 없으면 원문 질문 검색이 끝나기를 기다린다.
+     */
+    private Mono<List<Citation>> retrieveSpeculative(String userTextKo, List<String> qs, Mono<List<Citation>> rawSearch,
+                                                     long startedAt, String traceId) {
+        var cfg = props.getRag().getRerank();
+        var speculative = props.getRag().getSpeculativeSearch();
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000L;
+        Duration rewrittenBudget = Duration.ofMillis(speculative.getRewrittenDeadlineMs());
+        // 재작성 쿼리를 기다리는 동안 원문 질문 결과가 와도 쓴다.
+        Duration rawBudget = Duration.ofMillis(Math.max(speculative.getDeadlineMs() - elapsedMs, speculative.getRewrittenDeadlineMs()));
+
+        // 원문 질문은 이미 검색 중이므로 제외
+        List<String> rewritten = qs.stream()
+                .filter(q -> !q.strip().equals(userTextKo.strip()))
+                .limit(Math.max(0, cfg.getMaxQueries() - 1))
+                .toList();
+        Mono<List<List<Citation>>> rewrittenResults = Flux.fromIterable(rewritten)
+                .flatMapSequential(q -> search.search(q, cfg.getPerQueryK()).onErrorResume(e -> Mono.just(List.of())),
+                        Math.max(1, rewritten.size()))
+                .take(rewrittenBudget)
+                .collectList();
+        Mono<List<Citation>> rawResults = rawSearch.timeout(rawBudget, Mono.just(List.of()));
+
+        return Mono.zip(rewrittenResults, rawResults)
+                .flatMap(t -> {
+                    // 마감 전에 도착한 쿼리만 (쿼리, 결과) 쌍으로 맞춰서 넘긴다.
+                    List<String> used = new ArrayList<>(rewritten.subList(0, t.getT1().size()));
+                    List<List<Citation>> lists = new ArrayList<>(t.getT1());
+                    used.add(userTextKo);
+                    lists.add(t.getT2());
+                    List<Citation> merged = reranker.rerank(userTextKo, used, lists, cfg.getTopK());
+                    if (merged.isEmpty()) {
+                        log.info("[TraceID: {}] no citations before deadline, waiting for raw search", traceId);
+                        return rawSearch.map(raw -> reranker.rerank(userTextKo, List.of(userTextKo), List.of(raw), cfg.getTopK()));
+                    }
+                    return Mono.just(merged);
+                })
+                .doOnNext(c -> log.info("[TraceID: {}] Collected Citations (speculative, {} rewritten queries, Size: {}): {}",
+                        traceId, rewritten.size(), c.size(), c));
+    }
+
+    /**
+     * 3. 최종 답변 생성 (LLM 호출 2)
+     * 검색 결과(cites)와 원본 질문을 조합해 프롬프트를 만들고, 스트리밍 답변을 사용자에게 전달한 뒤
+     * 한국어 답변을 답변 캐시에 저장한다.
+     */
+    private Mono<String> generate(String userTextKo, List<String> queries, List<Citation> cites,
+                                  String userLang, WsEmitter emitter, String traceId) {
+        log.info("[TraceID: {}] Citations passed to LLM Prompt (Size: {}): {}", traceId, cites.size(), cites);
+
+        // 1. 시스템 프롬프트(역할)와 사용자 프롬프트(질문+검색결과)를 조립
+        //    근거는 관련도 순으로 토큰 예산 안에 들어가는 만큼만 넣는다.
+        String systemPrompt = PromptBuilder.getSystemInstruction();
+        PromptBuilder.UserPrompt userPrompt = PromptBuilder.getUserContextPrompt(
+                userTextKo, cites, props.getLlm().getPrompt().getContextBudgetTokens());
+        List<Citation> usedCites = userPrompt.citations();
+        log.info("[TraceID: {}] prompt context {} -> {} citations, ~{} tokens (unbudgeted ~{})", traceId,
+                cites.size(), usedCites.size(), userPrompt.estimatedTokens(), userPrompt.baselineTokens());
+        recordDroppedCitations(userPrompt, traceId);
+
+//        // (부수 효과) 클라이언트에게 "이제 LLM 답변 생성 시작"이라고 알림
+//        emitter.emitText(JsonUtils.toJson(Map.of(
+//                "type","nlp-stream","event","progress","data", Map.of("stage","gen","detail","stream"),"traceId",traceId)));
+
+        // 2. LLM에게 답변을 스트리밍으로 요청
+        //    한국어 전체 텍스트는 답변 캐시에 넣기 위해 누적해 둔다.
+        StringBuilder koFull = new StringBuilder();
+        AtomicBoolean degraded = new AtomicBoolean();
+        long startedAt = System.nanoTime();
+        Flux<String> koDeltas = llm.streamAnswer(systemPrompt, userPrompt.text(), traceId)
+                .filter(d -> !d.isFinal())
+                .map(Delta::text)
+                .doOnNext(text -> {
+                    // 첫 조각이 도착한 시점 = LLM의 첫 토큰 시간(TTFT)
+                    if (koFull.length() == 0) {
+                        log.info("[TraceID: {}] first token in {}ms", traceId, (System.nanoTime() - startedAt) / 1_000_000L);
+                    }
+                    koFull.append(text);
+                })
+                // LLM 서킷이 열려 있거나 첫 토큰이 제때 오지 않으면, 기다리지 않고 검색 근거만으로 된 안내 답변을 보낸다.
+                // (이미 일부를 보낸 뒤의 실패는 그대로 에러로 전달)
+                .onErrorResume(UpstreamException.class, e -> {
+                    if (koFull.length() > 0) return Flux.error(e);
+                    log.warn("[TraceID: {}] llm unavailable, sending degraded answer: {}", traceId, e.getMessage());
+                    degraded.set(true);
+                    meterRegistry.counter("chat.rag.degraded", "stage", "llm").increment();
+                    return Flux.just(degradedAnswer(usedCites.isEmpty() ? cites : usedCites));
+                });
+
+        // 3. 사용자에게 전달하고, 끝나면 한국어 답변 + 사용량 + 근거를 캐시에 저장 (안내 답변은 저장하지 않음)
+        return deliver(koDeltas, userLang, emitter, traceId)
+                .doOnNext(text -> {
+                    if (degraded.get()) return;
+                    Usage usage = llm.lastUsage(traceId);
+                    recordPromptSavings(userPrompt, usage, traceId);
+                    answerCache.put(userTextKo, queries, new AnswerCache.CachedAnswer(
+                            new CompleteAnswer(koFull.toString(), usage), usedCites));
+                });
+    }
+
+    /**
+     * LLM을 쓸 수 없을 때의 안내 답변. 검색 근거가 있으면 제목/URL만이라도 알려 준다.
+     */
+    private static String degradedAnswer(List<Citation> cites) {
+        var sb = new StringBuilder("지금은 답변 생성 서비스가 원활하지 않아 자세한 답변을 드리기 어렵습니다. 잠시 후 다시 질문해 주세요.");
+        if (!cites.isEmpty()) {
+            sb.append("\n\n---\n도움이 될 만한 자료:\n");
+            for (int i = 0; i < Math.min(cites.size(), 3); i++) {
+                Citation c = cites.get(i);
+                sb.append("[").append(i + 1).append("] ").append(c.title()).append("\n");
+                if (c.url() != null && !c.url().isBlank()) sb.append(" - ").append(c.url()).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 프롬프트에서 뺀 근거 수를 기록한다. (chat.llm.prompt.citations.dropped, tag: reason=duplicate|budget)
+     * budget이 자주 쌓이면 app.llm.prompt.context-budget-tokens가 근거 크기 × top-k보다 작은 것이다.
+     */
+    private void recordDroppedCitations(PromptBuilder.UserPrompt userPrompt, String traceId) {
+        if (userPrompt.droppedDuplicate() > 0) {
+            meterRegistry.counter("chat.llm.prompt.citations.dropped", "reason", "duplicate")
+                    .increment(userPrompt.droppedDuplicate());
+        }
+        if (userPrompt.droppedBudget() > 0) {
+            meterRegistry.counter("chat.llm.prompt.citations.dropped", "reason", "budget")
+                    .increment(userPrompt.droppedBudget());
+            log.warn("[TraceID: {}] {} citations dropped by context budget ({} tokens)", traceId,
+                    userPrompt.droppedBudget(), props.getLlm().getPrompt().getContextBudgetTokens());
+        }
+    }
+
+    /**
+     * 예산 조립으로 줄어든 프롬프트 토큰을 기록한다. (chat.llm.prompt.tokens.saved, tag: source=context-budget)
+     * 추정치끼리의 비율을 실제 promptTokens(Usage)에 적용해, 기존 조립 방식이었다면 더 들었을 토큰 수를 계산한다.
+     */
+    private void recordPromptSavings(PromptBuilder.UserPrompt userPrompt, Usage usage, String traceId) {
+        if (usage == null) return;
+        int system = PromptBuilder.getSystemInstructionTokens();
+        int estimated = system + userPrompt.estimatedTokens();
+        int baseline = system + userPrompt.baselineTokens();
+        if (estimated <= 0 || baseline <= estimated) return;
+        long saved = Math.round(usage.promptTokens() * ((double) (baseline - estimated) / estimated));
+        meterRegistry.counter("chat.llm.prompt.tokens.saved", "source", "context-budget").increment(saved);
+        log.info("[TraceID: {}] prompt tokens saved by context budget ~{} (actual promptTokens={})",
+                traceId, saved, usage.promptTokens());
+    }
+
+    /**
+     * 한국어 답변 조각을 사용자 언어로 문장 단위 번역(한국어면 그대로 통과)하면서
+     * 번역된 청크가 도착하는 즉시 클라이언트에 "delta" 이벤트로 보낸다.
+     * 새로 생성 중인 답변과 캐시된 답변 모두 이 경로로 전달된다.
+     *
+     * @return 사용자 언어로 된 전체 답변 (저장용)
+     */
+    private Mono<String> deliver(Flux<String> koDeltas, String userLang, WsEmitter emitter, String traceId) {
+        StringBuilder full = new StringBuilder();
+        return translator.translate(koDeltas, "ko", userLang)
+                .doOnNext(chunk -> {
+                    full.append(chunk);
+                    // 클라이언트가 밀려 있으면 아직 못 보낸 조각과 합쳐 보낸다. (app.ws.outbound)
+                    emitter.emitDelta(traceId, chunk);
+                })
+                .then(Mono.fromSupplier(full::toString));
+    }
+}
@@ -0,0 +1,139 @@
+package com.chat.pipeline;
+
+import com.chat.chat.model.ChatOutbound;
+import com.chat.common.cache.ReactiveCache;
+import com.chat.common.ws.WsEmitter;
+import com.chat.config.AppProperties;
+import com.chat.llm.model.Usage;
+import com.chat.usage.UsageLedger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * RAG 파이프라인 입장 제어.
+ * 질문 하나가 Gemini 2회 + Vertex 검색 최대 2회 + Papago 2회를 부르므로, 한 클라이언트가 질문을 쏟아내면
+ * 다른 사용자 모두의 지연이 늘어난다. 파이프라인 시작 전에 아래 두 가지를 확인하고, 넘으면 대기열에 넣지 않고
+ * 바로 SYSTEM 메시지로 거절한다.
+ * <p>
+ * - 사용자별 토큰 버킷: 용량 bucket-capacity-tokens, 분당 refill-tokens-per-minute 만큼 다시 찬다.
+ *   실제 LLM 사용량(Usage.totalTokens)이 기록될 때마다 차감되고, 잔량이 0 이하이면 거절한다.
+ *   (질문 전에는 비용을 모르므로 사후 차감, 잔량이 음수가 되면 그만큼 더 기다려야 한다)
+ * - 전역 동시 실행 수: 진행 중인 파이프라인이 max-in-flight 이상이면 거절한다.
+ * <p>
+ * 지표: chat.rag.inflight 게이지, chat.rag.rejected 카운터 (tag: reason=quota|busy)
+ */
+@Slf4j
+@Component
+public class RagAdmission {
+
+    private final AppProperties.Rag.Admission cfg;
+    private final ReactiveCache<String, TokenBucket> buckets;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejectedQuota;
+    private final Counter rejectedBusy;
+
+    public RagAdmission(AppProperties props, UsageLedger usageLedger, MeterRegistry registry) {
+        this.cfg = props.getRag().getAdmission();
+        // 버킷은 조회/차감할 때마다 만료 시각이 밀리므로(computeIfAbsent), bucket-idle-ttl-seconds 동안 안 쓴 버킷만 버려진다.
+        // 그 사이 refill로 이미 가득 찼을 것이므로 버려도 잔량이 부풀지 않는다. (ttl ≥ 용량 / 분당 refill 이어야 한다)
+        this.buckets = new ReactiveCache<>("rag-admission", cfg.getMaxUsers(),
+                Duration.ofSeconds(cfg.getBucketIdleTtlSeconds()), registry);
+        if (cfg.getBucketIdleTtlSeconds() * cfg.getRefillTokensPerMinute() < cfg.getBucketCapacityTokens() * 60) {
+            log.warn("[ADMISSION] bucket-idle-ttl-seconds {} is shorter than a full refill ({} tokens at {}/min); evicted buckets may come back full",
+                    cfg.getBucketIdleTtlSeconds(), cfg.getBucketCapacityTokens(), cfg.getRefillTokensPerMinute());
+        }
+        this.rejectedQuota = Counter.builder("chat.rag.rejected").tag("reason", "quota").register(registry);
+        this.rejectedBusy = Counter.builder("chat.rag.rejected").tag("reason", "busy").register(registry);
+        Gauge.builder("chat.rag.inflight", inFlight, AtomicInteger::get).register(registry);
+        usageLedger.addListener(this::charge);
+    }
+
+    /**
+     * 입장이 허용되면 pipeline을 실행하고(끝나면 자리 반환), 거절되면 SYSTEM 메시지를 보내고 바로 완료한다.
+     *
+     * @param userId   사용자 ID (토큰 버킷 키)
+     * @param emitter  거절 메시지를 보낼 Emitter
+     * @param pipeline 실행할 파이프라인
+     */
+    public Mono<Void> admit(String userId, WsEmitter emitter, Supplier<Mono<Void>> pipeline) {
+        if (!cfg.isEnabled()) {
+            // 제한은 하지 않지만 진행 중인 수는 센다. (종료 시 드레인이 기다린다)
+            return Mono.defer(() -> {
+                inFlight.incrementAndGet();
+                return Mono.defer(pipeline).doFinally(sig -> inFlight.decrementAndGet());
+            });
+        }
+        return Mono.defer(() -> {
+            if (bucket(userId).balance() <= 0) {
+                rejectedQuota.increment();
+                log.info("[ADMISSION] user={} rejected: token quota exhausted", userId);
+                emitter.emit(ChatOutbound.system("요청이 너무 많습니다. 잠시 후 다시 시도해 주세요."));
+                return Mono.empty();
+            }
+            if (inFlight.incrementAndGet() > cfg.getMaxInFlight()) {
+                inFlight.decrementAndGet();
+                rejectedBusy.increment();
+                log.info("[ADMISSION] user={} rejected: {} pipelines in flight", userId, cfg.getMaxInFlight());
+                emitter.emit(ChatOutbound.system("현재 요청이 많아 처리할 수 없습니다. 잠시 후 다시 시도해 주세요."));
+                return Mono.empty();
+            }
+            return Mono.defer(pipeline).doFinally(sig -> inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * 지금 진행 중인 파이프라인 수
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private void charge(String userId, Usage usage) {
+        if (cfg.isEnabled()) bucket(userId).take(usage.totalTokens());
+    }
+
+    private TokenBucket bucket(String userId) {
+        return buckets.computeIfAbsent(userId,
+                u -> new TokenBucket(cfg.getBucketCapacityTokens(), cfg.getRefillTokensPerMinute() / 60_000_000_000.0));
+    }
+
+    /**
+     * 토큰 버킷. 조회/차감 시점에 경과 시간만큼 채운다.
+     */
+    private static final class TokenBucket {
+        private final double capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double capacity, double refillPerNano) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerNano;
+            this.tokens = capacity;
+        }
+
+        synchronized double balance() {
+            refill();
+            return tokens;
+        }
+
+        synchronized void take(int n) {
+            refill();
+            tokens -= n;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.chat.rag;
+
+import com.chat.rag.model.Citation;
+
+import java.util.List;
+
+/**
+ * 여러 검색 쿼리의 결과를 하나의 근거 목록으로 합치고 순위를 매기는 단계.
+ * (SearchClient 결과 -> PromptBuilder.getUserContextPrompt 사이)
+ * <p>
+ * 결과는 도착 순서가 아니라 입력 목록의 순서와 내용에만 의존해야 한다. (같은 입력이면 항상 같은 top-k)
+ */
+public interface CitationReranker {
+
+    /**
+     * @param question        사용자의 질문(한국어)
+     * @param queries         검색에 사용한 쿼리 목록 (resultsPerQuery와 같은 순서)
+     * @param resultsPerQuery 쿼리별 검색 결과 (각 목록은 검색 엔진 순위 순)
+     * @param topK            반환할 최대 개수
+     * @return URL 기준으로 중복을 제거하고 순위대로 정렬한 상위 topK개 근거
+     */
+    List<Citation> rerank(String question, List<String> queries, List<List<Citation>> resultsPerQuery, int topK);
+}
@@ -0,0 +1,111 @@
+package com.chat.rag;
+
+import com.chat.common.cache.ReactiveCache;
+import com.chat.common.text.KoreanText;
+import com.chat.config.AppProperties;
+import com.chat.llm.LlmClient;
+import com.chat.rag.model.SearchPlan;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 검색 계획(SearchPlan) 생성기. LLM rewrite 호출(수백 ms ~ 수 초)을 가능한 한 건너뛴다.
+ * <p>
+ * 1) learned: 이전에 LLM이 만든 (정규화된 질문 -> 검색어) 결과가 있으면 그대로 사용
+ * 2) fast: 짧은 키워드형 질문("다문화 자녀 입학")은 조사/불용어만 걷어내서 바로 검색어로 사용
+ * 3) race: 문장형 질문은 LLM rewrite와 로컬 키워드 계획을 경쟁시킨다.
+ *    LLM이 race-grace-ms 안에 응답하면 LLM 결과를, 아니면 로컬 계획을 사용한다.
+ *    (LLM 호출은 끝까지 진행되어 다음 질문을 위해 학습 캐시에 저장된다)
+ * 4) llm: 로컬 계획을 만들 수 없으면 기존처럼 LLM rewrite 결과를 기다린다.
+ * <p>
+ * 어떤 경로가 쓰였는지는 chat.rag.plan 카운터(tag: path)로 집계한다.
+ */
+@Slf4j
+@Component
+public class FastQueryPlanner {
+
+    private final LlmClient llm;
+    private final AppProperties.Rag.Planner cfg;
+    private final ReactiveCache<String, SearchPlan> learned;
+    private final MeterRegistry registry;
+    private final Map<String, Counter> pathCounters = new ConcurrentHashMap<>();
+
+    public FastQueryPlanner(LlmClient llm, AppProperties props, MeterRegistry registry) {
+        this.llm = llm;
+        this.cfg = props.getRag().getPlanner();
+        this.registry = registry;
+        this.learned = new ReactiveCache<>("query-plan", cfg.getLearnedMaxSize(),
+                Duration.ofSeconds(cfg.getLearnedTtlSeconds()), registry);
+    }
+
+    /**
+     * @param userTextKo 사용자의 질문(한국어)
+     * @param traceId    추적 ID (LLM 사용량 기록용)
+     */
+    public Mono<SearchPlan> plan(String userTextKo, String traceId) {
+        return Mono.defer(() -> {
+            String key = KoreanText.normalize(userTextKo);
+
+            SearchPlan hit = learned.lookup(key);
+            if (hit != null) return Mono.just(record("learned", traceId, hit));
+
+            if (!cfg.isFastPathEnabled()) return rewrite(userTextKo, key, traceId).map(p -> record("llm", traceId, p));
+
+            List<String> tokens = KoreanText.tokens(userTextKo);
+            List<String> keywords = KoreanText.keywords(userTextKo);
+            SearchPlan local = keywords.isEmpty() ? null : SearchPlan.of(List.of(String.join(" ", keywords)));
+
+            if (local != null && isKeywordQuery(userTextKo, tokens)) {
+                return Mono.just(record("fast", traceId, local));
+            }
+            if (local == null || !cfg.isSpeculativeRace()) {
+                return rewrite(userTextKo, key, traceId).map(p -> record("llm", traceId, p));
+            }
+
+            // LLM 호출은 경쟁에서 져도 취소하지 않고 끝까지 받아서 학습 캐시에 넣는다.
+            Mono<SearchPlan> rewrite = rewrite(userTextKo, key, traceId).cache();
+            rewrite.subscribe(p -> { }, e -> { });
+            return Mono.firstWithValue(
+                    rewrite.map(p -> record("race-llm", traceId, p)),
+                    Mono.delay(Duration.ofMillis(cfg.getRaceGraceMs()))
+                            .map(t -> record("race-local", traceId, local)));
+        });
+    }
+
+    /**
+     * 키워드형 질문 판정: 물음표가 없고, 어절 수가 적고, 서술어(질문/요청형 어미)가 없다.
+     */
+    private boolean isKeywordQuery(String text, List<String> tokens) {
+        if (text.contains("?") || text.contains("？")) return false;
+        if (tokens.isEmpty() || tokens.size() > cfg.getMaxKeywordTokens()) return false;
+        return tokens.stream().noneMatch(KoreanText::isPredicate);
+    }
+
+    /**
+     * LLM rewrite 호출. LLM이 실패하면 rewriteForSearch가 원문 질문을 그대로 돌려주는데,
+     * 그런 결과는 학습하지 않는다.
+     */
+    private Mono<SearchPlan> rewrite(String userTextKo, String key, String traceId) {
+        return llm.rewriteForSearch(userTextKo, traceId)
+                .doOnNext(p -> {
+                    if (p.queries() != null && !p.queries().isEmpty() && !p.queries().equals(List.of(userTextKo))) {
+                        learned.put(key, p);
+                    }
+                });
+    }
+
+    private SearchPlan record(String path, String traceId, SearchPlan plan) {
+        pathCounters.computeIfAbsent(path, p -> Counter.builder("chat.rag.plan").tag("path", p).register(registry))
+                .increment();
+        log.info("[PLAN] traceId={} path={} queries={}", traceId, path, plan.queries());
+        return plan;
+    }
+}
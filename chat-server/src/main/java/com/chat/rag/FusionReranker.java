@@ -0,0 +1,153 @@
+package com.chat.rag;
+
+import com.chat.common.text.KoreanText;
+import com.chat.config.AppProperties;
+import com.chat.rag.model.Citation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 기본 CitationReranker 구현. app.rag.rerank.strategy로 방식을 고른다.
+ * <p>
+ * - rrf: Reciprocal Rank Fusion. 각 쿼리 결과에서의 순위 r에 대해 1/(rrf-k + r)을 더한다.
+ *        여러 쿼리에서 공통으로 상위에 나온 문서가 올라간다.
+ * - bm25: 후보 문서(title + snippet)만으로 만든 작은 코퍼스에서 질문/쿼리 키워드의 BM25 점수
+ * - hybrid(기본): 두 점수를 각각 최댓값으로 정규화한 뒤 bm25-weight 비율로 섞는다.
+ * - none: 기존 동작(쿼리 순서대로 이어 붙여 URL 중복 제거)
+ * <p>
+ * 동점은 가장 좋은 원래 순위, 그다음 URL 순으로 정렬해서 결과가 항상 같도록 한다.
+ * 한국어는 띄어쓰기/복합명사 차이가 커서, 어절(조사 제거)과 함께 글자 bigram도 색인어로 쓴다.
+ */
+@Component
+public class FusionReranker implements CitationReranker {
+
+    private final AppProperties.Rag.Rerank cfg;
+
+    public FusionReranker(AppProperties props) {
+        this.cfg = props.getRag().getRerank();
+    }
+
+    @Override
+    public List<Citation> rerank(String question, List<String> queries, List<List<Citation>> resultsPerQuery, int topK) {
+        // URL 기준 후보 수집 (처음 나온 항목을 대표로, 가장 좋은 순위를 기록)
+        Map<String, Candidate> candidates = new LinkedHashMap<>();
+        for (List<Citation> list : resultsPerQuery) {
+            for (int rank = 0; rank < list.size(); rank++) {
+                Citation c = list.get(rank);
+                String key = Objects.requireNonNullElse(c.url(), "");
+                Candidate cand = candidates.computeIfAbsent(key, k -> new Candidate(c, key));
+                cand.rrf += 1.0 / (cfg.getRrfK() + rank + 1);
+                cand.bestRank = Math.min(cand.bestRank, rank);
+            }
+        }
+        if (candidates.isEmpty()) return List.of();
+
+        String strategy = cfg.getStrategy();
+        if ("none".equalsIgnoreCase(strategy)) {
+            return candidates.values().stream().limit(topK).map(cand -> cand.citation).toList();
+        }
+
+        List<Candidate> all = new ArrayList<>(candidates.values());
+        if (!"rrf".equalsIgnoreCase(strategy)) {
+            bm25(question + " " + String.join(" ", queries), all);
+        }
+
+        double maxRrf = all.stream().mapToDouble(c -> c.rrf).max().orElse(1);
+        double maxBm25 = all.stream().mapToDouble(c -> c.bm25).max().orElse(0);
+        double w = switch (strategy.toLowerCase()) {
+            case "rrf" -> 0;
+            case "bm25" -> 1;
+            default -> cfg.getBm25Weight();
+        };
+        for (Candidate c : all) {
+            double lexical = maxBm25 > 0 ? c.bm25 / maxBm25 : 0;
+            c.score = (1 - w) * (c.rrf / maxRrf) + w * lexical;
+        }
+
+        return all.stream()
+                .sorted(Comparator.comparingDouble((Candidate c) -> -c.score)
+                        .thenComparingInt(c -> c.bestRank)
+                        .thenComparing(c -> c.url))
+                .limit(topK)
+                .map(c -> c.citation)
+                .toList();
+    }
+
+    /**
+     * 후보 집합을 코퍼스로 보고 BM25 점수를 계산해 Candidate.bm25에 기록한다.
+     */
+    private void bm25(String queryText, List<Candidate> docs) {
+        List<String> queryTerms = terms(queryText).stream().distinct().toList();
+        if (queryTerms.isEmpty()) return;
+
+        List<Map<String, Integer>> tfs = new ArrayList<>(docs.size());
+        Map<String, Integer> df = new HashMap<>();
+        double totalLen = 0;
+        for (Candidate d : docs) {
+            Map<String, Integer> tf = new HashMap<>();
+            for (String t : terms(Objects.requireNonNullElse(d.citation.title(), "") + " "
+                    + Objects.requireNonNullElse(d.citation.snippet(), ""))) {
+                tf.merge(t, 1, Integer::sum);
+            }
+            tf.keySet().forEach(t -> df.merge(t, 1, Integer::sum));
+            d.length = tf.values().stream().mapToInt(Integer::intValue).sum();
+            totalLen += d.length;
+            tfs.add(tf);
+        }
+        double avgLen = Math.max(1, totalLen / docs.size());
+        int n = docs.size();
+        double k1 = cfg.getBm25K1();
+        double b = cfg.getBm25B();
+
+        for (int i = 0; i < n; i++) {
+            Candidate d = docs.get(i);
+            Map<String, Integer> tf = tfs.get(i);
+            double score = 0;
+            for (String q : queryTerms) {
+                Integer f = tf.get(q);
+                if (f == null) continue;
+                int dfq = df.get(q);
+                double idf = Math.log(1 + (n - dfq + 0.5) / (dfq + 0.5));
+                score += idf * (f * (k1 + 1)) / (f + k1 * (1 - b + b * d.length / avgLen));
+            }
+            d.bm25 = score;
+        }
+    }
+
+    /**
+     * 색인어: 조사를 뗀 어절 + (3글자 이상 어절의) 글자 bigram
+     */
+    static List<String> terms(String text) {
+        List<String> out = new ArrayList<>();
+        for (String token : KoreanText.tokens(text)) {
+            String t = KoreanText.stripJosa(token);
+            out.add(t);
+            if (t.length() >= 3) {
+                for (int i = 0; i + 2 <= t.length(); i++) out.add(t.substring(i, i + 2));
+            }
+        }
+        return out;
+    }
+
+    private static final class Candidate {
+        final Citation citation;
+        final String url;
+        double rrf;
+        double bm25;
+        double score;
+        int bestRank = Integer.MAX_VALUE;
+        int length;
+
+        Candidate(Citation citation, String url) {
+            this.citation = citation;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.chat.rag;
+
+import com.chat.common.cache.ReactiveCache;
+import com.chat.config.AppProperties;
+import com.chat.rag.model.Citation;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Vertex AI Search 결과 캐시.
+ * 쿼리 재작성은 temperature 0이라 결정적이므로 같은 검색어가 자주 반복된다.
+ * (dataStoreId, query, k)를 키로 파싱된 Citation 목록을 저장하고, 같은 키의 동시 검색은 한 번의 호출로 합친다.
+ * <p>
+ * app.vertex.cache.stale-while-revalidate=true면 ttl이 지난 결과도 stale-seconds 동안은 즉시 반환하고
+ * 백그라운드에서 새로 검색해 갱신한다. (인기 검색어는 검색 지연이 사실상 0)
+ */
+@Component
+public class SearchResultCache {
+
+    private final ReactiveCache<String, List<Citation>> cache;
+    private final boolean staleWhileRevalidate;
+    private final Duration freshFor;
+
+    public SearchResultCache(AppProperties props, MeterRegistry registry) {
+        var cfg = props.getVertex().getCache();
+        this.staleWhileRevalidate = cfg.isStaleWhileRevalidate();
+        this.freshFor = Duration.ofSeconds(cfg.getTtlSeconds());
+        // SWR 모드에서는 stale 구간까지 항목을 보관해야 하므로 ttl을 늘린다.
+        Duration ttl = staleWhileRevalidate ? freshFor.plusSeconds(cfg.getStaleSeconds()) : freshFor;
+        this.cache = new ReactiveCache<>("vertex-search", cfg.getMaxSize(), ttl, registry);
+    }
+
+    /**
+     * @param dataStoreId 검색 대상 데이터 스토어 (다른 스토어 결과가 섞이지 않도록 키에 포함)
+     * @param query       검색어
+     * @param k           결과 개수
+     * @param upstream    캐시 미스/갱신 시 실행할 실제 검색 호출
+     */
+    public Mono<List<Citation>> get(String dataStoreId, String query, int k, Supplier<Mono<List<Citation>>> upstream) {
+        String key = dataStoreId + "|" + k + "|" + query.strip();
+        return staleWhileRevalidate
+                ? cache.getStaleWhileRevalidate(key, freshFor, upstream)
+                : cache.get(key, upstream);
+    }
+}
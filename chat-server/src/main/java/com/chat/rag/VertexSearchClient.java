@@ -1,5 +1,6 @@
 package com.chat.rag;
 
+import com.chat.common.resilience.UpstreamGuards;
 import com.chat.config.AppProperties;
 import com.chat.rag.model.Citation;
 import lombok.RequiredArgsConstructor;
@@ -10,7 +11,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -29,6 +29,10 @@ public class VertexSearchClient implements SearchClient {
     private final WebClient vertexWebClient;
     // application.yml 등에서 Vertex 관련 설정(프로젝트 ID 등)을 가져온다.
     private final AppProperties props;
+    // (dataStoreId, query, k) 기준 검색 결과 캐시 (동시 요청 병합 포함)
+    private final SearchResultCache cache;
+    // 서킷 브레이커 + 적응형 타임아웃 + 헤지 (app.resilience.clients.vertex)
+    private final UpstreamGuards guards;
 
     /**
      * Vertex AI Search에 검색 쿼리를 비동기적으로 전송하고,
@@ -40,13 +44,27 @@ public class VertexSearchClient implements SearchClient {
      */
     @Override
     public Mono<List<Citation>> search(String query, int topK) {
+        // topK 값 보정 (1 ~ 50 사이)
+        int k = Math.max(1, Math.min(topK, 50));
+        // 같은 (dataStoreId, query, k)는 캐시에서 재사용하고, 미스일 때만 실제 검색
+        // 검색은 멱등이므로 느린 응답에는 헤지 요청을 보낼 수 있다.
+        return cache.get(props.getVertex().getDataStoreId(), query, k,
+                () -> guards.get("vertex").callHedged(() -> callSearch(query, k)));
+    }
+
+    /**
+     * 실제 Vertex AI Search API 호출 (캐시를 거치지 않음)
+     *
+     * @param query 검색할 질의어
+     * @param k     가져올 최대 결과 개수 (보정된 값)
+     */
+    private Mono<List<Citation>> callSearch(String query, int k) {
         // 1. API 경로(path) 동적 구성
         String path = String.format(
                 "/v1/projects/%s/locations/%s/collections/default_collection/dataStores/%s/servingConfigs/default_search:search",
                 props.getVertex().getProjectId(), props.getVertex().getLocation(), props.getVertex().getDataStoreId());
 
-        // 2. topK 값 보정 (1 ~ 50 사이)
-        int k = Math.max(1, Math.min(topK, 50));
+        // 2. topK 값은 search()에서 1 ~ 50 사이로 보정되어 k로 들어온다.
 
         // 3. API 요청 본문(body) 생성. Map.of()는 변경 불가능한 Map을 만든다.
         Map<String, Object> body = Map.of("query", query, "pageSize", k); // topK 대신 k 사용 권장
@@ -78,8 +96,7 @@ public class VertexSearchClient implements SearchClient {
                 .doOnError(e -> log.error("[VertexSearch] error", e))
                 // 10. (부수 효과) 파이프라인이 "종료"될 때(성공/실패/취소 무관) 로그
                 .doFinally(sig -> log.info("[VertexSearch] done: {}", sig))
-                // 11. 타임아웃 설정: 5초 이상 응답 없으면 에러 발생
-                .timeout(Duration.ofSeconds(5))
+                // 11. 타임아웃은 UpstreamGuard가 최근 지연을 보고 정한다. (최대 max-timeout-ms = 5초)
                 // 12. [map 동기] 최종적으로 응답 Map을 Citation 리스트로 변환
                 .map(this::toCitations);
     }
@@ -1,14 +1,24 @@
 package com.chat.stt;
 
+import com.chat.audio.AudioUtils;
+import com.chat.common.resilience.UpstreamGuards;
 import com.chat.config.AppProperties;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -17,9 +27,51 @@ public class NaverSttClient implements SttClient{
     @Qualifier("sttWebClient")
     private final WebClient sttWebClient;
     private final AppProperties props;
+    private final UpstreamGuards guards;
 
-    /** WAV(PCM s16le/16k/mono) 바이트를 짧은 음성 인식 API에 전송 */
+    /**
+     * WAV(PCM s16le/16k/mono) 바이트를 짧은 음성 인식 API에 전송
+     * 서킷 브레이커/적응형 타임아웃만 적용한다. (요청이 크고 과금되므로 헤지하지 않음)
+     * 인식 시간은 오디오 길이에 비례하므로 타임아웃은 오디오 1초당 지연으로 학습하고 길이만큼 늘린다.
+     */
     public Mono<String> transcribe(byte[] wavBytes, String csrLang) {
+        return guards.get("stt").call(() -> callStt(BodyInserters.fromValue(wavBytes), wavBytes.length, csrLang),
+                audioSeconds(wavBytes.length));
+    }
+
+    /**
+     * 풀 버퍼에 담긴 WAV를 복사 없이 보낸다.
+     * 요청을 실제로 쓸 때마다 독립된 읽기 위치를 가진 retainedSlice를 만들어 넘기고, 인코더가 전송 후 release 한다.
+     * (요청 전에 취소/거절되면 slice를 만들지 않으므로 누수가 없다. 원본 wav는 호출자가 release)
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public Mono<String> transcribe(DataBuffer wav, String csrLang) {
+        return guards.get("stt").call(() -> callStt(BodyInserters.fromDataBuffers(
+                Mono.fromSupplier(() -> wav.retainedSlice(wav.readPosition(), wav.readableByteCount()))),
+                wav.readableByteCount(), csrLang), audioSeconds(wav.readableByteCount()));
+    }
+
+    /** WAV(PCM s16le/16k/mono) 크기로 본 오디오 길이(초) - STT guard의 타임아웃 단위 */
+    private static double audioSeconds(long wavBytes) {
+        return Math.max(0, wavBytes - AudioUtils.WAV_HEADER_BYTES) / (2.0 * AudioUtils.STT_SAMPLE_RATE);
+    }
+
+    /**
+     * 구간별 인식 요청을 app.stt.long-form.concurrency개까지 동시에 보내고, 응답은 구간 순서대로 내보낸다.
+     * 구간마다 서킷 브레이커/적응형 타임아웃을 따로 적용한다.
+     */
+    @Override
+    public Flux<String> transcribeSegments(List<DataBuffer> segments, String csrLang) {
+        int concurrency = Math.max(1, props.getStt().getLongForm().getConcurrency());
+        return Flux.fromIterable(segments)
+                .flatMapSequential(seg -> transcribe(seg, csrLang)
+                        .doFinally(sig -> DataBufferUtils.release(seg)), concurrency)
+                // 취소/오류로 요청을 보내지 못한 구간 정리
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private Mono<String> callStt(BodyInserter<?, ? super ClientHttpRequest> body, long contentLength, String csrLang) {
         var stt = props.getStt();
         System.out.println(stt);
 
@@ -31,9 +83,10 @@ public class NaverSttClient implements SttClient{
                 .headers(header->{
                     header.set("X-NCP-APIGW-API-KEY", stt.getApiKey());
                     header.set("X-NCP-APIGW-API-KEY-ID", stt.getApiKeyId());
+                    header.setContentLength(contentLength); // 버퍼 본문도 chunked가 아니라 길이를 알려서 보낸다
                 })
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .bodyValue(wavBytes)
+                .body(body)
                 .retrieve()
                 .bodyToMono(String.class)
                 .doOnNext(res -> log.info("[STT] response: {}", res));
@@ -1,8 +1,23 @@
 package com.chat.stt;
 
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface SttClient {
     Mono<String> transcribe(byte[] audio, String csrLang);
 
+    /**
+     * 버퍼를 그대로 요청 본문으로 보낸다. audio는 호출자 소유로 두고 release 하지 않는다.
+     */
+    Mono<String> transcribe(DataBuffer audio, String csrLang);
+
+    /**
+     * 긴 음성을 나눈 구간들(각각 WAV)을 동시에 인식하고, 구간 순서대로 응답을 내보낸다. (앞 구간이 끝나는 대로 바로)
+     * 구간 버퍼는 넘겨받아 인식이 끝나거나 취소되면 release 한다.
+     */
+    Flux<String> transcribeSegments(List<DataBuffer> segments, String csrLang);
+
 }
@@ -1,5 +1,6 @@
 package com.chat.trans;
 
+import com.chat.common.resilience.UpstreamGuards;
 import com.chat.config.AppProperties;
 import jakarta.annotation.Nullable;
 import lombok.RequiredArgsConstructor;
@@ -27,7 +28,14 @@ public class NaverPapagoTransClient {
     private final WebClient transWebClient;
 
     private final AppProperties props;
+    private final TranslationCache cache;
+    private final UpstreamGuards guards;
 
+    /**
+     * 번역 요청. 같은 (source, target, 텍스트) 조합은 TranslationCache에서 재사용하고,
+     * 캐시 미스일 때만 Papago API를 호출한다.
+     * 번역은 멱등이므로 느린 응답에는 헤지 요청을 보낼 수 있다. (app.resilience.clients.papago)
+     */
     public Mono<String> translate(@Nullable String source, String target, String text){
 
         if (target == null || target.isBlank()) {
@@ -39,6 +47,14 @@ public class NaverPapagoTransClient {
         if (java.util.Objects.equals(source, target)) {
             return Mono.just(text);
         }
+        return cache.get(source, target, text,
+                () -> guards.get("papago").callHedged(() -> callPapago(source, target, text)));
+    }
+
+    /**
+     * 실제 Papago API 호출 (캐시를 거치지 않음)
+     */
+    private Mono<String> callPapago(@Nullable String source, String target, String text) {
         var trans = props.getTrans();
 
 //        var body = BodyInserters.fromFormData("source", source)
@@ -0,0 +1,71 @@
+package com.chat.trans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LLM 스트리밍 조각(Delta)을 받아 번역하기 좋은 "문장/문단" 단위로 다시 묶는 버퍼.
+ * 토큰 단위로 Papago를 호출하면 문맥이 끊겨 번역 품질이 떨어지고 호출 수도 폭증하므로,
+ * 줄바꿈이나 문장 종결 부호(. ? ! 。) 뒤의 공백을 경계로 삼아 최소 길이 이상 모였을 때만 잘라낸다.
+ * <p>
+ * 구독(스트림) 하나당 인스턴스 하나를 사용한다. (thread-safe 하지 않음)
+ */
+final class SentenceChunker {
+
+    private final int minChars;
+    private final StringBuilder buf = new StringBuilder();
+
+    SentenceChunker(int minChars) {
+        this.minChars = Math.max(1, minChars);
+    }
+
+    /**
+     * 조각을 버퍼에 붙이고, 잘라낼 수 있는 완성된 청크들을 반환한다.
+     *
+     * @param delta LLM이 보낸 텍스트 조각
+     * @return 완성된 청크 목록 (없으면 빈 리스트)
+     */
+    List<String> feed(String delta) {
+        buf.append(delta);
+        List<String> out = new ArrayList<>(1);
+        int cut;
+        while ((cut = findCut()) > 0) {
+            out.add(buf.substring(0, cut));
+            buf.delete(0, cut);
+        }
+        return out;
+    }
+
+    /**
+     * 스트림 종료 시 남아 있는 꼬리 텍스트를 반환한다.
+     */
+    String flush() {
+        String rest = buf.toString();
+        buf.setLength(0);
+        return rest;
+    }
+
+    /**
+     * 최소 길이 이후의 첫 경계 위치(경계 뒤 공백까지 포함한 끝 인덱스)를 찾는다.
+     * 문단 구분(빈 줄)은 길이와 관계없이 경계로 본다. 경계가 없으면 0.
+     */
+    private int findCut() {
+        int n = buf.length();
+        for (int i = 0; i < n - 1; i++) {
+            char c = buf.charAt(i);
+            char next = buf.charAt(i + 1);
+            boolean paragraph = c == '\n' && next == '\n';
+            boolean sentence = c == '\n'
+                    || ((c == '.' || c == '?' || c == '!' || c == '。') && Character.isWhitespace(next));
+            if (paragraph || (sentence && i + 1 >= minChars)) {
+                // 경계 뒤에 이어지는 공백/줄바꿈까지 이번 청크에 포함시켜 다음 청크가 공백으로 시작하지 않게 한다.
+                int end = i + 1;
+                while (end < n && Character.isWhitespace(buf.charAt(end))) end++;
+                // 공백이 버퍼 끝까지 이어지면 아직 더 올 수 있으므로 다음 조각을 기다린다.
+                if (end == n) return 0;
+                return end;
+            }
+        }
+        return 0;
+    }
+}
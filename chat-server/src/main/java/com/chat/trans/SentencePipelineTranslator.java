@@ -0,0 +1,74 @@
+package com.chat.trans;
+
+import com.chat.config.AppProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+
+/**
+ * 스트리밍 중인 LLM 답변을 문장 단위로 잘라 "생성과 동시에" 번역하는 파이프라인 단계.
+ * <p>
+ * 기존에는 한국어 답변이 모두 만들어진 뒤 한 번에 Papago를 호출했기 때문에,
+ * 번역 지연이 LLM 생성 지연 뒤에 그대로 더해졌다.
+ * 이 단계는 SentenceChunker로 문장이 완성되는 즉시 번역 요청을 보내고(제한된 동시성),
+ * flatMapSequential로 결과 순서를 원문 순서대로 유지한 채 하나씩 흘려보낸다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SentencePipelineTranslator {
+
+    private final NaverPapagoTransClient transClient;
+    private final AppProperties props;
+
+    /**
+     * @param deltas 원문(source) 텍스트 조각 스트림
+     * @param source 원문 언어 (Papago 코드, 예: "ko")
+     * @param target 번역 대상 언어 (Papago 코드, 예: "en")
+     * @return 번역된 청크 스트림 (원문 순서 유지)
+     */
+    public Flux<String> translate(Flux<String> deltas, String source, String target) {
+        // 같은 언어면 번역할 필요 없이 그대로 흘려보낸다.
+        if (Objects.equals(source, target)) return deltas;
+
+        var pipeline = props.getTrans().getPipeline();
+
+        return Flux.defer(() -> {
+                    // 구독마다 독립적인 버퍼를 사용
+                    SentenceChunker chunker = new SentenceChunker(pipeline.getMinChunkChars());
+                    return deltas
+                            .concatMapIterable(chunker::feed)
+                            .concatWith(Mono.fromSupplier(chunker::flush));
+                })
+                .filter(chunk -> !chunk.isEmpty())
+                // 동시성 제한 + 순서 보장: 앞 문장 번역이 늦어도 뒤 문장 번역은 미리 진행된다.
+                .flatMapSequential(chunk -> translateChunk(chunk, source, target), pipeline.getConcurrency());
+    }
+
+    /**
+     * 청크 하나를 번역한다. Papago는 앞뒤 공백/줄바꿈을 지우므로, 번역 전후로 보존해 다시 붙인다.
+     * 청크 번역이 실패하면 전체 답변을 버리지 않고 원문 청크로 대체한다.
+     */
+    private Mono<String> translateChunk(String chunk, String source, String target) {
+        int start = 0;
+        int end = chunk.length();
+        while (start < end && Character.isWhitespace(chunk.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(chunk.charAt(end - 1))) end--;
+        if (start == end) return Mono.just(chunk);
+
+        String lead = chunk.substring(0, start);
+        String core = chunk.substring(start, end);
+        String tail = chunk.substring(end);
+
+        return transClient.translate(source, target, core)
+                .map(t -> lead + t + tail)
+                .onErrorResume(e -> {
+                    log.warn("[TRANS] chunk translate failed, fallback to source text: {}", e.toString());
+                    return Mono.just(chunk);
+                });
+    }
+}
@@ -0,0 +1,111 @@
+package com.chat.trans;
+
+import com.chat.common.cache.ReactiveCache;
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Papago 번역 결과 캐시.
+ * 인사말, 자주 묻는 질문, FAQ형 답변처럼 같은 문장이 반복 번역되는 경우가 많아,
+ * (source, target, 정규화된 텍스트의 해시)를 키로 결과를 재사용해 유료 API 호출을 줄인다.
+ * <p>
+ * 1차: 프로세스 내 캐시 (크기/TTL 제한, 동일 키 동시 미스 병합)
+ * 2차: Redis (선택, app.trans.cache.redis-enabled=true) - 여러 chat 파드가 결과를 공유
+ */
+@Slf4j
+@Component
+public class TranslationCache {
+
+    private static final String REDIS_PREFIX = "trans:cache:";
+
+    private final ReactiveCache<String, String> local;
+    private final ReactiveStringRedisTemplate redis; // 비활성화 시 null
+    private final Duration redisTtl;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+
+    public TranslationCache(AppProperties props,
+                            MeterRegistry registry,
+                            ObjectProvider<ReactiveStringRedisTemplate> redisProvider) {
+        var cfg = props.getTrans().getCache();
+        this.local = new ReactiveCache<>("translation", cfg.getMaxSize(),
+                Duration.ofSeconds(cfg.getTtlSeconds()), registry);
+        this.redis = cfg.isRedisEnabled() ? redisProvider.getIfAvailable() : null;
+        this.redisTtl = Duration.ofSeconds(cfg.getRedisTtlSeconds());
+        this.redisHits = Counter.builder("chat.cache.hits")
+                .tag("cache", "translation").tag("tier", "redis").register(registry);
+        this.redisMisses = Counter.builder("chat.cache.misses")
+                .tag("cache", "translation").tag("tier", "redis").register(registry);
+        if (cfg.isRedisEnabled() && redis == null) {
+            log.warn("[TRANS-CACHE] redis tier enabled but no ReactiveStringRedisTemplate available, using local tier only");
+        }
+    }
+
+    /**
+     * 캐시된 번역이 있으면 반환하고, 없으면 upstream(Papago 호출)을 실행해 결과를 저장한다.
+     *
+     * @param source   원문 언어
+     * @param target   번역 대상 언어
+     * @param text     원문
+     * @param upstream 캐시 미스 시 실행할 실제 번역 호출
+     */
+    public Mono<String> get(String source, String target, String text, Supplier<Mono<String>> upstream) {
+        String key = key(source, target, text);
+        return local.get(key, () -> redis == null ? upstream.get() : loadViaRedis(key, upstream));
+    }
+
+    /**
+     * Redis에서 먼저 찾고, 없으면 Papago를 호출한 뒤 Redis에 비동기로 기록한다.
+     * Redis 장애는 캐시 미스로 취급해 번역 자체는 항상 진행되도록 한다.
+     */
+    private Mono<String> loadViaRedis(String key, Supplier<Mono<String>> upstream) {
+        String redisKey = REDIS_PREFIX + key;
+        return redis.opsForValue().get(redisKey)
+                .doOnNext(v -> redisHits.increment())
+                .onErrorResume(e -> {
+                    log.warn("[TRANS-CACHE] redis get failed: {}", e.toString());
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    redisMisses.increment();
+                    return upstream.get()
+                            .doOnNext(v -> redis.opsForValue().set(redisKey, v, redisTtl)
+                                    .subscribe(ok -> { }, e -> log.warn("[TRANS-CACHE] redis set failed: {}", e.toString())));
+                }));
+    }
+
+    /**
+     * 캐시 키: source|target|sha256(정규화된 텍스트)
+     * 정규화: 유니코드 NFC + 앞뒤 공백 제거 + 연속 공백/탭을 한 칸으로
+     * (줄바꿈은 마크다운 구조라서 번역 결과에도 영향을 주므로 그대로 둔다)
+     */
+    static String key(String source, String target, String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC)
+                .strip()
+                .replaceAll("[ \\t]+", " ");
+        return source + "|" + target + "|" + sha256(normalized);
+    }
+
+    private static String sha256(String s) {
+        try {
+            var md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.chat.usage;
+
+import com.common.security.GatewayUserDetails;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.annotation.Nullable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/chat/usage")
+public class UsageController {
+    private final UsageLedger ledger;
+
+    @GetMapping
+    @Operation(
+            summary = "LLM 토큰 사용량 조회",
+            description = "사용자의 기간별(시간 단위) LLM 토큰 사용량을 조회합니다. 기본 기간은 최근 24시간입니다."
+    )
+    public Mono<UsageSummary> getUsage(
+            @AuthenticationPrincipal GatewayUserDetails principal,
+            @RequestHeader(value = "X-User-Id", required = false) String userIdFromHeader,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        String userId = resolveUserId(principal, userIdFromHeader);
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofHours(24));
+        if (start.isAfter(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from은 to보다 이전이어야 합니다");
+        }
+        return ledger.summary(userId, start, end);
+    }
+
+    private String resolveUserId(@Nullable GatewayUserDetails principal, @Nullable String headerUserId) {
+        if (principal != null && principal.getUserId() != null) {
+            return String.valueOf(principal.getUserId());
+        }
+        if (headerUserId != null && !headerUserId.isBlank()) {
+            return headerUserId.trim();
+        }
+
+        throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "사용자 식별자 누락");
+    }
+}
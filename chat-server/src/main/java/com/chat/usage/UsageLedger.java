@@ -0,0 +1,363 @@
+package com.chat.usage;
+
+import com.chat.common.cache.ReactiveCache;
+import com.chat.config.AppProperties;
+import com.chat.llm.model.Usage;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * LLM 토큰 사용량 장부.
+ * <p>
+ * - trace(세션)별: 마지막 답변의 Usage와 사용자 ID. 크기/TTL 제한 캐시라 끊긴 세션 항목은 자동으로 사라진다.
+ *   (기존 DefaultLlmClient.usageMap은 세션이 끝나도 지우지 않아 파드가 오래 떠 있을수록 계속 커졌다)
+ * - 사용자별/모델별: 시간(hour) 단위 버킷에 LongAdder로 누적한다. (여러 스레드가 동시에 더해도 경합이 적다)
+ * - 주기적으로(flush-interval-seconds) 누적분을 Firestore(collection)에 increment로 기록하고 버킷을 비운다.
+ *   지난 시간의 버킷은 기록 후 제거하므로 메모리에는 현재 시간 + 기록 대기분만 남는다.
+ * - 지표: chat.llm.tokens (tag: model, kind=prompt|completion|cached)
+ */
+@Slf4j
+@Component
+public class UsageLedger {
+
+    private static final String SCOPE_USER = "user";
+    private static final String SCOPE_MODEL = "model";
+
+    private final AppProperties.Usage cfg;
+    private final Firestore db; // 비활성화/미설정 시 null
+    private final MeterRegistry registry;
+
+    // traceId -> 마지막 답변 사용량 / 사용자 ID
+    private final ReactiveCache<String, Usage> lastUsage;
+    private final ReactiveCache<String, String> traceUsers;
+    // "scope|key|hourEpochSeconds" -> 기록 대기 중인 누적치
+    private final ConcurrentHashMap<BucketKey, Totals> pending = new ConcurrentHashMap<>();
+    private final Map<String, Counter[]> modelCounters = new ConcurrentHashMap<>();
+    // 사용량이 기록될 때마다 (사용자 ID, Usage)로 호출된다. (예: 사용자별 토큰 버킷 차감)
+    private final List<BiConsumer<String, Usage>> listeners = new CopyOnWriteArrayList<>();
+    private Disposable flusher;
+
+    public UsageLedger(AppProperties props, MeterRegistry registry, ObjectProvider<Firestore> firestore) {
+        this.cfg = props.getUsage();
+        this.registry = registry;
+        this.db = cfg.isFlushEnabled() ? firestore.getIfAvailable() : null;
+        Duration ttl = Duration.ofSeconds(cfg.getTraceTtlSeconds());
+        this.lastUsage = new ReactiveCache<>("usage-trace", cfg.getTraceMaxSize(), ttl, registry);
+        this.traceUsers = new ReactiveCache<>("usage-trace-user", cfg.getTraceMaxSize(), ttl, registry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (db == null) return;
+        Duration every = Duration.ofSeconds(cfg.getFlushIntervalSeconds());
+        this.flusher = Flux.interval(every, every, Schedulers.boundedElastic())
+                .concatMap(t -> flush().onErrorResume(e -> Mono.empty()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) flusher.dispose();
+        if (db != null) flush().block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * trace(세션)와 사용자를 연결한다. 이후 이 trace로 기록되는 사용량은 이 사용자에게 집계된다.
+     */
+    public void bindUser(String traceId, String userId) {
+        traceUsers.put(traceId, userId);
+    }
+
+    /**
+     * 답변 생성 호출의 사용량을 기록한다. (lastUsage로 조회 가능)
+     */
+    public void record(String traceId, String model, Usage usage) {
+        lastUsage.put(traceId, usage);
+        accumulate(traceId, model, usage);
+    }
+
+    /**
+     * 보조 호출(쿼리 재작성 등)의 사용량을 기록한다. 집계에만 반영하고 lastUsage는 바꾸지 않는다.
+     */
+    public void recordAuxiliary(String traceId, String model, Usage usage) {
+        accumulate(traceId, model, usage);
+    }
+
+    /**
+     * 사용량 기록 알림을 등록한다. 리스너는 LLM 응답을 처리하는 스레드에서 바로 호출되므로 가볍게 유지해야 한다.
+     */
+    public void addListener(BiConsumer<String, Usage> listener) {
+        listeners.add(listener);
+    }
+
+    @Nullable
+    public Usage lastUsage(String traceId) {
+        return lastUsage.getIfPresent(traceId);
+    }
+
+    private void accumulate(String traceId, String model, Usage usage) {
+        if (usage == null) return;
+        String bound = traceUsers.getIfPresent(traceId);
+        String user = bound == null ? traceId : bound;
+        long hour = Instant.now().truncatedTo(ChronoUnit.HOURS).getEpochSecond();
+        addPending(new BucketKey(SCOPE_USER, user, hour), usage, null);
+        addPending(new BucketKey(SCOPE_MODEL, model, hour), usage, null);
+
+        Counter[] c = modelCounters.computeIfAbsent(model, m -> new Counter[]{
+                Counter.builder("chat.llm.tokens").tag("model", m).tag("kind", "prompt").register(registry),
+                Counter.builder("chat.llm.tokens").tag("model", m).tag("kind", "completion").register(registry),
+                Counter.builder("chat.llm.tokens").tag("model", m).tag("kind", "cached").register(registry)});
+        c[0].increment(usage.promptTokens());
+        c[1].increment(usage.completionTokens());
+        c[2].increment(usage.cachedPromptTokens());
+
+        for (var l : listeners) l.accept(user, usage);
+    }
+
+    /**
+     * 기록 대기 중인 누적치를 Firestore에 increment로 반영한다.
+     * 실패하면 뺐던 값을 다시 더해 두어 다음 주기에 재시도한다.
+     */
+    Mono<Void> flush() {
+        if (db == null || pending.isEmpty()) return Mono.empty();
+        long currentHour = Instant.now().truncatedTo(ChronoUnit.HOURS).getEpochSecond();
+
+        Map<BucketKey, long[]> drained = new HashMap<>();
+        pending.forEach((key, totals) -> {
+            long[] v;
+            if (key.hour() < currentHour) {
+                // 지난 시간 버킷은 맵에서 먼저 빼고 봉인한다. 이미 이 버킷을 잡은 스레드의 add는
+                // 봉인 전이면 여기서 함께 빠지고, 봉인 후면 실패해 addPending이 새 버킷에 다시 더한다.
+                pending.remove(key, totals);
+                v = totals.retire();
+            } else {
+                v = totals.drain();
+            }
+            if (Totals.isNonZero(v)) drained.put(key, v);
+        });
+        if (drained.isEmpty()) return Mono.empty();
+
+        WriteBatch batch = db.batch();
+        drained.forEach((key, v) -> {
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("scope", key.scope());
+            doc.put("key", key.key());
+            doc.put("hour", key.hour());
+            doc.put("requests", FieldValue.increment(v[0]));
+            doc.put("promptTokens", FieldValue.increment(v[1]));
+            doc.put("completionTokens", FieldValue.increment(v[2]));
+            doc.put("totalTokens", FieldValue.increment(v[3]));
+            doc.put("cachedPromptTokens", FieldValue.increment(v[4]));
+            batch.set(db.collection(cfg.getCollection()).document(key.docId()), doc, SetOptions.merge());
+        });
+
+        return toMono(batch.commit())
+                .doOnNext(r -> log.debug("[USAGE] flushed {} buckets", drained.size()))
+                .doOnError(e -> {
+                    log.warn("[USAGE] flush failed, will retry: {}", e.toString());
+                    drained.forEach((key, v) -> addPending(key, null, v));
+                })
+                .then();
+    }
+
+    /**
+     * 사용자의 기간별 토큰 사용량. Firestore에 기록된 값 + 아직 기록되지 않은 값
+     */
+    public Mono<UsageSummary> summary(String userId, Instant from, Instant to) {
+        Instant fromHour = from.truncatedTo(ChronoUnit.HOURS);
+        Instant toHour = to.truncatedTo(ChronoUnit.HOURS);
+        long fromSec = fromHour.getEpochSecond();
+        long toSec = toHour.getEpochSecond();
+
+        Mono<Map<Long, UsageSummary.Tokens>> stored = db == null
+                ? Mono.just(Map.of())
+                : toMono(db.collection(cfg.getCollection())
+                        .whereEqualTo("scope", SCOPE_USER)
+                        .whereEqualTo("key", userId)
+                        .whereGreaterThanOrEqualTo("hour", fromSec)
+                        .whereLessThanOrEqualTo("hour", toSec)
+                        .get())
+                .map(UsageLedger::toHourly);
+
+        return stored.map(byHour -> {
+            TreeMap<Long, UsageSummary.Tokens> merged = new TreeMap<>(byHour);
+            pending.forEach((key, totals) -> {
+                if (key.scope().equals(SCOPE_USER) && key.key().equals(userId)
+                        && key.hour() >= fromSec && key.hour() <= toSec) {
+                    merged.merge(key.hour(), totals.snapshot(), UsageSummary.Tokens::plus);
+                }
+            });
+            List<UsageSummary.Hourly> hourly = new ArrayList<>();
+            UsageSummary.Tokens total = UsageSummary.Tokens.ZERO;
+            for (var e : merged.entrySet()) {
+                hourly.add(new UsageSummary.Hourly(Instant.ofEpochSecond(e.getKey()), e.getValue()));
+                total = total.plus(e.getValue());
+            }
+            return new UsageSummary(userId, fromHour, toHour, total, hourly);
+        });
+    }
+
+    private static Map<Long, UsageSummary.Tokens> toHourly(QuerySnapshot snap) {
+        Map<Long, UsageSummary.Tokens> out = new HashMap<>();
+        snap.getDocuments().forEach(d -> out.put(longOf(d.get("hour")), new UsageSummary.Tokens(
+                longOf(d.get("requests")), longOf(d.get("promptTokens")), longOf(d.get("completionTokens")),
+                longOf(d.get("totalTokens")), longOf(d.get("cachedPromptTokens")))));
+        return out;
+    }
+
+    private static long longOf(Object v) {
+        return v instanceof Number n ? n.longValue() : 0L;
+    }
+
+    /**
+     * 버킷에 사용량(usage) 또는 누적치(values)를 더한다. 봉인된 버킷을 잡았으면 새 버킷으로 다시 시도한다.
+     */
+    private void addPending(BucketKey key, @Nullable Usage usage, @Nullable long[] values) {
+        while (true) {
+            Totals totals = pending.computeIfAbsent(key, k -> new Totals());
+            if (usage != null ? totals.add(usage) : totals.add(values)) return;
+        }
+    }
+
+    private static <T> Mono<T> toMono(ApiFuture<T> future) {
+        return Mono.create(sink -> ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+            @Override
+            public void onFailure(Throwable t) {
+                sink.error(t);
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                sink.success(result);
+            }
+        }, MoreExecutors.directExecutor()));
+    }
+
+    /**
+     * 집계 버킷 키 (scope=user|model, key=사용자 ID 또는 모델명, hour=시간 시작 epoch seconds)
+     */
+    private record BucketKey(String scope, String key, long hour) {
+        String docId() {
+            // Firestore 문서 ID에는 '/'를 쓸 수 없다.
+            return scope + ":" + key.replace('/', '_') + ":" + hour;
+        }
+    }
+
+    /**
+     * 버킷 하나의 누적치 (requests, prompt, completion, total, cached)
+     * <p>
+     * add는 읽기 잠금으로 동시에 더하고, drain/retire는 쓰기 잠금으로 다섯 값을 한 번에 뺀다.
+     * (필드마다 따로 빼면 그 사이에 들어온 기록이 requests와 토큰으로 갈라진다)
+     * retire 후에는 add가 false를 돌려주므로 호출한 쪽이 새 버킷에 다시 더한다.
+     */
+    private static final class Totals {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder prompt = new LongAdder();
+        private final LongAdder completion = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAdder cached = new LongAdder();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean retired; // lock으로 보호
+
+        boolean add(Usage u) {
+            lock.readLock().lock();
+            try {
+                if (retired) return false;
+                requests.increment();
+                prompt.add(u.promptTokens());
+                completion.add(u.completionTokens());
+                total.add(u.totalTokens());
+                cached.add(u.cachedPromptTokens());
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean add(long[] v) {
+            lock.readLock().lock();
+            try {
+                if (retired) return false;
+                requests.add(v[0]);
+                prompt.add(v[1]);
+                completion.add(v[2]);
+                total.add(v[3]);
+                cached.add(v[4]);
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long[] drain() {
+            lock.writeLock().lock();
+            try {
+                return sumThenReset();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * 남은 값을 빼고 봉인한다. 이후의 add는 실패한다.
+         */
+        long[] retire() {
+            lock.writeLock().lock();
+            try {
+                retired = true;
+                return sumThenReset();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        static boolean isNonZero(long[] v) {
+            for (long x : v) {
+                if (x != 0) return true;
+            }
+            return false;
+        }
+
+        private long[] sumThenReset() {
+            return new long[]{requests.sumThenReset(), prompt.sumThenReset(), completion.sumThenReset(),
+                    total.sumThenReset(), cached.sumThenReset()};
+        }
+
+        UsageSummary.Tokens snapshot() {
+            return new UsageSummary.Tokens(requests.sum(), prompt.sum(), completion.sum(), total.sum(), cached.sum());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.chat.usage;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 사용자별 기간 토큰 사용량 (GET /api/chat/usage 응답)
+ *
+ * @param userId 사용자 ID
+ * @param from   조회 시작 (시간 단위로 내림)
+ * @param to     조회 끝 (포함, 시간 단위)
+ * @param total  기간 합계
+ * @param hourly 시간대별 사용량 (시간 오름차순, 사용량이 있는 시간만)
+ */
+public record UsageSummary(String userId, Instant from, Instant to, Tokens total, List<Hourly> hourly) {
+
+    /**
+     * 토큰 합계. cachedPromptTokens는 promptTokens 중 컨텍스트 캐시에서 읽은 부분이다.
+     */
+    public record Tokens(long requests, long promptTokens, long completionTokens, long totalTokens, long cachedPromptTokens) {
+        static final Tokens ZERO = new Tokens(0, 0, 0, 0, 0);
+
+        Tokens plus(Tokens o) {
+            return new Tokens(requests + o.requests, promptTokens + o.promptTokens,
+                    completionTokens + o.completionTokens, totalTokens + o.totalTokens,
+                    cachedPromptTokens + o.cachedPromptTokens);
+        }
+    }
+
+    public record Hourly(Instant hour, Tokens tokens) {
+    }
+}
@@ -0,0 +1,125 @@
+package com.chat.audio;
+
+import com.chat.audio.model.AudioMeta;
+import com.chat.common.ws.SessionRegistry;
+import com.chat.common.ws.WsEmitter;
+import com.chat.config.AppProperties;
+import com.chat.conversation.service.ConversationService;
+import com.chat.pipeline.LlmFirstRagOrchestrator;
+import com.chat.pipeline.RagAdmission;
+import com.chat.stt.NaverSttClient;
+import com.chat.trans.NaverPapagoTransClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 스트리밍 변환이 깨져 일괄 변환으로 대체될 때, VAD가 이미 넘긴 발화를 다시 인식하지 않는지 본다.
+ * 샘플(audio/sample-48k-mono.webm)은 0.3~1.5초 소리, 0.4초 무음, 1.9~2.8초 처프다.
+ */
+class AudioProcessorTest {
+
+    private static final String SESSION = "s1";
+    private static final int CHUNK_BYTES = 333;
+
+    @Test
+    void batchFallbackAfterAutoUtteranceOnlyRecognizesTheRest() throws Exception {
+        AppProperties props = new AppProperties();
+        props.getAudio().getVad().setEndSilenceMs(300); // 0.4초 쉼에서 첫 발화를 끊는다
+        props.getAudio().getStreaming().setMaxPendingChunks(4);
+        props.getStt().getSpeculative().setEnabled(false);
+
+        List<Integer> sttSamples = new CopyOnWriteArrayList<>();
+        AudioProcessor processor = processor(props, sttSamples);
+
+        byte[] webm = sample();
+        int chunks = (webm.length + CHUNK_BYTES - 1) / CHUNK_BYTES;
+        // 처프 중간(약 2.2초)까지 순서대로 보내면 첫 발화가 자동으로 끝난다.
+        int sent = chunks * 7 / 10;
+        for (int seq = 0; seq < sent; seq++) processor.onChunk(SESSION, seq, chunk(webm, seq), 0);
+        awaitSize(sttSamples, 1);
+
+        // seq 하나가 빠진 채 max-pending-chunks를 넘게 쌓이면 스트림이 깨진다.
+        for (int seq = sent + 1; seq < chunks; seq++) processor.onChunk(SESSION, seq, chunk(webm, seq), 0);
+
+        // 병합기는 늦게 온 청크까지 모두 갖고 있다. (세션 전체)
+        processor.processFinal(SESSION, AudioBuffers.FACTORY.wrap(webm), "audio/webm", emitter())
+                .block(Duration.ofSeconds(10));
+
+        assertThat(sttSamples).hasSize(2);
+        // 첫 발화: 0.3~1.5초 소리 + 앞뒤 여유
+        assertThat(seconds(sttSamples.get(0))).isBetween(1.0, 1.8);
+        // 나머지만 인식한다. (세션 전체를 다시 인식하면 0.1~3.0초로 첫 발화가 다시 들어간다)
+        assertThat(seconds(sttSamples.get(1))).isBetween(0.5, 1.5);
+    }
+
+    private static AudioProcessor processor(AppProperties props, List<Integer> sttSamples) {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        WsEmitter emitter = emitter();
+        SessionRegistry registry = mock(SessionRegistry.class);
+        when(registry.get(SESSION)).thenReturn(emitter);
+
+        NaverSttClient stt = mock(NaverSttClient.class);
+        when(stt.transcribe(any(DataBuffer.class), anyString())).thenAnswer(inv -> {
+            DataBuffer wav = inv.getArgument(0);
+            sttSamples.add((wav.readableByteCount() - AudioUtils.WAV_HEADER_BYTES) / 2);
+            return Mono.just("{\"text\":\"안녕하세요\"}");
+        });
+        NaverPapagoTransClient trans = mock(NaverPapagoTransClient.class);
+        when(trans.translate(any(), anyString(), anyString())).thenReturn(Mono.just("안녕하세요"));
+        LlmFirstRagOrchestrator rag = mock(LlmFirstRagOrchestrator.class);
+        when(rag.run(anyString(), anyString(), any())).thenReturn(Mono.just("답변"));
+        ConversationService conversations = mock(ConversationService.class);
+        when(conversations.createMessage(anyString(), anyString(), any())).thenReturn(Mono.empty());
+        RagAdmission admission = mock(RagAdmission.class);
+        when(admission.admit(any(), any(), any())).thenAnswer(inv -> inv.<Supplier<Mono<Void>>>getArgument(2).get());
+
+        return new AudioProcessor(registry, new AudioTranscoder(props, meters), stt, trans, props,
+                conversations, rag, admission, meters);
+    }
+
+    private static WsEmitter emitter() {
+        AudioMeta meta = new AudioMeta();
+        meta.setLang("Kor");
+        meta.setMimeType("audio/webm");
+        WsEmitter emitter = mock(WsEmitter.class);
+        when(emitter.getAttribute("audioMeta", AudioMeta.class)).thenReturn(meta);
+        when(emitter.getUserId()).thenReturn("u1");
+        return emitter;
+    }
+
+    private static DataBuffer chunk(byte[] webm, int seq) {
+        int off = seq * CHUNK_BYTES;
+        return AudioBuffers.FACTORY.wrap(java.nio.ByteBuffer.wrap(webm, off, Math.min(CHUNK_BYTES, webm.length - off)).slice());
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (list.size() < size && System.nanoTime() < deadline) Thread.sleep(10);
+        assertThat(list).hasSize(size);
+    }
+
+    private static double seconds(int samples) {
+        return (double) samples / AudioUtils.STT_SAMPLE_RATE;
+    }
+
+    private static byte[] sample() throws Exception {
+        try (InputStream in = AudioProcessorTest.class.getResourceAsStream("/audio/sample-48k-mono.webm")) {
+            assertThat(in).isNotNull();
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.chat.audio;
+
+import com.chat.config.AppProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * audio/sample-48k-mono.webm: MediaRecorder와 같은 구조(크기 미정 Segment/Cluster, 20ms Opus 프레임)의 3.2초 샘플.
+ * 0.3~1.5초 유성음 비슷한 배음, 1.9~2.8초 처프(끝 0.4초는 잡음 섞음), 나머지는 무음.
+ * <p>
+ * ffmpeg 비교는 FFMPEG_PATH(없으면 /usr/bin/ffmpeg)의 ffmpeg가 libsoxr로 빌드되어 있을 때만 실행한다.
+ * (운영 변환 필터가 soxr 리샘플러를 쓴다. Alpine ffmpeg 패키지는 libsoxr, libopus를 포함한다)
+ */
+class WebmOpusDecoderTest {
+
+    private static final String SAMPLE = "/audio/sample-48k-mono.webm";
+    private static final int RATE = AudioUtils.STT_SAMPLE_RATE;
+
+    @Test
+    void inProcessDecodeMatchesFfmpegPath() throws Exception {
+        String ffmpeg = ffmpegWithSoxr();
+        assumeTrue(ffmpeg != null, "ffmpeg with libsoxr not found (set FFMPEG_PATH)");
+
+        short[] inProcess = decode(true, ffmpeg);
+        short[] viaFfmpeg = decode(false, ffmpeg);
+
+        // 길이와 시간 정렬은 같아야 한다. (pre-skip, 끝 패딩, 리샘플러 지연 보정)
+        assertThat(inProcess.length).isEqualTo(viaFfmpeg.length);
+        assertThat(bestLag(viaFfmpeg, inProcess, RATE / 100)).isZero();
+        // ffmpeg 기본 Opus 디코더는 libopus와 같은 출력을 내지 않는다. 이 샘플에서 ffmpeg 자체의 두 디코더 차이도 약 21dB다.
+        assertThat(snrDb(viaFfmpeg, inProcess)).isGreaterThan(18.0);
+    }
+
+    @Test
+    void inProcessDecodeMatchesLibopusDecoding() throws Exception {
+        String ffmpeg = ffmpegWithSoxr();
+        assumeTrue(ffmpeg != null && hasDecoder(ffmpeg, "libopus"), "ffmpeg with libsoxr and libopus not found");
+
+        short[] inProcess = decode(true, ffmpeg);
+        // 운영 변환과 같은 필터로, 디코더만 libopus로 고정 (Concentus는 libopus 포팅)
+        Path out = Files.createTempFile("libopus-", ".wav");
+        try {
+            Process p = new ProcessBuilder(ffmpeg, "-hide_banner", "-loglevel", "error", "-y",
+                    "-c:a", "libopus", "-i", samplePath().toString(),
+                    "-ac", "1", "-ar", String.valueOf(RATE), "-af", AudioTranscoder.AUDIO_FILTER,
+                    "-c:a", "pcm_s16le", "-map_metadata", "-1", "-fflags", "+bitexact", out.toString())
+                    .redirectErrorStream(true).start();
+            p.getInputStream().readAllBytes();
+            assertThat(p.waitFor()).isZero();
+
+            short[] libopus = pcm(AudioBuffers.FACTORY.wrap(Files.readAllBytes(out)));
+            assertThat(inProcess.length).isEqualTo(libopus.length);
+            assertThat(snrDb(libopus, inProcess)).isGreaterThan(40.0);
+        } finally {
+            Files.deleteIfExists(out);
+        }
+    }
+
+    @Test
+    void decodesSampleToWav16kMonoWithExpectedShape() throws Exception {
+        DataBuffer webm = AudioBuffers.FACTORY.wrap(sample());
+        DataBuffer wav = WebmOpusDecoder.toWav(webm);
+        try {
+            byte[] header = Arrays.copyOf(bytes(wav), AudioUtils.WAV_HEADER_BYTES);
+            assertThat(header).isEqualTo(AudioUtils.wavHeader(wav.readableByteCount() - header.length, RATE, 1));
+
+            short[] pcm = pcm(wav);
+            assertThat(pcm.length).isBetween(RATE * 3_180 / 1000, RATE * 3_220 / 1000);
+            // 무음 구간은 조용하고, 소리 구간에는 에너지가 있다.
+            assertThat(rms(pcm, 0.05, 0.25)).isLessThan(50);
+            assertThat(rms(pcm, 1.55, 1.85)).isLessThan(50);
+            assertThat(rms(pcm, 0.6, 1.2)).isGreaterThan(2_000);
+            assertThat(rms(pcm, 2.0, 2.7)).isGreaterThan(2_000);
+        } finally {
+            DataBufferUtils.release(wav);
+            DataBufferUtils.release(webm);
+        }
+    }
+
+    @Test
+    void chunkedFeedProducesSameOutputAsWholeFile() throws Exception {
+        byte[] webm = sample();
+        DataBuffer whole = WebmOpusDecoder.toWav(AudioBuffers.FACTORY.wrap(webm));
+
+        // MediaRecorder timeslice처럼 요소 경계와 상관없이 잘라 넣는다.
+        WebmOpusDecoder d = new WebmOpusDecoder(0);
+        for (int off = 0; off < webm.length; off += 333) {
+            d.feed(ByteBuffer.wrap(webm, off, Math.min(333, webm.length - off)));
+        }
+        DataBuffer chunked = d.finish();
+        try {
+            assertThat(pcm(chunked)).isEqualTo(pcm(whole));
+        } finally {
+            DataBufferUtils.release(whole);
+            DataBufferUtils.release(chunked);
+        }
+    }
+
+    // ---- helpers ----
+
+    private static short[] decode(boolean inProcess, String ffmpeg) throws Exception {
+        AppProperties props = new AppProperties();
+        props.getAudio().setInProcessDecode(inProcess);
+        props.getAudio().setFfmpegPath(ffmpeg);
+        AudioTranscoder transcoder = new AudioTranscoder(props, new SimpleMeterRegistry());
+
+        DataBuffer webm = AudioBuffers.FACTORY.wrap(sample());
+        DataBuffer wav = transcoder.webmOpusToPcmWav16kMono(webm);
+        try {
+            return pcm(wav);
+        } finally {
+            DataBufferUtils.release(wav);
+        }
+    }
+
+    private static byte[] sample() throws IOException {
+        try (InputStream in = WebmOpusDecoderTest.class.getResourceAsStream(SAMPLE)) {
+            assertThat(in).as(SAMPLE).isNotNull();
+            return in.readAllBytes();
+        }
+    }
+
+    private static Path samplePath() throws Exception {
+        return Path.of(WebmOpusDecoderTest.class.getResource(SAMPLE).toURI());
+    }
+
+    /** WAV의 data 청크를 s16le 샘플로 읽는다. (ffmpeg 출력은 헤더가 44바이트가 아닐 수 있다) */
+    private static short[] pcm(DataBuffer wav) {
+        byte[] bytes = bytes(wav);
+        ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(new String(bytes, 0, 4, StandardCharsets.US_ASCII)).isEqualTo("RIFF");
+        int p = 12;
+        while (p + 8 <= bytes.length) {
+            String id = new String(bytes, p, 4, StandardCharsets.US_ASCII);
+            int size = bb.getInt(p + 4);
+            if (id.equals("fmt ")) {
+                assertThat(bb.getShort(p + 8 + 2)).as("channels").isEqualTo((short) 1);
+                assertThat(bb.getInt(p + 8 + 4)).as("sample rate").isEqualTo(RATE);
+                assertThat(bb.getShort(p + 8 + 14)).as("bits").isEqualTo((short) 16);
+            } else if (id.equals("data")) {
+                int len = Math.min(size, bytes.length - p - 8) / 2;
+                short[] out = new short[len];
+                bb.position(p + 8);
+                bb.asShortBuffer().get(out);
+                return out;
+            }
+            p += 8 + size + (size & 1);
+        }
+        throw new AssertionError("no data chunk");
+    }
+
+    /** 읽기 위치를 바꾸지 않고 읽을 수 있는 구간을 복사한다. */
+    private static byte[] bytes(DataBuffer buf) {
+        byte[] bytes = new byte[buf.readableByteCount()];
+        buf.toByteBuffer(buf.readPosition(), ByteBuffer.wrap(bytes), 0, bytes.length);
+        return bytes;
+    }
+
+    /** b[i + lag]가 a[i]와 가장 잘 맞는 lag */
+    private static int bestLag(short[] a, short[] b, int maxLag) {
+        int best = 0;
+        double bestCorr = Double.NEGATIVE_INFINITY;
+        for (int lag = -maxLag; lag <= maxLag; lag++) {
+            double corr = 0;
+            for (int i = Math.max(0, -lag); i < a.length && i + lag < b.length; i++) corr += (double) a[i] * b[i + lag];
+            if (corr > bestCorr) {
+                bestCorr = corr;
+                best = lag;
+            }
+        }
+        return best;
+    }
+
+    private static double snrDb(short[] ref, short[] x) {
+        double signal = 0, noise = 0;
+        for (int i = 0; i < Math.min(ref.length, x.length); i++) {
+            double d = ref[i] - x[i];
+            signal += (double) ref[i] * ref[i];
+            noise += d * d;
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1e-9));
+    }
+
+    private static double rms(short[] pcm, double fromSec, double toSec) {
+        int from = (int) (fromSec * RATE), to = (int) Math.min(pcm.length, toSec * RATE);
+        double sum = 0;
+        for (int i = from; i < to; i++) sum += (double) pcm[i] * pcm[i];
+        return Math.sqrt(sum / Math.max(1, to - from));
+    }
+
+    private static String ffmpegWithSoxr() {
+        String env = System.getenv("FFMPEG_PATH");
+        return Stream.of(env, "/usr/bin/ffmpeg", "/usr/local/bin/ffmpeg")
+                .filter(p -> p != null && Files.isExecutable(Path.of(p)))
+                .filter(WebmOpusDecoderTest::hasSoxr)
+                .findFirst().orElse(null);
+    }
+
+    private static boolean hasSoxr(String ffmpeg) {
+        return run(ffmpeg, "-hide_banner", "-buildconf").contains("--enable-libsoxr");
+    }
+
+    private static boolean hasDecoder(String ffmpeg, String name) {
+        return run(ffmpeg, "-hide_banner", "-decoders").contains(" " + name + " ");
+    }
+
+    private static String run(String... command) {
+        try {
+            Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            return p.waitFor() == 0 ? output : "";
+        } catch (IOException e) {
+            return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+}
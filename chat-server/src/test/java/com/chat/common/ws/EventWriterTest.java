@@ -0,0 +1,96 @@
+package com.chat.common.ws;
+
+import com.chat.chat.model.OutboundEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void reusedGeneratorWritesEachEventAsOneStandaloneJsonObject() throws Exception {
+        var factory = DefaultDataBufferFactory.sharedInstance;
+        String tricky = "등본 \"발급\"\n\t\u0001 끝";
+        List<OutboundEvent> events = List.of(
+                new OutboundEvent.Delta("t-1", tricky),
+                OutboundEvent.system("연결되었습니다."),
+                new OutboundEvent.Final("t-1", tricky),
+                new OutboundEvent.Error("t-1", null),
+                new OutboundEvent.Plain("PONG", null, 1_700_000_000_000L));
+
+        // 같은 스레드에서 연달아 쓴다. (generator 재사용, 최상위 값 구분자 없음)
+        for (int round = 0; round < 2; round++) {
+            for (OutboundEvent event : events) {
+                DataBuffer buf = EventWriter.write(factory, event);
+                String json = buf.toString(StandardCharsets.UTF_8);
+                DataBufferUtils.release(buf);
+
+                assertThat(json).startsWith("{").endsWith("}");
+                assertThat(MAPPER.readTree(json)).isEqualTo(expected(event));
+            }
+        }
+    }
+
+    @Test
+    void plainEventOmitsNullFields() throws Exception {
+        DataBuffer buf = EventWriter.write(DefaultDataBufferFactory.sharedInstance,
+                new OutboundEvent.Plain("PONG", null, null));
+        assertThat(buf.toString(StandardCharsets.UTF_8)).isEqualTo("{\"type\":\"PONG\"}");
+        DataBufferUtils.release(buf);
+    }
+
+    @Test
+    void pooledBufferGrowsPastInitialCapacityAndIsReleasable() throws Exception {
+        var factory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+        String longText = "가".repeat(20_000);
+
+        DataBuffer buf = EventWriter.write(factory, new OutboundEvent.Delta("t-2", longText));
+        JsonNode node = MAPPER.readTree(buf.toString(StandardCharsets.UTF_8));
+        assertThat(node.path("data").path("text").asText()).isEqualTo(longText);
+
+        assertThat(DataBufferUtils.release(buf)).isTrue();
+        assertThat(((NettyDataBuffer) buf).getNativeBuffer().refCnt()).isZero();
+
+        // 큰 이벤트 다음의 작은 이벤트도 앞 내용이 섞이지 않는다.
+        DataBuffer next = EventWriter.write(factory, OutboundEvent.system("ok"));
+        assertThat(next.toString(StandardCharsets.UTF_8)).isEqualTo("{\"type\":\"SYSTEM\",\"text\":\"ok\"}");
+        DataBufferUtils.release(next);
+    }
+
+    private static JsonNode expected(OutboundEvent event) {
+        ObjectNode root = MAPPER.createObjectNode();
+        if (event instanceof OutboundEvent.Delta d) {
+            nlpStream(root, "delta", "text", d.text(), d.traceId());
+        } else if (event instanceof OutboundEvent.Final f) {
+            nlpStream(root, "original_text", "text", f.text(), f.traceId());
+        } else if (event instanceof OutboundEvent.Error e) {
+            nlpStream(root, "error", "message", e.message(), e.traceId());
+        } else if (event instanceof OutboundEvent.Plain p) {
+            root.put("type", p.type());
+            if (p.text() != null) root.put("text", p.text());
+            if (p.ts() != null) root.put("ts", p.ts());
+        }
+        return root;
+    }
+
+    private static void nlpStream(ObjectNode root, String event, String field, String value, String traceId) {
+        root.put("type", "nlp-stream");
+        root.put("event", event);
+        root.putObject("data").put(field, value);
+        root.put("traceId", traceId);
+    }
+}